@@ -0,0 +1,129 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring assigning device MACs to gateway members. Each member is placed on the ring with several virtual nodes, so that
+ * devices are spread evenly, and joining or leaving of a member only moves the devices of this member.
+ */
+public class ConsistentHashRing {
+	/**
+	 * The number of virtual nodes per member.
+	 */
+	private static final int VIRTUAL_NODES = 64;
+	/**
+	 * The number of bytes of the digest used as ring position.
+	 */
+	private static final int POSITION_BYTES = 8;
+	/**
+	 * The number of bits in a byte.
+	 */
+	private static final int BITS_PER_BYTE = 8;
+	/**
+	 * Mask for one byte.
+	 */
+	private static final int BYTE_MASK = 0xFF;
+
+	/**
+	 * The members.
+	 */
+	private final Set<String> mMembers = new LinkedHashSet<>();
+	/**
+	 * The members by ring position.
+	 */
+	private final TreeMap<Long, String> mRing = new TreeMap<>();
+
+	/**
+	 * Create a ring.
+	 *
+	 * @param members The initial members.
+	 */
+	public ConsistentHashRing(final Collection<String> members) {
+		for (String member : members) {
+			add(member);
+		}
+	}
+
+	/**
+	 * Add a member.
+	 *
+	 * @param member The member.
+	 */
+	public final synchronized void add(final String member) {
+		if (mMembers.add(member)) {
+			for (int i = 0; i < VIRTUAL_NODES; i++) {
+				mRing.put(hash(member + "#" + i), member);
+			}
+		}
+	}
+
+	/**
+	 * Remove a member.
+	 *
+	 * @param member The member.
+	 */
+	public final synchronized void remove(final String member) {
+		if (mMembers.remove(member)) {
+			mRing.values().removeIf(member::equals);
+		}
+	}
+
+	/**
+	 * Get the members.
+	 *
+	 * @return The members, in the order of joining.
+	 */
+	public final synchronized List<String> getMembers() {
+		return new ArrayList<>(mMembers);
+	}
+
+	/**
+	 * Get the member owning a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @return The owning member. Null if there are no members.
+	 */
+	public final synchronized String getOwner(final String mac) {
+		if (mRing.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> entry = mRing.ceilingEntry(hash(mac.toUpperCase(Locale.ENGLISH)));
+		return entry == null ? mRing.firstEntry().getValue() : entry.getValue();
+	}
+
+	/**
+	 * Get the ring position of a key.
+	 *
+	 * @param key The key.
+	 * @return The position.
+	 */
+	private static long hash(final String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+			long position = 0;
+			for (int i = 0; i < POSITION_BYTES; i++) {
+				position = (position << BITS_PER_BYTE) | (digest[i] & BYTE_MASK);
+			}
+			return position;
+		}
+		catch (NoSuchAlgorithmException e) {
+			// MD5 is available on all Java platforms.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public final synchronized String toString() {
+		return "ConsistentHashRing" + mMembers;
+	}
+}
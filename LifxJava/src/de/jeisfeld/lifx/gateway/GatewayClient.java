@@ -0,0 +1,321 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.jeisfeld.lifx.lan.RequestPriority;
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * A client of a local gateway server. Requests are sent with the request priority of the calling thread.
+ */
+public class GatewayClient implements Closeable {
+	/**
+	 * The timeout in millis for the response of the gateway. Requests addressing several lights are answered after all lights have
+	 * answered or failed.
+	 */
+	private static final int READ_TIMEOUT = 30000;
+
+	/**
+	 * The socket.
+	 */
+	private final Socket mSocket;
+	/**
+	 * The input stream.
+	 */
+	private final DataInputStream mIn;
+	/**
+	 * The output stream.
+	 */
+	private final DataOutputStream mOut;
+
+	/**
+	 * Connect to the gateway on the default port.
+	 *
+	 * @throws IOException Exception while connecting.
+	 */
+	public GatewayClient() throws IOException {
+		this(GatewayProtocol.DEFAULT_PORT);
+	}
+
+	/**
+	 * Connect to the gateway.
+	 *
+	 * @param port The port of the gateway.
+	 * @throws IOException Exception while connecting.
+	 */
+	public GatewayClient(final int port) throws IOException {
+		this(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * Connect to a gateway on another host.
+	 *
+	 * @param address The address of the gateway.
+	 * @param port The port of the gateway.
+	 * @throws IOException Exception while connecting.
+	 */
+	public GatewayClient(final InetAddress address, final int port) throws IOException {
+		this(address, port, "");
+	}
+
+	/**
+	 * Connect to a gateway requiring a token.
+	 *
+	 * @param address The address of the gateway.
+	 * @param port The port of the gateway.
+	 * @param token The token shared with the gateway.
+	 * @throws IOException Exception while connecting, also if the token is rejected.
+	 */
+	public GatewayClient(final InetAddress address, final int port, final String token) throws IOException {
+		mSocket = new Socket(address, port);
+		mSocket.setTcpNoDelay(true);
+		mSocket.setSoTimeout(READ_TIMEOUT);
+		mIn = new DataInputStream(new BufferedInputStream(mSocket.getInputStream()));
+		mOut = new DataOutputStream(new BufferedOutputStream(mSocket.getOutputStream()));
+		mOut.writeInt(GatewayProtocol.MAGIC);
+		mOut.writeByte(GatewayProtocol.VERSION);
+		mOut.writeUTF(token);
+		mOut.flush();
+		byte version = mIn.readByte();
+		if (version != GatewayProtocol.VERSION) {
+			mSocket.close();
+			throw new IOException("Unsupported gateway version " + version);
+		}
+		if (mIn.readByte() != GatewayProtocol.STATUS_OK) {
+			String message = mIn.readUTF();
+			mSocket.close();
+			throw new IOException(message);
+		}
+	}
+
+	/**
+	 * Get the lights served by the gateway.
+	 *
+	 * @return The lights.
+	 * @throws IOException Exception while connecting.
+	 */
+	public List<RemoteLight> getLights() throws IOException {
+		return request(GatewayProtocol.LIST_LIGHTS, "", null, in -> {
+			int count = in.readInt();
+			List<RemoteLight> lights = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				String mac = in.readUTF();
+				String label = in.readUTF();
+				byte type = in.readByte();
+				switch (type) {
+				case GatewayProtocol.TYPE_MULTIZONE:
+					lights.add(new RemoteMultiZoneLight(this, mac, label, in.readInt()));
+					break;
+				case GatewayProtocol.TYPE_TILE_CHAIN:
+					lights.add(new RemoteTileChain(this, mac, label, in.readInt(), in.readInt()));
+					break;
+				default:
+					lights.add(new RemoteLight(this, mac, label));
+					break;
+				}
+			}
+			return lights;
+		});
+	}
+
+	/**
+	 * Get a light by its MAC.
+	 *
+	 * @param mac The MAC.
+	 * @return The light. Null if not served by the gateway.
+	 * @throws IOException Exception while connecting.
+	 */
+	public RemoteLight getLightByMac(final String mac) throws IOException {
+		for (RemoteLight light : getLights()) {
+			if (light.getTargetAddress().equalsIgnoreCase(mac)) {
+				return light;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Assign the shard of the gateway. The gateway then only serves the lights which it owns by consistent hashing of the MAC.
+	 *
+	 * @param members The member ids of all gateways.
+	 * @param memberId The member id of this gateway.
+	 * @return The number of lights owned by the gateway.
+	 * @throws IOException Exception while connecting.
+	 */
+	public int assignShard(final List<String> members, final String memberId) throws IOException {
+		return request(GatewayProtocol.ASSIGN_SHARD, "", out -> {
+			out.writeInt(members.size());
+			for (String member : members) {
+				out.writeUTF(member);
+			}
+			out.writeUTF(memberId);
+		}, DataInputStream::readInt);
+	}
+
+	/**
+	 * Set the power of several lights of the gateway. The lights are switched by the gateway in parallel.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param status true for switching on, false for switching off
+	 * @param duration the duration of power change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 * @throws IOException Exception while connecting.
+	 */
+	public Map<String, IOException> setPower(final Collection<String> macs, final boolean status, final int duration) throws IOException {
+		return request(GatewayProtocol.SET_POWER_MULTI, "", out -> {
+			writeMacs(out, macs);
+			out.writeBoolean(status);
+			out.writeInt(duration);
+		}, GatewayClient::readFailures);
+	}
+
+	/**
+	 * Set the color of several lights of the gateway. The lights are set by the gateway in parallel.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 * @throws IOException Exception while connecting.
+	 */
+	public Map<String, IOException> setColor(final Collection<String> macs, final Color color, final int duration) throws IOException {
+		return request(GatewayProtocol.SET_COLOR_MULTI, "", out -> {
+			writeMacs(out, macs);
+			out.writeLong(color.asLong());
+			out.writeInt(duration);
+		}, GatewayClient::readFailures);
+	}
+
+	/**
+	 * Apply a scene given as color per light of the gateway. The lights are set by the gateway in parallel.
+	 *
+	 * @param colors The colors by MAC.
+	 * @param duration the duration of color change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 * @throws IOException Exception while connecting.
+	 */
+	public Map<String, IOException> applyScene(final Map<String, Color> colors, final int duration) throws IOException {
+		return request(GatewayProtocol.APPLY_SCENE, "", out -> {
+			out.writeInt(colors.size());
+			for (Map.Entry<String, Color> entry : colors.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().asLong());
+			}
+			out.writeInt(duration);
+		}, GatewayClient::readFailures);
+	}
+
+	/**
+	 * Write the MACs of a request addressing several lights.
+	 *
+	 * @param out The output stream.
+	 * @param macs The MACs.
+	 * @throws IOException Exception while writing.
+	 */
+	private static void writeMacs(final DataOutputStream out, final Collection<String> macs) throws IOException {
+		out.writeInt(macs.size());
+		for (String mac : macs) {
+			out.writeUTF(mac);
+		}
+	}
+
+	/**
+	 * Read the failures of a request addressing several lights.
+	 *
+	 * @param in The input stream.
+	 * @return The exceptions of failed lights by MAC, as reported by the gateway.
+	 * @throws IOException Exception while reading.
+	 */
+	private static Map<String, IOException> readFailures(final DataInputStream in) throws IOException {
+		int count = GatewayProtocol.readLightCount(in);
+		Map<String, IOException> failures = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			String mac = in.readUTF();
+			failures.put(mac, new GatewayException(in.readUTF()));
+		}
+		return failures;
+	}
+
+	/**
+	 * Send a request to the gateway and read the response.
+	 *
+	 * @param opcode The opcode.
+	 * @param mac The MAC of the light.
+	 * @param payloadWriter The writer of the request payload. Null for no payload.
+	 * @param responseReader The reader of the response payload. Null for no payload.
+	 * @param <T> The response type.
+	 * @return The response. Null if there is no response payload.
+	 * @throws IOException Exception while connecting. GatewayException for errors reported by the gateway.
+	 */
+	protected synchronized <T> T request(final byte opcode, final String mac, final PayloadWriter payloadWriter,
+			final ResponseReader<T> responseReader) throws IOException {
+		mOut.writeByte(opcode);
+		mOut.writeByte(RequestPriority.getCurrent().ordinal());
+		mOut.writeUTF(mac);
+		if (payloadWriter != null) {
+			payloadWriter.write(mOut);
+		}
+		mOut.flush();
+
+		try {
+			if (mIn.readByte() != GatewayProtocol.STATUS_OK) {
+				throw new GatewayException(mIn.readUTF());
+			}
+			return responseReader == null ? null : responseReader.read(mIn);
+		}
+		catch (SocketTimeoutException e) {
+			// a late response would be taken as response of the next request - the connection cannot be used anymore.
+			mSocket.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		mSocket.close();
+	}
+
+	/**
+	 * A writer of a request payload.
+	 */
+	@FunctionalInterface
+	protected interface PayloadWriter {
+		/**
+		 * Write the payload.
+		 *
+		 * @param out The output stream.
+		 * @throws IOException Exception while writing.
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * A reader of a response payload.
+	 *
+	 * @param <T> The response type.
+	 */
+	@FunctionalInterface
+	protected interface ResponseReader<T> {
+		/**
+		 * Read the payload.
+		 *
+		 * @param in The input stream.
+		 * @return The response.
+		 * @throws IOException Exception while reading.
+		 */
+		T read(DataInputStream in) throws IOException;
+	}
+}
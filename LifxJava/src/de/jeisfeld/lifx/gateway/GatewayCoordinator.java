@@ -0,0 +1,360 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.jeisfeld.lifx.lan.LifxLan;
+import de.jeisfeld.lifx.lan.RequestPriority;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Coordinator of several gateways, each owning a shard of the lights by consistent hashing of the MAC. Commands are routed to the owning
+ * gateway, and fan-outs to many lights are split by shard and sent to all gateways in parallel, so that controller capacity scales with the
+ * number of gateways. Power, color and scene fan-outs are sent as one request per gateway, which switches its lights in parallel. When a
+ * gateway joins or leaves (also by losing its connection), the shards are rebalanced.
+ */
+public class GatewayCoordinator {
+	/**
+	 * The clients of the gateways by member id.
+	 */
+	private final Map<String, GatewayClient> mGateways = new LinkedHashMap<>();
+	/**
+	 * The ring of the gateways.
+	 */
+	private final ConsistentHashRing mRing = new ConsistentHashRing(new ArrayList<>());
+	/**
+	 * The lights by upper case MAC, as listed by their owning gateway.
+	 */
+	private final Map<String, RemoteLight> mLights = new ConcurrentHashMap<>();
+	/**
+	 * The token shared with the gateways.
+	 */
+	private final String mToken;
+
+	/**
+	 * Create a coordinator of gateways not requiring a token.
+	 */
+	public GatewayCoordinator() {
+		this("");
+	}
+
+	/**
+	 * Create a coordinator of gateways requiring a token.
+	 *
+	 * @param token The token shared with the gateways.
+	 */
+	public GatewayCoordinator(final String token) {
+		mToken = token;
+	}
+
+	/**
+	 * Add a gateway and rebalance the shards.
+	 *
+	 * @param address The address of the gateway.
+	 * @param port The port of the gateway.
+	 * @return The member id of the gateway.
+	 * @throws IOException Exception while connecting.
+	 */
+	public synchronized String addGateway(final InetAddress address, final int port) throws IOException {
+		String memberId = GatewayProtocol.getMemberId(address, port);
+		if (!mGateways.containsKey(memberId)) {
+			mGateways.put(memberId, new GatewayClient(address, port, mToken));
+			mRing.add(memberId);
+			rebalance();
+		}
+		return memberId;
+	}
+
+	/**
+	 * Remove a gateway and rebalance the shards. Its lights are taken over by the remaining gateways.
+	 *
+	 * @param memberId The member id of the gateway.
+	 */
+	public synchronized void removeGateway(final String memberId) {
+		GatewayClient client = mGateways.remove(memberId);
+		if (client != null) {
+			mRing.remove(memberId);
+			try {
+				client.close();
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+			rebalance();
+		}
+	}
+
+	/**
+	 * Get the member ids of the gateways.
+	 *
+	 * @return The member ids.
+	 */
+	public synchronized List<String> getGateways() {
+		return mRing.getMembers();
+	}
+
+	/**
+	 * Get the member id of the gateway owning a light.
+	 *
+	 * @param mac The MAC of the light.
+	 * @return The member id. Null if there are no gateways.
+	 */
+	public String getOwner(final String mac) {
+		return mRing.getOwner(mac);
+	}
+
+	/**
+	 * Get the lights of all gateways.
+	 *
+	 * @return The lights.
+	 */
+	public List<RemoteLight> getLights() {
+		return new ArrayList<>(mLights.values());
+	}
+
+	/**
+	 * Get a light by its MAC, bound to the gateway owning it. After rebalancing, the light should be retrieved again.
+	 *
+	 * @param mac The MAC of the light.
+	 * @return The light. Null if not served by any gateway.
+	 */
+	public RemoteLight getLight(final String mac) {
+		return mLights.get(mac.toUpperCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Assign the shards to all gateways and list their lights. Gateways which cannot be reached are removed.
+	 */
+	private synchronized void rebalance() {
+		List<String> members = mRing.getMembers();
+		Map<String, RemoteLight> lights = new LinkedHashMap<>();
+		for (String memberId : members) {
+			try {
+				GatewayClient client = mGateways.get(memberId);
+				client.assignShard(members, memberId);
+				for (RemoteLight light : client.getLights()) {
+					lights.put(light.getTargetAddress().toUpperCase(Locale.ENGLISH), light);
+				}
+			}
+			catch (IOException e) {
+				Logger.error(e);
+				// the gateway has left - rebalance without it.
+				removeGateway(memberId);
+				return;
+			}
+		}
+		mLights.keySet().retainAll(lights.keySet());
+		mLights.putAll(lights);
+		Logger.info("Rebalanced " + lights.size() + " lights on " + members.size() + " gateways");
+	}
+
+	/**
+	 * Execute a command on several lights. The lights are split by shard, and the shards are served in parallel. If a gateway is lost
+	 * during execution, the shards are rebalanced and its lights are retried once on their new owners.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param command The command.
+	 * @return The exceptions of failed lights by MAC. Empty if successful on all lights.
+	 */
+	public Map<String, IOException> execute(final Collection<String> macs, final RemoteCommand command) {
+		return executeWithRebalance(macs, (client, lights) -> {
+			Map<String, IOException> failures = new LinkedHashMap<>();
+			for (RemoteLight light : lights) {
+				try {
+					command.execute(light);
+				}
+				catch (IOException e) {
+					failures.put(light.getTargetAddress(), e);
+				}
+			}
+			return failures;
+		});
+	}
+
+	/**
+	 * Execute a command on the shards of several lights. If a gateway is lost during execution, the shards are rebalanced and its lights
+	 * are retried once on their new owners.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param command The command.
+	 * @return The exceptions of failed lights by MAC. Empty if successful on all lights.
+	 */
+	private Map<String, IOException> executeWithRebalance(final Collection<String> macs, final ShardCommand command) {
+		Map<String, IOException> failures = executeOnShards(macs, command);
+		List<String> lostMacs = new ArrayList<>();
+		for (Map.Entry<String, IOException> failure : failures.entrySet()) {
+			if (!(failure.getValue() instanceof GatewayException)) {
+				lostMacs.add(failure.getKey());
+			}
+		}
+		if (lostMacs.isEmpty()) {
+			return failures;
+		}
+
+		synchronized (this) {
+			for (String memberId : getGateways()) {
+				GatewayClient client = mGateways.get(memberId);
+				if (client == null) {
+					// already removed while rebalancing.
+					continue;
+				}
+				try {
+					client.getLights();
+				}
+				catch (IOException e) {
+					removeGateway(memberId);
+				}
+			}
+		}
+		failures.keySet().removeAll(lostMacs);
+		failures.putAll(executeOnShards(lostMacs, command));
+		return failures;
+	}
+
+	/**
+	 * Execute a command on several lights, with one task per shard.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param command The command.
+	 * @return The exceptions of failed lights by MAC.
+	 */
+	private Map<String, IOException> executeOnShards(final Collection<String> macs, final ShardCommand command) {
+		final Map<String, IOException> failures = new ConcurrentHashMap<>();
+		final Map<String, List<RemoteLight>> shards = new LinkedHashMap<>();
+		for (String mac : macs) {
+			RemoteLight light = getLight(mac);
+			if (light == null) {
+				failures.put(mac, new GatewayException("Unknown light " + mac));
+			}
+			else {
+				shards.computeIfAbsent(getOwner(mac), memberId -> new ArrayList<>()).add(light);
+			}
+		}
+
+		final RequestPriority priority = RequestPriority.getCurrent();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (final List<RemoteLight> shard : shards.values()) {
+			futures.add(CompletableFuture.runAsync(() -> {
+				RequestPriority previousPriority = RequestPriority.setCurrent(priority);
+				try {
+					failures.putAll(command.execute(shard.get(0).getClient(), shard));
+				}
+				catch (IOException e) {
+					// the gateway could not be reached - all lights of the shard failed.
+					for (RemoteLight light : shard) {
+						failures.put(light.getTargetAddress(), e);
+					}
+				}
+				finally {
+					RequestPriority.setCurrent(previousPriority);
+				}
+			}, LifxLan.getInstance().getExecutor()));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+		return new LinkedHashMap<>(failures);
+	}
+
+	/**
+	 * Set the power of several lights.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param status true for switching on, false for switching off
+	 * @param duration the duration of power change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 */
+	public Map<String, IOException> setPower(final Collection<String> macs, final boolean status, final int duration) {
+		return executeWithRebalance(macs, (client, lights) -> client.setPower(getMacs(lights), status, duration));
+	}
+
+	/**
+	 * Set the color of several lights.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 */
+	public Map<String, IOException> setColor(final Collection<String> macs, final Color color, final int duration) {
+		return executeWithRebalance(macs, (client, lights) -> client.setColor(getMacs(lights), color, duration));
+	}
+
+	/**
+	 * Apply a scene given as color per light.
+	 *
+	 * @param colors The colors by MAC.
+	 * @param duration the duration of color change in millis.
+	 * @return The exceptions of failed lights by MAC.
+	 */
+	public Map<String, IOException> applyScene(final Map<String, Color> colors, final int duration) {
+		final Map<String, Color> upperCaseColors = new LinkedHashMap<>();
+		for (Map.Entry<String, Color> entry : colors.entrySet()) {
+			upperCaseColors.put(entry.getKey().toUpperCase(Locale.ENGLISH), entry.getValue());
+		}
+		RequestPriority previousPriority = RequestPriority.setCurrent(RequestPriority.SCENE);
+		try {
+			return executeWithRebalance(colors.keySet(), (client, lights) -> {
+				Map<String, Color> shardColors = new LinkedHashMap<>();
+				for (String mac : getMacs(lights)) {
+					shardColors.put(mac, upperCaseColors.get(mac.toUpperCase(Locale.ENGLISH)));
+				}
+				return client.applyScene(shardColors, duration);
+			});
+		}
+		finally {
+			RequestPriority.setCurrent(previousPriority);
+		}
+	}
+
+	/**
+	 * Get the MACs of remote lights.
+	 *
+	 * @param lights The lights.
+	 * @return The MACs.
+	 */
+	private static List<String> getMacs(final List<RemoteLight> lights) {
+		List<String> macs = new ArrayList<>();
+		for (RemoteLight light : lights) {
+			macs.add(light.getTargetAddress());
+		}
+		return macs;
+	}
+
+	/**
+	 * A command executed on the lights of one shard.
+	 */
+	@FunctionalInterface
+	private interface ShardCommand {
+		/**
+		 * Execute the command on the lights of the shard.
+		 *
+		 * @param client The client of the gateway owning the shard.
+		 * @param lights The lights of the shard.
+		 * @return The exceptions of failed lights by MAC.
+		 * @throws IOException if the gateway could not be reached.
+		 */
+		Map<String, IOException> execute(GatewayClient client, List<RemoteLight> lights) throws IOException;
+	}
+
+	/**
+	 * A command executed on a remote light.
+	 */
+	@FunctionalInterface
+	public interface RemoteCommand {
+		/**
+		 * Execute the command on the light.
+		 *
+		 * @param light The light.
+		 * @throws IOException Connection issues
+		 */
+		void execute(RemoteLight light) throws IOException;
+	}
+}
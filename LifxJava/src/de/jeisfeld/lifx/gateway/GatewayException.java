@@ -0,0 +1,23 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.IOException;
+
+/**
+ * Exception reported by the gateway for a request, e.g. as the light did not respond. In contrast to other IOExceptions of the gateway
+ * client, the connection to the gateway is still intact.
+ */
+public class GatewayException extends IOException {
+	/**
+	 * The default serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param message The message reported by the gateway.
+	 */
+	public GatewayException(final String message) {
+		super(message);
+	}
+}
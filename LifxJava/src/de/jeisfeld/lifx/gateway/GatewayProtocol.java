@@ -0,0 +1,212 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Constants and helpers of the binary protocol between gateway clients and the gateway server.
+ *
+ * <p>After connecting, the client sends MAGIC, VERSION and the shared token as UTF string (empty if none), and the server answers with its
+ * VERSION followed by STATUS_OK, or STATUS_ERROR and an UTF error message if the token does not match. Then each request consists of the
+ * opcode byte, the request priority byte (ordinal of RequestPriority), the MAC of the light as UTF string (empty for requests not
+ * addressing a single light) and the payload of the opcode. Each response consists of STATUS_OK followed by the payload, or STATUS_ERROR
+ * followed by an UTF error message. Colors are sent as packed HSBK longs. Requests addressing several lights are executed on the lights in
+ * parallel by the gateway and answered with int failure count, then per failed light MAC (UTF) and error message (UTF).
+ */
+public final class GatewayProtocol {
+	/**
+	 * The default port of the gateway.
+	 */
+	public static final int DEFAULT_PORT = 56780;
+	/**
+	 * The magic number sent by the client on connect ("LIFX").
+	 */
+	public static final int MAGIC = 0x4C494658;
+	/**
+	 * The protocol version.
+	 */
+	public static final byte VERSION = 2;
+
+	/**
+	 * List the lights. Response: int count, then per light MAC (UTF), label (UTF), type byte and type specific info.
+	 */
+	public static final byte LIST_LIGHTS = 1;
+	/**
+	 * Get the power. Request: long maxAge. Response: boolean known, short level.
+	 */
+	public static final byte GET_POWER = 2;
+	/**
+	 * Set the power. Request: boolean status, int duration.
+	 */
+	public static final byte SET_POWER = 3;
+	/**
+	 * Get the color. Request: long maxAge. Response: boolean known, long color.
+	 */
+	public static final byte GET_COLOR = 4;
+	/**
+	 * Set the color. Request: long color, int duration.
+	 */
+	public static final byte SET_COLOR = 5;
+	/**
+	 * Get the zone colors of a multizone light. Response: int count, then the colors.
+	 */
+	public static final byte GET_ZONES = 6;
+	/**
+	 * Set the zone colors of a multizone light. Request: int duration, int count, then the colors.
+	 */
+	public static final byte SET_ZONES = 7;
+	/**
+	 * Get the colors of a tile chain. Response: int width, int height, then the colors row by row.
+	 */
+	public static final byte GET_TILES = 8;
+	/**
+	 * Set the colors of a tile chain. Request: int duration, int width, int height, then the colors row by row.
+	 */
+	public static final byte SET_TILES = 9;
+	/**
+	 * Assign the shard of the gateway. Request: int member count, the member ids (UTF), the own member id (UTF). Response: int number
+	 * of owned lights.
+	 */
+	public static final byte ASSIGN_SHARD = 10;
+	/**
+	 * Set the power of several lights. Request: int count, the MACs (UTF), boolean status, int duration. Response: the failures.
+	 */
+	public static final byte SET_POWER_MULTI = 11;
+	/**
+	 * Set the color of several lights. Request: int count, the MACs (UTF), long color, int duration. Response: the failures.
+	 */
+	public static final byte SET_COLOR_MULTI = 12;
+	/**
+	 * Apply a scene given as color per light. Request: int count, then per light MAC (UTF) and long color, then int duration. Response:
+	 * the failures.
+	 */
+	public static final byte APPLY_SCENE = 13;
+
+	/**
+	 * Status of a successful response.
+	 */
+	public static final byte STATUS_OK = 0;
+	/**
+	 * Status of a failed response.
+	 */
+	public static final byte STATUS_ERROR = 1;
+
+	/**
+	 * Light type of simple lights. No type specific info.
+	 */
+	public static final byte TYPE_LIGHT = 0;
+	/**
+	 * Light type of multizone lights. Type specific info: int zone count.
+	 */
+	public static final byte TYPE_MULTIZONE = 1;
+	/**
+	 * Light type of tile chains. Type specific info: int total width, int total height.
+	 */
+	public static final byte TYPE_TILE_CHAIN = 2;
+
+	/**
+	 * The maximum number of colors accepted in one message.
+	 */
+	private static final int MAX_COLOR_COUNT = 65536;
+	/**
+	 * The maximum number of lights accepted in one message.
+	 */
+	private static final int MAX_LIGHT_COUNT = 65536;
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private GatewayProtocol() {
+	}
+
+	/**
+	 * Get the member id of a gateway, as used for sharding.
+	 *
+	 * @param address The address of the gateway.
+	 * @param port The port of the gateway.
+	 * @return The member id.
+	 */
+	public static String getMemberId(final InetAddress address, final int port) {
+		return address.getHostAddress() + ":" + port;
+	}
+
+	/**
+	 * Check if a token sent by a client matches the token of the gateway. The comparison takes constant time, so that the token cannot be
+	 * guessed by timing.
+	 *
+	 * @param expected The token of the gateway.
+	 * @param actual The token sent by the client.
+	 * @return true if the tokens match.
+	 */
+	static boolean isTokenValid(final String expected, final String actual) {
+		return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write packed colors.
+	 *
+	 * @param out The output stream.
+	 * @param values The packed colors.
+	 * @throws IOException Exception while writing.
+	 */
+	static void writeValues(final DataOutputStream out, final long[] values) throws IOException {
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	/**
+	 * Read the number of lights of a request addressing several lights.
+	 *
+	 * @param in The input stream.
+	 * @return The number of lights.
+	 * @throws IOException Exception while reading, or invalid count.
+	 */
+	static int readLightCount(final DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > MAX_LIGHT_COUNT) {
+			throw new IOException("Invalid light count " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Read the packed colors of a rectangle. Width and height are validated separately before their product is taken, so that no
+	 * overflow can pass the check of the color count.
+	 *
+	 * @param in The input stream.
+	 * @param width The width.
+	 * @param height The height.
+	 * @return The packed colors.
+	 * @throws IOException Exception while reading, or invalid dimensions.
+	 */
+	static long[] readValues(final DataInputStream in, final int width, final int height) throws IOException {
+		if (width < 0 || height < 0 || (long) width * height > MAX_COLOR_COUNT) {
+			throw new IOException("Invalid dimensions " + width + "x" + height);
+		}
+		return readValues(in, width * height);
+	}
+
+	/**
+	 * Read packed colors.
+	 *
+	 * @param in The input stream.
+	 * @param count The number of colors.
+	 * @return The packed colors.
+	 * @throws IOException Exception while reading, or invalid count.
+	 */
+	static long[] readValues(final DataInputStream in, final int count) throws IOException {
+		if (count < 0 || count > MAX_COLOR_COUNT) {
+			throw new IOException("Invalid color count " + count);
+		}
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+}
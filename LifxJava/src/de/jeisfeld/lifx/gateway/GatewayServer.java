@@ -0,0 +1,667 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.jeisfeld.lifx.lan.FanOut;
+import de.jeisfeld.lifx.lan.FanOutResult;
+import de.jeisfeld.lifx.lan.LifxLan;
+import de.jeisfeld.lifx.lan.Light;
+import de.jeisfeld.lifx.lan.MultiZoneLight;
+import de.jeisfeld.lifx.lan.RequestPriority;
+import de.jeisfeld.lifx.lan.TileChain;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.MultizoneFrame;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileChainFrame;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A gateway serving the lights of the LAN to local clients via loopback TCP. All clients share the discovery, the device caches, the
+ * state mirror and the message budget of this process, so that they do not compete for the limited message rate of the devices.
+ */
+public class GatewayServer {
+	/**
+	 * The address on which the gateway listens.
+	 */
+	private final InetAddress mBindAddress;
+	/**
+	 * The port.
+	 */
+	private final int mPort;
+	/**
+	 * The interval in millis for rediscovery of lights. 0 for no discovery.
+	 */
+	private final long mDiscoveryInterval;
+	/**
+	 * The interval in millis for polling the state of lights. 0 for no polling.
+	 */
+	private final long mPollInterval;
+	/**
+	 * The lights by upper case MAC. Lights keep their instances on rediscovery, so that their caches are kept.
+	 */
+	private final Map<String, Light> mLights = new ConcurrentHashMap<>();
+	/**
+	 * The sockets of connected clients.
+	 */
+	private final Set<Socket> mClientSockets = ConcurrentHashMap.newKeySet();
+	/**
+	 * The server socket. Null if not started.
+	 */
+	private ServerSocket mServerSocket = null;
+	/**
+	 * The periodic rediscovery.
+	 */
+	private ScheduledFuture<?> mDiscovery = null;
+	/**
+	 * The ring of the gateways sharing the lights. Null if this gateway serves all lights.
+	 */
+	private volatile ConsistentHashRing mShardRing = null;
+	/**
+	 * The own member id within the shard ring.
+	 */
+	private volatile String mMemberId = null;
+	/**
+	 * The token to be sent by clients. Empty if no token is required.
+	 */
+	private volatile String mToken = "";
+
+	/**
+	 * Create a gateway server listening on loopback.
+	 *
+	 * @param port The port. 0 for an ephemeral port.
+	 * @param discoveryInterval The interval in millis for rediscovery of lights. 0 for serving only lights added via addLight.
+	 * @param pollInterval The interval in millis for polling the state of lights, so that reads can be served from the state mirror. 0 for
+	 *            no polling.
+	 */
+	public GatewayServer(final int port, final long discoveryInterval, final long pollInterval) {
+		this(InetAddress.getLoopbackAddress(), port, discoveryInterval, pollInterval);
+	}
+
+	/**
+	 * Create a gateway server. As the state poller of LifxLan is shared, there should be only one gateway with polling per process.
+	 *
+	 * <p>The gateway gives full control of the lights to every client which can connect. Therefore a gateway not bound to loopback requires
+	 * a token, which is set via setToken and has to be passed by the clients.
+	 *
+	 * @param bindAddress The address on which the gateway listens, e.g. a LAN address for gateways of a sharded installation.
+	 * @param port The port. 0 for an ephemeral port.
+	 * @param discoveryInterval The interval in millis for rediscovery of lights. 0 for serving only lights added via addLight.
+	 * @param pollInterval The interval in millis for polling the state of lights, so that reads can be served from the state mirror. 0 for
+	 *            no polling.
+	 */
+	public GatewayServer(final InetAddress bindAddress, final int port, final long discoveryInterval, final long pollInterval) {
+		mBindAddress = bindAddress;
+		mPort = port;
+		mDiscoveryInterval = discoveryInterval;
+		mPollInterval = pollInterval;
+	}
+
+	/**
+	 * Set the token which clients have to send on connect.
+	 *
+	 * @param token The token. Empty if no token is required, which is allowed only for gateways bound to loopback.
+	 * @return The updated gateway server.
+	 */
+	public GatewayServer setToken(final String token) {
+		mToken = token == null ? "" : token;
+		return this;
+	}
+
+	/**
+	 * Start the gateway. Lights are discovered, and clients are accepted in the background.
+	 *
+	 * @throws IOException Exception while opening the server socket, or if a gateway not bound to loopback has no token.
+	 */
+	public synchronized void start() throws IOException {
+		if (mServerSocket != null) {
+			return;
+		}
+		if (mToken.isEmpty() && !mBindAddress.isLoopbackAddress()) {
+			throw new IOException("Gateway on " + mBindAddress.getHostAddress() + " requires a token");
+		}
+		mServerSocket = new ServerSocket(mPort, 0, mBindAddress);
+		if (mDiscoveryInterval > 0) {
+			discover();
+			mDiscovery = LifxLan.getInstance().getScheduledExecutor().scheduleWithFixedDelay(() -> LifxLan.getInstance().getExecutor()
+					.execute(this::discover), mDiscoveryInterval, mDiscoveryInterval, TimeUnit.MILLISECONDS);
+		}
+		final ServerSocket serverSocket = mServerSocket;
+		Thread acceptThread = new Thread(() -> accept(serverSocket), "GatewayAccept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+		Logger.info("Gateway listening on port " + getPort());
+	}
+
+	/**
+	 * Stop the gateway and disconnect all clients.
+	 */
+	public synchronized void stop() {
+		if (mServerSocket == null) {
+			return;
+		}
+		if (mDiscovery != null) {
+			mDiscovery.cancel(false);
+			mDiscovery = null;
+		}
+		if (mPollInterval > 0) {
+			LifxLan.getInstance().stopStatePolling();
+		}
+		try {
+			mServerSocket.close();
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+		mServerSocket = null;
+		for (Socket socket : mClientSockets) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Get the port on which the gateway is listening.
+	 *
+	 * @return The port.
+	 */
+	public synchronized int getPort() {
+		return mServerSocket == null ? mPort : mServerSocket.getLocalPort();
+	}
+
+	/**
+	 * Get the member id of the gateway, as used for sharding.
+	 *
+	 * @return The member id.
+	 */
+	public synchronized String getMemberId() {
+		return GatewayProtocol.getMemberId(mBindAddress, getPort());
+	}
+
+	/**
+	 * Get the lights served by the gateway. In a sharded installation, these are the lights owned by this gateway.
+	 *
+	 * @return The lights.
+	 */
+	public List<Light> getLights() {
+		List<Light> lights = new ArrayList<>();
+		for (Light light : mLights.values()) {
+			if (isOwned(light.getTargetAddress())) {
+				lights.add(light);
+			}
+		}
+		return lights;
+	}
+
+	/**
+	 * Add a light which is not found by discovery, e.g. a light in another subnet or a simulated light.
+	 *
+	 * @param light The light.
+	 */
+	public void addLight(final Light light) {
+		if (mLights.putIfAbsent(light.getTargetAddress().toUpperCase(Locale.ENGLISH), light) == null) {
+			updatePolling();
+		}
+	}
+
+	/**
+	 * Assign the shard of this gateway. The gateway then only serves the lights which it owns by consistent hashing of the MAC.
+	 *
+	 * @param members The member ids of all gateways. Empty for serving all lights.
+	 * @param memberId The own member id.
+	 * @return The number of owned lights.
+	 */
+	public int assignShard(final List<String> members, final String memberId) {
+		mMemberId = memberId;
+		mShardRing = members.isEmpty() ? null : new ConsistentHashRing(members);
+		updatePolling();
+		int ownedCount = getLights().size();
+		Logger.info("Gateway " + memberId + " owns " + ownedCount + " of " + mLights.size() + " lights in shard of " + members.size());
+		return ownedCount;
+	}
+
+	/**
+	 * Check if a light is owned by this gateway.
+	 *
+	 * @param mac The MAC of the light.
+	 * @return true if owned.
+	 */
+	private boolean isOwned(final String mac) {
+		ConsistentHashRing shardRing = mShardRing;
+		return shardRing == null || shardRing.getOwner(mac).equals(mMemberId);
+	}
+
+	/**
+	 * Discover the lights in the LAN. Lights known before keep their instance.
+	 */
+	private void discover() {
+		try {
+			int oldCount = mLights.size();
+			for (Light light : LifxLan.getInstance().getLights()) {
+				mLights.putIfAbsent(light.getTargetAddress().toUpperCase(Locale.ENGLISH), light);
+			}
+			if (mLights.size() != oldCount) {
+				updatePolling();
+			}
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+	}
+
+	/**
+	 * Restart polling of the owned lights.
+	 */
+	private void updatePolling() {
+		if (mPollInterval > 0) {
+			LifxLan.getInstance().startStatePolling(getLights(), mPollInterval);
+		}
+	}
+
+	/**
+	 * Accept clients until the server socket is closed.
+	 *
+	 * @param serverSocket The server socket.
+	 */
+	private void accept(final ServerSocket serverSocket) {
+		while (!serverSocket.isClosed()) {
+			try {
+				final Socket socket = serverSocket.accept();
+				mClientSockets.add(socket);
+				Thread clientThread = new Thread(() -> serve(socket), "GatewayClient-" + socket.getPort());
+				clientThread.setDaemon(true);
+				clientThread.start();
+			}
+			catch (SocketException e) {
+				// server socket closed.
+				return;
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Serve the requests of a client until it disconnects. Each client has its own thread, so that the request priority of the client is
+	 * kept as thread priority class.
+	 *
+	 * @param socket The client socket.
+	 */
+	private void serve(final Socket socket) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			if (in.readInt() != GatewayProtocol.MAGIC) {
+				return;
+			}
+			in.readByte();
+			final String token = in.readUTF();
+			out.writeByte(GatewayProtocol.VERSION);
+			if (!GatewayProtocol.isTokenValid(mToken, token)) {
+				out.writeByte(GatewayProtocol.STATUS_ERROR);
+				out.writeUTF("Invalid gateway token");
+				out.flush();
+				return;
+			}
+			out.writeByte(GatewayProtocol.STATUS_OK);
+			out.flush();
+
+			while (true) {
+				final byte opcode = in.readByte();
+				final byte priority = in.readByte();
+				final String mac = in.readUTF();
+				if (priority < 0 || priority >= RequestPriority.values().length) {
+					throw new IOException("Invalid priority " + priority);
+				}
+				RequestPriority.setCurrent(RequestPriority.values()[priority]);
+				handle(opcode, mac, in, out);
+				out.flush();
+			}
+		}
+		catch (EOFException | SocketException e) {
+			// client disconnected.
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+		finally {
+			mClientSockets.remove(socket);
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Handle one request. The payload is read completely before the light is called, so that errors of the light do not corrupt the
+	 * stream.
+	 *
+	 * @param opcode The opcode.
+	 * @param mac The MAC of the light.
+	 * @param in The input stream.
+	 * @param out The output stream.
+	 * @throws IOException Exception of the client connection.
+	 */
+	private void handle(final byte opcode, final String mac, final DataInputStream in, final DataOutputStream out) throws IOException {
+		switch (opcode) {
+		case GatewayProtocol.LIST_LIGHTS:
+			writeLights(out);
+			break;
+		case GatewayProtocol.ASSIGN_SHARD:
+			final int memberCount = in.readInt();
+			final List<String> members = new ArrayList<>();
+			for (int i = 0; i < memberCount; i++) {
+				members.add(in.readUTF());
+			}
+			final int ownedCount = assignShard(members, in.readUTF());
+			out.writeByte(GatewayProtocol.STATUS_OK);
+			out.writeInt(ownedCount);
+			break;
+		case GatewayProtocol.GET_POWER:
+			final long powerMaxAge = in.readLong();
+			execute(mac, out, light -> {
+				Power power = light.getPower(powerMaxAge);
+				return result -> {
+					result.writeBoolean(power != null);
+					result.writeShort(power == null ? 0 : power.getLevel());
+				};
+			});
+			break;
+		case GatewayProtocol.SET_POWER:
+			final boolean status = in.readBoolean();
+			final int powerDuration = in.readInt();
+			execute(mac, out, light -> {
+				light.setPower(status, powerDuration, false);
+				return null;
+			});
+			break;
+		case GatewayProtocol.GET_COLOR:
+			final long colorMaxAge = in.readLong();
+			execute(mac, out, light -> {
+				Color color = light.getColor(colorMaxAge);
+				return result -> {
+					result.writeBoolean(color != null);
+					result.writeLong(color == null ? 0 : color.asLong());
+				};
+			});
+			break;
+		case GatewayProtocol.SET_COLOR:
+			final Color color = new Color(in.readLong());
+			final int colorDuration = in.readInt();
+			execute(mac, out, light -> {
+				light.setColor(color, colorDuration, false);
+				return null;
+			});
+			break;
+		case GatewayProtocol.GET_ZONES:
+			execute(mac, out, light -> {
+				List<Color> colors = asMultiZoneLight(light).getColors();
+				if (colors == null) {
+					throw new IOException("Could not retrieve zone colors of " + mac);
+				}
+				long[] values = MultizoneFrame.from(new MultizoneColors.Exact(colors), colors.size()).getValues();
+				return result -> {
+					result.writeInt(values.length);
+					GatewayProtocol.writeValues(result, values);
+				};
+			});
+			break;
+		case GatewayProtocol.SET_ZONES:
+			final int zonesDuration = in.readInt();
+			final MultizoneFrame zones = new MultizoneFrame(GatewayProtocol.readValues(in, in.readInt()));
+			execute(mac, out, light -> {
+				asMultiZoneLight(light).setColors(zonesDuration, false, zones);
+				return null;
+			});
+			break;
+		case GatewayProtocol.GET_TILES:
+			execute(mac, out, light -> {
+				TileChain tileChain = asTileChain(light);
+				TileChainColors colors = tileChain.getColors();
+				if (colors == null) {
+					throw new IOException("Could not retrieve tile colors of " + mac);
+				}
+				TileChainFrame frame = TileChainFrame.from(colors, tileChain.getTotalWidth(), tileChain.getTotalHeight());
+				return result -> {
+					result.writeInt(frame.getWidth());
+					result.writeInt(frame.getHeight());
+					GatewayProtocol.writeValues(result, frame.getValues());
+				};
+			});
+			break;
+		case GatewayProtocol.SET_TILES:
+			final int tilesDuration = in.readInt();
+			final int width = in.readInt();
+			final int height = in.readInt();
+			final TileChainFrame tiles = new TileChainFrame(width, height, GatewayProtocol.readValues(in, width, height));
+			execute(mac, out, light -> {
+				asTileChain(light).setColors(tilesDuration, tiles);
+				return null;
+			});
+			break;
+		case GatewayProtocol.SET_POWER_MULTI:
+			final List<String> powerMacs = readMacs(in);
+			final boolean multiStatus = in.readBoolean();
+			final int multiPowerDuration = in.readInt();
+			executeMulti(powerMacs, out, light -> light.setPower(multiStatus, multiPowerDuration, false));
+			break;
+		case GatewayProtocol.SET_COLOR_MULTI:
+			final List<String> colorMacs = readMacs(in);
+			final Color multiColor = new Color(in.readLong());
+			final int multiColorDuration = in.readInt();
+			executeMulti(colorMacs, out, light -> light.setColor(multiColor, multiColorDuration, false));
+			break;
+		case GatewayProtocol.APPLY_SCENE:
+			final int sceneCount = GatewayProtocol.readLightCount(in);
+			final Map<String, Color> sceneColors = new LinkedHashMap<>();
+			for (int i = 0; i < sceneCount; i++) {
+				sceneColors.put(in.readUTF().toUpperCase(Locale.ENGLISH), new Color(in.readLong()));
+			}
+			final int sceneDuration = in.readInt();
+			executeMulti(new ArrayList<>(sceneColors.keySet()), out,
+					light -> light.setColor(sceneColors.get(light.getTargetAddress().toUpperCase(Locale.ENGLISH)), sceneDuration, false));
+			break;
+		default:
+			throw new IOException("Invalid opcode " + opcode);
+		}
+	}
+
+	/**
+	 * Read the MACs of a request addressing several lights.
+	 *
+	 * @param in The input stream.
+	 * @return The MACs.
+	 * @throws IOException Exception of the client connection.
+	 */
+	private static List<String> readMacs(final DataInputStream in) throws IOException {
+		final int count = GatewayProtocol.readLightCount(in);
+		List<String> macs = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			macs.add(in.readUTF());
+		}
+		return macs;
+	}
+
+	/**
+	 * Write the list of lights.
+	 *
+	 * @param out The output stream.
+	 * @throws IOException Exception of the client connection.
+	 */
+	private void writeLights(final DataOutputStream out) throws IOException {
+		List<Light> lights = getLights();
+		out.writeByte(GatewayProtocol.STATUS_OK);
+		out.writeInt(lights.size());
+		for (Light light : lights) {
+			out.writeUTF(light.getTargetAddress());
+			String label = light.getLabel();
+			out.writeUTF(label == null ? "" : label);
+			if (light instanceof MultiZoneLight) {
+				out.writeByte(GatewayProtocol.TYPE_MULTIZONE);
+				out.writeInt(((MultiZoneLight) light).getZoneCount());
+			}
+			else if (light instanceof TileChain) {
+				out.writeByte(GatewayProtocol.TYPE_TILE_CHAIN);
+				out.writeInt(((TileChain) light).getTotalWidth());
+				out.writeInt(((TileChain) light).getTotalHeight());
+			}
+			else {
+				out.writeByte(GatewayProtocol.TYPE_LIGHT);
+			}
+		}
+	}
+
+	/**
+	 * Execute a command on a light and write the response.
+	 *
+	 * @param mac The MAC of the light.
+	 * @param out The output stream.
+	 * @param command The command.
+	 * @throws IOException Exception of the client connection.
+	 */
+	private void execute(final String mac, final DataOutputStream out, final LightCommand command) throws IOException {
+		ResponseWriter responseWriter;
+		try {
+			Light light = mLights.get(mac.toUpperCase(Locale.ENGLISH));
+			if (light == null) {
+				throw new IOException("Unknown light " + mac);
+			}
+			if (!isOwned(mac)) {
+				throw new IOException("Light " + mac + " is owned by another gateway");
+			}
+			responseWriter = command.execute(light);
+		}
+		catch (IOException | RuntimeException e) {
+			out.writeByte(GatewayProtocol.STATUS_ERROR);
+			out.writeUTF(e.getMessage() == null ? e.toString() : e.getMessage());
+			return;
+		}
+		out.writeByte(GatewayProtocol.STATUS_OK);
+		if (responseWriter != null) {
+			responseWriter.write(out);
+		}
+	}
+
+	/**
+	 * Execute a command on several lights in parallel and write the failures.
+	 *
+	 * @param macs The MACs of the lights.
+	 * @param out The output stream.
+	 * @param command The command.
+	 * @throws IOException Exception of the client connection.
+	 */
+	private void executeMulti(final List<String> macs, final DataOutputStream out, final FanOut.DeviceCommand<Light> command)
+			throws IOException {
+		Map<String, String> failures = new LinkedHashMap<>();
+		List<Light> lights = new ArrayList<>();
+		for (String mac : macs) {
+			Light light = mLights.get(mac.toUpperCase(Locale.ENGLISH));
+			if (light == null) {
+				failures.put(mac, "Unknown light " + mac);
+			}
+			else if (!isOwned(mac)) {
+				failures.put(mac, "Light " + mac + " is owned by another gateway");
+			}
+			else {
+				lights.add(light);
+			}
+		}
+		for (FanOutResult.DeviceResult deviceResult : FanOut.execute(lights, command).getDeviceResults()) {
+			if (!deviceResult.isSuccess()) {
+				IOException exception = deviceResult.getException();
+				failures.put(deviceResult.getDevice().getTargetAddress(),
+						exception.getMessage() == null ? exception.toString() : exception.getMessage());
+			}
+		}
+
+		out.writeByte(GatewayProtocol.STATUS_OK);
+		out.writeInt(failures.size());
+		for (Map.Entry<String, String> failure : failures.entrySet()) {
+			out.writeUTF(failure.getKey());
+			out.writeUTF(failure.getValue());
+		}
+	}
+
+	/**
+	 * Get a light as multizone light.
+	 *
+	 * @param light The light.
+	 * @return The multizone light.
+	 * @throws IOException if the light is no multizone light.
+	 */
+	private static MultiZoneLight asMultiZoneLight(final Light light) throws IOException {
+		if (!(light instanceof MultiZoneLight)) {
+			throw new IOException("Light " + light.getTargetAddress() + " is no multizone light");
+		}
+		return (MultiZoneLight) light;
+	}
+
+	/**
+	 * Get a light as tile chain.
+	 *
+	 * @param light The light.
+	 * @return The tile chain.
+	 * @throws IOException if the light is no tile chain.
+	 */
+	private static TileChain asTileChain(final Light light) throws IOException {
+		if (!(light instanceof TileChain)) {
+			throw new IOException("Light " + light.getTargetAddress() + " is no tile chain");
+		}
+		return (TileChain) light;
+	}
+
+	/**
+	 * A command executed on a light.
+	 */
+	@FunctionalInterface
+	private interface LightCommand {
+		/**
+		 * Execute the command.
+		 *
+		 * @param light The light.
+		 * @return The writer of the response payload. Null for no payload.
+		 * @throws IOException Exception of the light.
+		 */
+		ResponseWriter execute(Light light) throws IOException;
+	}
+
+	/**
+	 * A writer of a response payload.
+	 */
+	@FunctionalInterface
+	private interface ResponseWriter {
+		/**
+		 * Write the payload.
+		 *
+		 * @param out The output stream.
+		 * @throws IOException Exception of the client connection.
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+}
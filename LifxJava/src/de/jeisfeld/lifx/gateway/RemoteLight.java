@@ -0,0 +1,156 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.IOException;
+
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A light controlled via the gateway, mirroring the API of Light.
+ */
+public class RemoteLight {
+	/**
+	 * The gateway client.
+	 */
+	private final GatewayClient mClient;
+	/**
+	 * The MAC of the light.
+	 */
+	private final String mTargetAddress;
+	/**
+	 * The label of the light at the time of listing.
+	 */
+	private final String mLabel;
+
+	/**
+	 * Create a remote light.
+	 *
+	 * @param client The gateway client.
+	 * @param targetAddress The MAC of the light.
+	 * @param label The label of the light.
+	 */
+	protected RemoteLight(final GatewayClient client, final String targetAddress, final String label) {
+		mClient = client;
+		mTargetAddress = targetAddress;
+		mLabel = label;
+	}
+
+	/**
+	 * Get the gateway client.
+	 *
+	 * @return The gateway client.
+	 */
+	protected final GatewayClient getClient() {
+		return mClient;
+	}
+
+	/**
+	 * Get the target address.
+	 *
+	 * @return the target address
+	 */
+	public final String getTargetAddress() {
+		return mTargetAddress;
+	}
+
+	/**
+	 * Get the label.
+	 *
+	 * @return the label
+	 */
+	public final String getLabel() {
+		return mLabel;
+	}
+
+	/**
+	 * Get the power.
+	 *
+	 * @return the power. Null if it could not be retrieved.
+	 */
+	public final Power getPower() {
+		return getPower(0);
+	}
+
+	/**
+	 * Get the power, served from the state mirror of the gateway if observed recently enough.
+	 *
+	 * @param maxAge The max age of the mirrored value in millis.
+	 * @return the power. Null if it could not be retrieved.
+	 */
+	public final Power getPower(final long maxAge) {
+		try {
+			return mClient.request(GatewayProtocol.GET_POWER, mTargetAddress, out -> out.writeLong(maxAge), in -> {
+				boolean isKnown = in.readBoolean();
+				short level = in.readShort();
+				return isKnown ? new Power(level) : null;
+			});
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Set the power.
+	 *
+	 * @param status true for switching on, false for switching off
+	 * @param duration the duration of power change in millis.
+	 * @throws IOException Connection issues
+	 */
+	public final void setPower(final boolean status, final int duration) throws IOException {
+		mClient.request(GatewayProtocol.SET_POWER, mTargetAddress, out -> {
+			out.writeBoolean(status);
+			out.writeInt(duration);
+		}, null);
+	}
+
+	/**
+	 * Get the color.
+	 *
+	 * @return the color. Null if it could not be retrieved.
+	 */
+	public final Color getColor() {
+		return getColor(0);
+	}
+
+	/**
+	 * Get the color, served from the state mirror of the gateway if observed recently enough.
+	 *
+	 * @param maxAge The max age of the mirrored value in millis.
+	 * @return the color. Null if it could not be retrieved.
+	 */
+	public final Color getColor(final long maxAge) {
+		try {
+			return mClient.request(GatewayProtocol.GET_COLOR, mTargetAddress, out -> out.writeLong(maxAge), in -> {
+				boolean isKnown = in.readBoolean();
+				long value = in.readLong();
+				return isKnown ? new Color(value) : null;
+			});
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Set the color.
+	 *
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColor(final Color color, final int duration) throws IOException {
+		mClient.request(GatewayProtocol.SET_COLOR, mTargetAddress, out -> {
+			out.writeLong(color.asLong());
+			out.writeInt(duration);
+		}, null);
+	}
+
+	@Override
+	public final String toString() {
+		return getClass().getSimpleName() + "[" + mTargetAddress + ", " + mLabel + "]";
+	}
+}
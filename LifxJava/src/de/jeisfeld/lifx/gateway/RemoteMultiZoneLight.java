@@ -0,0 +1,85 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.MultizoneFrame;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A multizone light controlled via the gateway, mirroring the API of MultiZoneLight.
+ */
+public class RemoteMultiZoneLight extends RemoteLight {
+	/**
+	 * The number of zones.
+	 */
+	private final int mZoneCount;
+
+	/**
+	 * Create a remote multizone light.
+	 *
+	 * @param client The gateway client.
+	 * @param targetAddress The MAC of the light.
+	 * @param label The label of the light.
+	 * @param zoneCount The number of zones.
+	 */
+	protected RemoteMultiZoneLight(final GatewayClient client, final String targetAddress, final String label, final int zoneCount) {
+		super(client, targetAddress, label);
+		mZoneCount = zoneCount;
+	}
+
+	/**
+	 * Get the number of zones.
+	 *
+	 * @return The number of zones.
+	 */
+	public int getZoneCount() {
+		return mZoneCount;
+	}
+
+	/**
+	 * Get the colors of all zones.
+	 *
+	 * @return The colors of all zones. Null if they could not be retrieved.
+	 */
+	public final List<Color> getColors() {
+		try {
+			MultizoneFrame frame = getClient().request(GatewayProtocol.GET_ZONES, getTargetAddress(), null,
+					in -> new MultizoneFrame(GatewayProtocol.readValues(in, in.readInt())));
+			return Arrays.asList(frame.asMultizoneColors().getColors(frame.getZoneCount()));
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Set the colors of all zones.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @param frame The zone colors.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColors(final int duration, final MultizoneFrame frame) throws IOException {
+		getClient().request(GatewayProtocol.SET_ZONES, getTargetAddress(), out -> {
+			out.writeInt(duration);
+			out.writeInt(frame.size());
+			GatewayProtocol.writeValues(out, frame.getValues());
+		}, null);
+	}
+
+	/**
+	 * Set the colors of all zones.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @param colors The zone colors.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColors(final int duration, final MultizoneColors colors) throws IOException {
+		setColors(duration, MultizoneFrame.from(colors, mZoneCount));
+	}
+}
@@ -0,0 +1,101 @@
+package de.jeisfeld.lifx.gateway;
+
+import java.io.IOException;
+
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileChainFrame;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A tile chain controlled via the gateway, mirroring the API of TileChain.
+ */
+public class RemoteTileChain extends RemoteLight {
+	/**
+	 * The total width of the tile chain.
+	 */
+	private final int mTotalWidth;
+	/**
+	 * The total height of the tile chain.
+	 */
+	private final int mTotalHeight;
+
+	/**
+	 * Create a remote tile chain.
+	 *
+	 * @param client The gateway client.
+	 * @param targetAddress The MAC of the light.
+	 * @param label The label of the light.
+	 * @param totalWidth The total width of the tile chain.
+	 * @param totalHeight The total height of the tile chain.
+	 */
+	protected RemoteTileChain(final GatewayClient client, final String targetAddress, final String label, final int totalWidth,
+			final int totalHeight) {
+		super(client, targetAddress, label);
+		mTotalWidth = totalWidth;
+		mTotalHeight = totalHeight;
+	}
+
+	/**
+	 * Get the total width of the tile chain.
+	 *
+	 * @return The total width.
+	 */
+	public int getTotalWidth() {
+		return mTotalWidth;
+	}
+
+	/**
+	 * Get the total height of the tile chain.
+	 *
+	 * @return The total height.
+	 */
+	public int getTotalHeight() {
+		return mTotalHeight;
+	}
+
+	/**
+	 * Get the colors of all tiles.
+	 *
+	 * @return The colors of all tiles. Null if they could not be retrieved.
+	 */
+	public final TileChainColors getColors() {
+		try {
+			return getClient().request(GatewayProtocol.GET_TILES, getTargetAddress(), null, in -> {
+				int width = in.readInt();
+				int height = in.readInt();
+				return new TileChainFrame(width, height, GatewayProtocol.readValues(in, width, height));
+			}).asTileChainColors();
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Set the colors of all tiles.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @param frame The tile colors.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColors(final int duration, final TileChainFrame frame) throws IOException {
+		getClient().request(GatewayProtocol.SET_TILES, getTargetAddress(), out -> {
+			out.writeInt(duration);
+			out.writeInt(frame.getWidth());
+			out.writeInt(frame.getHeight());
+			GatewayProtocol.writeValues(out, frame.getValues());
+		}, null);
+	}
+
+	/**
+	 * Set the colors of all tiles.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @param colors The tile colors.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColors(final int duration, final TileChainColors colors) throws IOException {
+		setColors(duration, TileChainFrame.from(colors, mTotalWidth, mTotalHeight));
+	}
+}
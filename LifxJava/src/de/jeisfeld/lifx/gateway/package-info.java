@@ -0,0 +1,4 @@
+/**
+ * Classes for sharing one LIFX LAN transport between several local clients via a gateway process.
+ */
+package de.jeisfeld.lifx.gateway;
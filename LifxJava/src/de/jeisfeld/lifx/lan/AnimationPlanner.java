@@ -0,0 +1,216 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.Random;
+
+import de.jeisfeld.lifx.lan.Light.AnimationCallback;
+import de.jeisfeld.lifx.lan.Light.BaseAnimationThread;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileEffectInfo;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Planner deciding how an animation is executed. If the device firmware can run the animation as effect, then the effect is used, so that
+ * no traffic is required while the animation runs. Otherwise the frames are computed and streamed by the host.
+ */
+public final class AnimationPlanner {
+	/**
+	 * The number of frames of one cycle of host driven morph animation.
+	 */
+	private static final int MORPH_FRAME_COUNT = 64;
+	/**
+	 * The frame duration of host driven flame animation.
+	 */
+	private static final int FLAME_FRAME_DURATION = 200;
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private AnimationPlanner() {
+	}
+
+	/**
+	 * Check if the device supports firmware effects.
+	 *
+	 * @param light The device.
+	 * @return true if firmware effects are supported.
+	 */
+	public static boolean hasFirmwareEffects(final Light light) {
+		if (light instanceof MultiZoneLight) {
+			return ((MultiZoneLight) light).hasExtendedApi();
+		}
+		else if (light instanceof TileChain) {
+			return ((TileChain) light).hasTileEffects();
+		}
+		else {
+			return false;
+		}
+	}
+
+	/**
+	 * Plan an animation rolling colors cyclically along the stripe.
+	 *
+	 * @param light The multizone light.
+	 * @param duration The duration of one rolling cycle. Negative values roll backwards.
+	 * @param colors The colors.
+	 * @return The animation plan.
+	 */
+	public static AnimationPlan planRolling(final MultiZoneLight light, final int duration, final MultizoneColors colors) {
+		if (hasFirmwareEffects(light)) {
+			return new AnimationPlan(ExecutionMode.FIRMWARE_EFFECT,
+					light.effectAnimation(colors, new MultizoneEffectInfo.Move(Math.abs(duration), duration < 0)));
+		}
+		else {
+			return new AnimationPlan(ExecutionMode.HOST_STREAMING, light.rollingAnimation(duration, colors));
+		}
+	}
+
+	/**
+	 * Plan a morph animation on a tile chain.
+	 *
+	 * @param tileChain The tile chain.
+	 * @param speed The duration of one morph cycle in millis.
+	 * @param colors The palette colors.
+	 * @return The animation plan.
+	 */
+	public static AnimationPlan planMorph(final TileChain tileChain, final int speed, final Color... colors) {
+		if (hasFirmwareEffects(tileChain)) {
+			return new AnimationPlan(ExecutionMode.FIRMWARE_EFFECT, tileChain.effectAnimation(new TileEffectInfo.Morph(speed, colors)));
+		}
+		final MultizoneColors palette = new MultizoneColors.Interpolated(true, colors);
+		return new AnimationPlan(ExecutionMode.HOST_STREAMING, tileChain.animation(new TileChain.AnimationDefinition() {
+			@Override
+			public TileChainColors getColors(final int n) {
+				return new TileChainColors() {
+					@Override
+					public Color getColor(final int x, final int y, final int width, final int height) {
+						return palette.getColor(x + y + n, MORPH_FRAME_COUNT);
+					}
+				};
+			}
+
+			@Override
+			public int getDuration(final int n) {
+				return Math.max(speed, 0) / MORPH_FRAME_COUNT;
+			}
+		}));
+	}
+
+	/**
+	 * Plan a flame animation on a tile chain.
+	 *
+	 * @param tileChain The tile chain.
+	 * @param speed The speed of the flame.
+	 * @return The animation plan.
+	 */
+	public static AnimationPlan planFlame(final TileChain tileChain, final int speed) {
+		if (hasFirmwareEffects(tileChain)) {
+			return new AnimationPlan(ExecutionMode.FIRMWARE_EFFECT, tileChain.effectAnimation(new TileEffectInfo.Flame(speed)));
+		}
+		final Random random = new Random();
+		return new AnimationPlan(ExecutionMode.HOST_STREAMING, tileChain.animation(new TileChain.AnimationDefinition() {
+			@Override
+			public TileChainColors getColors(final int n) {
+				return new TileChainColors() {
+					@Override
+					public Color getColor(final int x, final int y, final int width, final int height) {
+						double heightQuota = height <= 1 ? 0 : (double) y / (height - 1);
+						double brightness = Math.max(0, 1 - heightQuota * (0.5 + 0.5 * random.nextDouble())); // MAGIC_NUMBER
+						return new Color(40 * random.nextDouble(), 1, brightness, Color.WHITE_TEMPERATURE); // MAGIC_NUMBER
+					}
+				};
+			}
+
+			@Override
+			public int getDuration(final int n) {
+				return FLAME_FRAME_DURATION;
+			}
+		}));
+	}
+
+	/**
+	 * The way how an animation is executed.
+	 */
+	public enum ExecutionMode {
+		/**
+		 * The animation runs as effect in the device firmware.
+		 */
+		FIRMWARE_EFFECT,
+		/**
+		 * The animation frames are computed by the host and streamed to the device.
+		 */
+		HOST_STREAMING
+	}
+
+	/**
+	 * The result of the planning - the chosen execution mode and the thread executing the animation.
+	 */
+	public static final class AnimationPlan {
+		/**
+		 * The execution mode.
+		 */
+		private final ExecutionMode mExecutionMode;
+		/**
+		 * The thread executing the animation.
+		 */
+		private final BaseAnimationThread mThread;
+
+		/**
+		 * Create an animation plan.
+		 *
+		 * @param executionMode The execution mode.
+		 * @param thread The thread executing the animation.
+		 */
+		private AnimationPlan(final ExecutionMode executionMode, final BaseAnimationThread thread) {
+			mExecutionMode = executionMode;
+			mThread = thread;
+			Logger.info("Planned animation with execution mode " + executionMode);
+		}
+
+		/**
+		 * Get the execution mode chosen for the animation.
+		 *
+		 * @return The execution mode.
+		 */
+		public ExecutionMode getExecutionMode() {
+			return mExecutionMode;
+		}
+
+		/**
+		 * Get the thread executing the animation.
+		 *
+		 * @return The thread.
+		 */
+		public BaseAnimationThread getThread() {
+			return mThread;
+		}
+
+		/**
+		 * Set the exception callback called in case of Exception.
+		 *
+		 * @param callback The callback.
+		 * @return The updated animation plan.
+		 */
+		public AnimationPlan setAnimationCallback(final AnimationCallback callback) {
+			mThread.setAnimationCallback(callback);
+			return this;
+		}
+
+		/**
+		 * Start the animation.
+		 *
+		 * @return The animation plan.
+		 */
+		public AnimationPlan start() {
+			mThread.start();
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "AnimationPlan[" + mExecutionMode + "]";
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A value retrieved from a device and cached for a time to live. When the value is read after a large part of its time to live has
+ * passed, it is refreshed in the background, so that frequent readers are served from the cache while the value still converges to the
+ * device state. Values marked as stale on error are also served after expiry while being refreshed in the background, so that only the
+ * first read of such a value waits for the device.
+ *
+ * @param <T> The value type.
+ */
+public class CachedValue<T> {
+	/**
+	 * Time to live for values which are cached until invalidated.
+	 */
+	public static final long INFINITE = Long.MAX_VALUE;
+	/**
+	 * The part of the time to live after which a read triggers a refresh in the background.
+	 */
+	private static final double REFRESH_AHEAD_FRACTION = 0.75;
+
+	/**
+	 * The retriever of the value.
+	 */
+	private final Retriever<T> mRetriever;
+	/**
+	 * Flag indicating if the last value should be served after expiry or if the retrieval fails.
+	 */
+	private final boolean mIsStaleOnError;
+	/**
+	 * The time to live in millis.
+	 */
+	private volatile long mTimeToLive;
+	/**
+	 * The cached value. Null if not cached.
+	 */
+	private T mValue = null;
+	/**
+	 * The time when the cached value was retrieved.
+	 */
+	private long mRetrievalTime = 0;
+	/**
+	 * A counter increased on each invalidation, so that retrievals started before are not stored.
+	 */
+	private int mGeneration = 0;
+	/**
+	 * Flag indicating if a background refresh is running.
+	 */
+	private final AtomicBoolean mIsRefreshing = new AtomicBoolean(false);
+
+	/**
+	 * Create a cached value.
+	 *
+	 * @param retriever The retriever of the value.
+	 * @param timeToLive The time to live in millis.
+	 * @param isStaleOnError Flag indicating if the last value should be served after expiry while refreshing in the background, and (for
+	 *            another time to live) if the retrieval fails.
+	 */
+	public CachedValue(final Retriever<T> retriever, final long timeToLive, final boolean isStaleOnError) {
+		mRetriever = retriever;
+		mTimeToLive = timeToLive;
+		mIsStaleOnError = isStaleOnError;
+	}
+
+	/**
+	 * Get the value. It is served from the cache if not expired, otherwise it is retrieved. Expired values which are stale on error are
+	 * served from the cache and refreshed in the background.
+	 *
+	 * @return The value. Null if it could not be retrieved.
+	 */
+	public T get() {
+		final long timeToLive = mTimeToLive;
+		final T value;
+		final long age;
+		synchronized (this) {
+			value = mValue;
+			age = System.currentTimeMillis() - mRetrievalTime;
+		}
+		if (value != null && age < timeToLive) {
+			if (timeToLive != INFINITE && age >= timeToLive * REFRESH_AHEAD_FRACTION) {
+				// the current value is still valid, so the refresh may wait for spare device budget.
+				refreshInBackground(RequestPriority.BACKGROUND);
+			}
+			return value;
+		}
+		if (value != null && mIsStaleOnError) {
+			// do not block the caller, which may be a UI thread, while a value is known.
+			refreshInBackground(RequestPriority.INTERACTIVE);
+			return value;
+		}
+
+		try {
+			return retrieve();
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			synchronized (this) {
+				if (mIsStaleOnError && mValue != null) {
+					// serve the last value and retry only after another time to live.
+					mRetrievalTime = System.currentTimeMillis();
+					return mValue;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Get the value if it is cached, also after expiry. Expired values are refreshed in the background, so that the caller never waits for
+	 * the device.
+	 *
+	 * @return The cached value. Null if not cached.
+	 */
+	public T getCached() {
+		final T value;
+		final long age;
+		synchronized (this) {
+			value = mValue;
+			age = System.currentTimeMillis() - mRetrievalTime;
+		}
+		if (value != null && age >= mTimeToLive) {
+			refreshInBackground(RequestPriority.INTERACTIVE);
+		}
+		return value;
+	}
+
+	/**
+	 * Refresh the value in the background, unless a refresh is already running.
+	 *
+	 * @param priority The priority of the refresh.
+	 */
+	private void refreshInBackground(final RequestPriority priority) {
+		if (!mIsRefreshing.compareAndSet(false, true)) {
+			return;
+		}
+		LifxLan.getInstance().getExecutor().execute(() -> {
+			RequestPriority previousPriority = RequestPriority.setCurrent(priority);
+			try {
+				retrieve();
+			}
+			catch (MessageDroppedException e) {
+				// retry on next read.
+			}
+			catch (IOException e) {
+				Logger.error(e);
+				synchronized (this) {
+					if (mIsStaleOnError && mValue != null) {
+						// retry only after another time to live.
+						mRetrievalTime = System.currentTimeMillis();
+					}
+				}
+			}
+			finally {
+				RequestPriority.setCurrent(previousPriority);
+				mIsRefreshing.set(false);
+			}
+		});
+	}
+
+	/**
+	 * Retrieve the value and store it, unless the cache was invalidated in the meantime.
+	 *
+	 * @return The retrieved value.
+	 * @throws IOException Exception while retrieving the value.
+	 */
+	private T retrieve() throws IOException {
+		final int generation;
+		synchronized (this) {
+			generation = mGeneration;
+		}
+		T value = mRetriever.retrieve();
+		synchronized (this) {
+			if (generation == mGeneration && value != null) {
+				mValue = value;
+				mRetrievalTime = System.currentTimeMillis();
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Store a known value in the cache.
+	 *
+	 * @param value The value.
+	 */
+	public synchronized void set(final T value) {
+		mGeneration++;
+		mValue = value;
+		mRetrievalTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Invalidate the cache, e.g. after changing the value on the device. Retrievals running in parallel are not stored.
+	 */
+	public synchronized void invalidate() {
+		mGeneration++;
+		mValue = null;
+		mRetrievalTime = 0;
+	}
+
+	/**
+	 * Set the time to live.
+	 *
+	 * @param timeToLive The time to live in millis. 0 for no caching, INFINITE for caching until invalidated.
+	 */
+	public void setTimeToLive(final long timeToLive) {
+		mTimeToLive = timeToLive;
+	}
+
+	/**
+	 * Get the time to live.
+	 *
+	 * @return The time to live in millis.
+	 */
+	public long getTimeToLive() {
+		return mTimeToLive;
+	}
+
+	@Override
+	public final synchronized String toString() {
+		return "CachedValue[" + mValue + ", ttl=" + mTimeToLive + "]";
+	}
+
+	/**
+	 * Retriever of a value from the device.
+	 *
+	 * @param <T> The value type.
+	 */
+	@FunctionalInterface
+	public interface Retriever<T> {
+		/**
+		 * Retrieve the value.
+		 *
+		 * @return The value.
+		 * @throws IOException Exception while retrieving the value.
+		 */
+		T retrieve() throws IOException;
+	}
+}
@@ -10,6 +10,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
+import de.jeisfeld.lifx.lan.DeviceStateChange.Type;
 import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
 import de.jeisfeld.lifx.lan.message.EchoRequest;
 import de.jeisfeld.lifx.lan.message.GetGroup;
@@ -76,25 +77,41 @@ public class Device {
 	 */
 	private int mVersion = 0;
 	/**
-	 * The label.
+	 * The cached label.
 	 */
-	private String mLabel = null;
+	private final CachedValue<String> mLabel = createCachedValue(CachedField.LABEL, this::retrieveLabel);
 	/**
-	 * The location.
+	 * The cached location.
 	 */
-	private Location mLocation = null;
+	private final CachedValue<Location> mLocation = createCachedValue(CachedField.LOCATION, this::retrieveLocation);
 	/**
-	 * The group.
+	 * The cached group.
 	 */
-	private Group mGroup = null;
+	private final CachedValue<Group> mGroup = createCachedValue(CachedField.GROUP, this::retrieveGroup);
 	/**
-	 * The host firmware version.
+	 * The cached host firmware version.
 	 */
-	private String mHostFirmwareVersion = null;
+	private final CachedValue<String> mHostFirmwareVersion = createCachedValue(CachedField.HOST_FIRMWARE, this::retrieveHostFirmware);
 	/**
-	 * The wifi firmware version.
+	 * The cached wifi firmware version.
 	 */
-	private String mWifiFirmwareVersion = null;
+	private final CachedValue<String> mWifiFirmwareVersion = createCachedValue(CachedField.WIFI_FIRMWARE, this::retrieveWifiFirmware);
+	/**
+	 * The cached power.
+	 */
+	private final CachedValue<Power> mPower = createCachedValue(CachedField.POWER, this::retrievePower);
+	/**
+	 * The cached boot time (as uptime changes continuously).
+	 */
+	private final CachedValue<Long> mBootTime = createCachedValue(CachedField.UPTIME, this::retrieveBootTime);
+	/**
+	 * The cached host info.
+	 */
+	private final CachedValue<ConnectionInfo> mHostInfo = createCachedValue(CachedField.HOST_INFO, this::retrieveHostInfo);
+	/**
+	 * The cached wifi info.
+	 */
+	private final CachedValue<ConnectionInfo> mWifiInfo = createCachedValue(CachedField.WIFI_INFO, this::retrieveWifiInfo);
 	/**
 	 * The firmware build time.
 	 */
@@ -136,7 +153,7 @@ public class Device {
 			final Vendor vendor, final Product product, final int version, final String label) {
 		this(targetAddress, inetAddress, port, sourceId);
 		setVersionInformation(vendor, product, version);
-		mLabel = label;
+		mLabel.set(label);
 	}
 
 	/**
@@ -176,11 +193,7 @@ public class Device {
 	 */
 	public void reset() throws IOException {
 		retrieveVersionInformation();
-		mLabel = null;
-		mLocation = null;
-		mGroup = null;
-		mHostFirmwareVersion = null;
-		mWifiFirmwareVersion = null;
+		invalidateCache(CachedField.values());
 	}
 
 	/**
@@ -209,52 +222,90 @@ public class Device {
 	/**
 	 * Get Label via GetLabel call.
 	 *
+	 * @return The label.
 	 * @throws IOException Exception while retrieving data.
 	 */
-	private void retrieveLabel() throws IOException {
+	private String retrieveLabel() throws IOException {
 		StateLabel stateLabel = (StateLabel) getConnection().requestWithResponse(new GetLabel());
-		mLabel = stateLabel.getLabel();
+		return stateLabel.getLabel();
 	}
 
 	/**
 	 * Get Location via GetLocation call.
 	 *
+	 * @return The location.
 	 * @throws IOException Exception while retrieving data.
 	 */
-	private void retrieveLocation() throws IOException {
+	private Location retrieveLocation() throws IOException {
 		StateLocation stateLocation = (StateLocation) getConnection().requestWithResponse(new GetLocation());
-		mLocation = stateLocation.getLocation();
+		return stateLocation.getLocation();
 	}
 
 	/**
 	 * Get Group via GetGroup call.
 	 *
+	 * @return The group.
 	 * @throws IOException Exception while retrieving data.
 	 */
-	private void retrieveGroup() throws IOException {
+	private Group retrieveGroup() throws IOException {
 		StateGroup stateGroup = (StateGroup) getConnection().requestWithResponse(new GetGroup());
-		mGroup = stateGroup.getGroup();
+		return stateGroup.getGroup();
 	}
 
 	/**
-	 * Get Group via GetHostFirmware call.
+	 * Get host firmware version and build time via GetHostFirmware call.
 	 *
+	 * @return The host firmware version.
 	 * @throws IOException Exception while retrieving data.
 	 */
-	private void retrieveHostFirmware() throws IOException {
+	private String retrieveHostFirmware() throws IOException {
 		StateHostFirmware stateHostFirmware = (StateHostFirmware) getConnection().requestWithResponse(new GetHostFirmware());
-		mHostFirmwareVersion = stateHostFirmware.getMajorVersion() + "." + stateHostFirmware.getMinorVersion();
 		mFirmwareBuildTime = stateHostFirmware.getBuildTime(); // MAGIC_NUMBER
+		return stateHostFirmware.getMajorVersion() + "." + stateHostFirmware.getMinorVersion();
 	}
 
 	/**
-	 * Get Group via GetWifiFirmware call.
+	 * Get wifi firmware version via GetWifiFirmware call.
 	 *
+	 * @return The wifi firmware version.
 	 * @throws IOException Exception while retrieving data.
 	 */
-	private void retrieveWifiFirmware() throws IOException {
+	private String retrieveWifiFirmware() throws IOException {
 		StateWifiFirmware stateWifiFirmware = (StateWifiFirmware) getConnection().requestWithResponse(new GetWifiFirmware());
-		mWifiFirmwareVersion = stateWifiFirmware.getMajorVersion() + "." + stateWifiFirmware.getMinorVersion();
+		return stateWifiFirmware.getMajorVersion() + "." + stateWifiFirmware.getMinorVersion();
+	}
+
+	/**
+	 * Get the boot time via GetInfo call.
+	 *
+	 * @return The boot time in millis.
+	 * @throws IOException Exception while retrieving data.
+	 */
+	private Long retrieveBootTime() throws IOException {
+		StateInfo stateInfo = (StateInfo) getConnection().requestWithResponse(new GetInfo());
+		return System.currentTimeMillis() - stateInfo.getUptime().toMillis();
+	}
+
+	/**
+	 * Get the host info via GetHostInfo call.
+	 *
+	 * @return The host info.
+	 * @throws IOException Exception while retrieving data.
+	 */
+	private ConnectionInfo retrieveHostInfo() throws IOException {
+		StateHostInfo stateHostInfo = (StateHostInfo) getConnection().requestWithResponse(new GetHostInfo());
+		return stateHostInfo.getConnectionInfo();
+	}
+
+	/**
+	 * Get the wifi info via GetWifiInfo call.
+	 *
+	 * @return The wifi info.
+	 * @throws IOException Exception while retrieving data.
+	 */
+	private ConnectionInfo retrieveWifiInfo() throws IOException {
+		StateWifiInfo stateWifiInfo = (StateWifiInfo) getConnection().requestWithResponse(new GetWifiInfo());
+		return stateWifiInfo.getConnectionInfo();
 	}
 
 	@Override
@@ -363,15 +414,30 @@ public class Device {
 	 * @return the label
 	 */
 	public final String getLabel() {
-		if (mLabel == null) {
-			try {
-				retrieveLabel();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
+		return mLabel.get();
+	}
+
+	/**
+	 * Get the label, served from the device state mirror if observed recently enough. Otherwise it is retrieved from the device.
+	 *
+	 * @param maxAge The max age of the mirrored value in millis.
+	 * @return the label
+	 */
+	public final String getLabel(final long maxAge) {
+		String label = DeviceStateMirror.getInstance().getLabel(getTargetAddress(), maxAge);
+		if (label != null) {
+			return label;
+		}
+		try {
+			// the cache cannot be more recent than the mirror, which also observes the responses retrieved for the cache.
+			label = retrieveLabel();
+			mLabel.set(label);
+			return label;
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return getLabel();
 		}
-		return mLabel;
 	}
 
 	/**
@@ -380,15 +446,7 @@ public class Device {
 	 * @return the location
 	 */
 	public final Location getLocation() {
-		if (mLocation == null) {
-			try {
-				retrieveLocation();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
-		}
-		return mLocation;
+		return mLocation.get();
 	}
 
 	/**
@@ -397,15 +455,25 @@ public class Device {
 	 * @return the group
 	 */
 	public final Group getGroup() {
-		if (mGroup == null) {
-			try {
-				retrieveGroup();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
-		}
-		return mGroup;
+		return mGroup.get();
+	}
+
+	/**
+	 * Get the location if it is cached, without waiting for the device.
+	 *
+	 * @return the cached location. Null if not cached.
+	 */
+	final Location getCachedLocation() {
+		return mLocation.getCached();
+	}
+
+	/**
+	 * Get the group if it is cached, without waiting for the device.
+	 *
+	 * @return the cached group. Null if not cached.
+	 */
+	final Group getCachedGroup() {
+		return mGroup.getCached();
 	}
 
 	/**
@@ -414,15 +482,7 @@ public class Device {
 	 * @return the host firmware version
 	 */
 	public final String getHostFirmwareVersion() {
-		if (mHostFirmwareVersion == null) {
-			try {
-				retrieveHostFirmware();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
-		}
-		return mHostFirmwareVersion;
+		return mHostFirmwareVersion.get();
 	}
 
 	/**
@@ -432,12 +492,8 @@ public class Device {
 	 */
 	public final Date getFirmwareBuildTime() {
 		if (mFirmwareBuildTime == null) {
-			try {
-				retrieveHostFirmware();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
+			mHostFirmwareVersion.invalidate();
+			mHostFirmwareVersion.get();
 		}
 		return mFirmwareBuildTime;
 	}
@@ -457,15 +513,7 @@ public class Device {
 	 * @return the wifi firmware version
 	 */
 	public final String getWifiFirmwareVersion() {
-		if (mWifiFirmwareVersion == null) {
-			try {
-				retrieveWifiFirmware();
-			}
-			catch (IOException e) {
-				Logger.error(e);
-			}
-		}
-		return mWifiFirmwareVersion;
+		return mWifiFirmwareVersion.get();
 	}
 
 	/**
@@ -474,15 +522,19 @@ public class Device {
 	 * @return the uptime
 	 */
 	public final Duration getUptime() {
-		StateInfo stateInfo;
-		try {
-			stateInfo = (StateInfo) getConnection().requestWithResponse(new GetInfo());
-			return stateInfo.getUptime();
-		}
-		catch (IOException e) {
-			Logger.error(e);
-			return null;
-		}
+		Long bootTime = mBootTime.get();
+		return bootTime == null ? null : Duration.ofMillis(System.currentTimeMillis() - bootTime);
+	}
+
+	/**
+	 * Get the power level via GetPower call.
+	 *
+	 * @return the power level.
+	 * @throws IOException Exception while retrieving data.
+	 */
+	protected Power retrievePower() throws IOException {
+		StatePower statePower = (StatePower) getConnection().requestWithResponse(new GetPower());
+		return new Power(statePower.getLevel());
 	}
 
 	/**
@@ -490,11 +542,25 @@ public class Device {
 	 *
 	 * @return the power level.
 	 */
-	public Power getPower() {
-		StatePower statePower;
+	public final Power getPower() {
+		return mPower.get();
+	}
+
+	/**
+	 * Get the power level, served from the device state mirror if observed recently enough.
+	 *
+	 * @param maxAge The max age of the mirrored value in millis.
+	 * @return the power level.
+	 */
+	public final Power getPower(final long maxAge) {
+		Power power = DeviceStateMirror.getInstance().getPower(getTargetAddress(), maxAge);
+		if (power != null) {
+			return power;
+		}
 		try {
-			statePower = (StatePower) getConnection().requestWithResponse(new GetPower());
-			return new Power(statePower.getLevel());
+			power = retrievePower();
+			mPower.set(power);
+			return power;
 		}
 		catch (IOException e) {
 			Logger.error(e);
@@ -508,15 +574,7 @@ public class Device {
 	 * @return The host info.
 	 */
 	public final ConnectionInfo getHostInfo() {
-		StateHostInfo stateHostInfo;
-		try {
-			stateHostInfo = (StateHostInfo) getConnection().requestWithResponse(new GetHostInfo());
-			return stateHostInfo.getConnectionInfo();
-		}
-		catch (IOException e) {
-			Logger.error(e);
-			return null;
-		}
+		return mHostInfo.get();
 	}
 
 	/**
@@ -525,15 +583,7 @@ public class Device {
 	 * @return The wifi info.
 	 */
 	public final ConnectionInfo getWifiInfo() {
-		StateWifiInfo stateWifiInfo;
-		try {
-			stateWifiInfo = (StateWifiInfo) getConnection().requestWithResponse(new GetWifiInfo());
-			return stateWifiInfo.getConnectionInfo();
-		}
-		catch (IOException e) {
-			Logger.error(e);
-			return null;
-		}
+		return mWifiInfo.get();
 	}
 
 	/**
@@ -569,6 +619,7 @@ public class Device {
 	 */
 	public final void setPower(final boolean status) throws IOException {
 		getConnection().requestWithResponse(new SetPower(status));
+		invalidateCache(CachedField.POWER);
 	}
 
 	/**
@@ -579,7 +630,7 @@ public class Device {
 	 */
 	public final void setLabel(final String label) throws IOException {
 		getConnection().requestWithResponse(new SetLabel(label));
-		mLabel = null;
+		invalidateCache(CachedField.LABEL);
 	}
 
 	/**
@@ -590,7 +641,7 @@ public class Device {
 	 */
 	public final void setGroup(final Group group) throws IOException {
 		getConnection().requestWithResponse(new SetGroup(group));
-		mGroup = null;
+		invalidateCache(CachedField.GROUP);
 	}
 
 	/**
@@ -601,7 +652,7 @@ public class Device {
 	 */
 	public final void setLocation(final Location location) throws IOException {
 		getConnection().requestWithResponse(new SetLocation(location));
-		mLocation = null;
+		invalidateCache(CachedField.LOCATION);
 	}
 
 	/**
@@ -630,6 +681,152 @@ public class Device {
 	 * @param label The label to be stored.
 	 */
 	public void storeLabel(final String label) {
-		mLabel = label;
+		mLabel.set(label);
+	}
+
+	/**
+	 * Create the cached value for a field with its default caching policy.
+	 *
+	 * @param field The field.
+	 * @param retriever The retriever of the value.
+	 * @param <T> The value type.
+	 * @return The cached value.
+	 */
+	private static <T> CachedValue<T> createCachedValue(final CachedField field, final CachedValue.Retriever<T> retriever) {
+		return new CachedValue<>(retriever, field.mDefaultTimeToLive, field.mIsStaleOnError);
+	}
+
+	/**
+	 * Get the cached value of a field.
+	 *
+	 * @param field The field.
+	 * @return The cached value.
+	 */
+	private CachedValue<?> getCachedValue(final CachedField field) {
+		switch (field) {
+		case LABEL:
+			return mLabel;
+		case LOCATION:
+			return mLocation;
+		case GROUP:
+			return mGroup;
+		case HOST_FIRMWARE:
+			return mHostFirmwareVersion;
+		case WIFI_FIRMWARE:
+			return mWifiFirmwareVersion;
+		case POWER:
+			return mPower;
+		case UPTIME:
+			return mBootTime;
+		case HOST_INFO:
+			return mHostInfo;
+		case WIFI_INFO:
+		default:
+			return mWifiInfo;
+		}
+	}
+
+	/**
+	 * Set the time to live of a cached field.
+	 *
+	 * @param field The field.
+	 * @param timeToLive The time to live in millis. 0 for no caching, CachedValue.INFINITE for caching until invalidated.
+	 */
+	public void setCacheTimeToLive(final CachedField field, final long timeToLive) {
+		getCachedValue(field).setTimeToLive(timeToLive);
+	}
+
+	/**
+	 * Invalidate cached fields, so that they are retrieved from the device on next access. This also invalidates the corresponding fields
+	 * of the device state mirror.
+	 *
+	 * @param fields The fields.
+	 */
+	public void invalidateCache(final CachedField... fields) {
+		for (CachedField field : fields) {
+			getCachedValue(field).invalidate();
+			Type mirroredType = field.getMirroredType();
+			if (mirroredType != null) {
+				DeviceStateMirror.getInstance().invalidate(mTargetAddress, mirroredType);
+			}
+		}
+	}
+
+	/**
+	 * The fields of a device which are cached, with their default caching policy.
+	 */
+	public enum CachedField {
+		/**
+		 * The label.
+		 */
+		LABEL(60000, true), // MAGIC_NUMBER
+		/**
+		 * The location.
+		 */
+		LOCATION(60000, true), // MAGIC_NUMBER
+		/**
+		 * The group.
+		 */
+		GROUP(60000, true), // MAGIC_NUMBER
+		/**
+		 * The host firmware version.
+		 */
+		HOST_FIRMWARE(3600000, true), // MAGIC_NUMBER
+		/**
+		 * The wifi firmware version.
+		 */
+		WIFI_FIRMWARE(3600000, true), // MAGIC_NUMBER
+		/**
+		 * The power.
+		 */
+		POWER(2000, false), // MAGIC_NUMBER
+		/**
+		 * The uptime. It is extrapolated from the cached boot time.
+		 */
+		UPTIME(60000, false), // MAGIC_NUMBER
+		/**
+		 * The host info.
+		 */
+		HOST_INFO(10000, false), // MAGIC_NUMBER
+		/**
+		 * The wifi info.
+		 */
+		WIFI_INFO(10000, false); // MAGIC_NUMBER
+
+		/**
+		 * The default time to live in millis.
+		 */
+		private final long mDefaultTimeToLive;
+		/**
+		 * Flag indicating if the last value is served after expiry while refreshing in the background, and if the device does not respond.
+		 */
+		private final boolean mIsStaleOnError;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param defaultTimeToLive The default time to live in millis.
+		 * @param isStaleOnError Flag indicating if the last value is served after expiry and if the device does not respond.
+		 */
+		CachedField(final long defaultTimeToLive, final boolean isStaleOnError) {
+			mDefaultTimeToLive = defaultTimeToLive;
+			mIsStaleOnError = isStaleOnError;
+		}
+
+		/**
+		 * Get the type of the field in the device state mirror holding the same value.
+		 *
+		 * @return The mirrored type, or null if the field is not mirrored.
+		 */
+		private Type getMirroredType() {
+			switch (this) {
+			case LABEL:
+				return Type.LABEL;
+			case POWER:
+				return Type.POWER;
+			default:
+				return null;
+			}
+		}
 	}
 }
@@ -0,0 +1,184 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The message budget of a device, as token bucket. LIFX devices handle about 20 messages per second, so requests of all threads are
+ * scheduled against this budget by priority: interactive requests are sent immediately, lower priorities wait for budget or are dropped.
+ * Tokens are reserved for higher priorities only while such requests have been seen recently, so that a device used by a single animation
+ * gets the full rate.
+ */
+public final class DeviceBudget {
+	/**
+	 * The budgets by MAC.
+	 */
+	private static final Map<String, DeviceBudget> BUDGETS = new ConcurrentHashMap<>();
+	/**
+	 * The default number of messages per second which can be sent to a device.
+	 */
+	private static volatile double mDefaultMessagesPerSecond = 20; // MAGIC_NUMBER
+	/**
+	 * The default maximum number of tokens, i.e. the maximum burst size.
+	 */
+	private static volatile double mDefaultCapacity = 20; // MAGIC_NUMBER
+	/**
+	 * The time in millis for which preemptible requests pause after an interactive request.
+	 */
+	private static final long PREEMPTION_TIME = 300;
+	/**
+	 * The time in millis for which tokens are reserved after a request of higher priority.
+	 */
+	private static final long CONTENTION_TIME = 1000;
+	/**
+	 * Milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000;
+
+	/**
+	 * The MAC of the device.
+	 */
+	private final String mTargetAddress;
+	/**
+	 * The number of messages per second which can be sent to the device.
+	 */
+	private double mMessagesPerSecond = mDefaultMessagesPerSecond;
+	/**
+	 * The maximum number of tokens, i.e. the maximum burst size.
+	 */
+	private double mCapacity = mDefaultCapacity;
+	/**
+	 * The available tokens. May get negative by interactive requests.
+	 */
+	private double mTokens = mCapacity;
+	/**
+	 * The time of the last refill.
+	 */
+	private long mLastRefillTime = System.currentTimeMillis();
+	/**
+	 * The time of the last interactive request.
+	 */
+	private long mLastInteractiveTime = 0;
+	/**
+	 * The time of the last request per priority.
+	 */
+	private final long[] mLastRequestTimes = new long[RequestPriority.values().length];
+
+	/**
+	 * Create the budget of a device.
+	 *
+	 * @param targetAddress The MAC of the device.
+	 */
+	private DeviceBudget(final String targetAddress) {
+		mTargetAddress = targetAddress;
+	}
+
+	/**
+	 * Get the budget of a device.
+	 *
+	 * @param targetAddress The MAC of the device.
+	 * @return The budget.
+	 */
+	public static DeviceBudget getInstance(final String targetAddress) {
+		return BUDGETS.computeIfAbsent(targetAddress, DeviceBudget::new);
+	}
+
+	/**
+	 * Set the default rate for devices whose budget is not yet created.
+	 *
+	 * @param messagesPerSecond The number of messages per second which can be sent to a device.
+	 * @param capacity The maximum burst size.
+	 */
+	public static void setDefaultRate(final double messagesPerSecond, final double capacity) {
+		mDefaultMessagesPerSecond = messagesPerSecond;
+		mDefaultCapacity = capacity;
+	}
+
+	/**
+	 * Set the rate of this device.
+	 *
+	 * @param messagesPerSecond The number of messages per second which can be sent to the device.
+	 * @param capacity The maximum burst size.
+	 */
+	public synchronized void setRate(final double messagesPerSecond, final double capacity) {
+		mMessagesPerSecond = messagesPerSecond;
+		mCapacity = capacity;
+		mTokens = Math.min(mTokens, capacity);
+	}
+
+	/**
+	 * Get the number of tokens to be kept free for requests of higher priority. These are reserved only if requests of higher priority have
+	 * been sent recently.
+	 *
+	 * @param priority The priority of the current request.
+	 * @param now The current time.
+	 * @return The number of reserved tokens.
+	 */
+	private int getReservedTokens(final RequestPriority priority, final long now) {
+		for (int i = 0; i < priority.ordinal(); i++) {
+			if (mLastRequestTimes[i] > 0 && now - mLastRequestTimes[i] < CONTENTION_TIME) {
+				return priority.getReservedTokens();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Acquire budget for sending messages with the priority of the current thread. Waits until budget is available for this priority.
+	 *
+	 * @param messageCount The number of messages to be sent.
+	 * @throws MessageDroppedException if the messages should be dropped.
+	 */
+	public void acquire(final int messageCount) throws MessageDroppedException {
+		final RequestPriority priority = RequestPriority.getCurrent();
+		final long deadline = System.currentTimeMillis() + priority.getMaxDelay();
+		while (true) {
+			long waitTime;
+			synchronized (this) {
+				final long now = System.currentTimeMillis();
+				mTokens = Math.min(mCapacity, mTokens + (now - mLastRefillTime) * mMessagesPerSecond / MILLIS_PER_SECOND);
+				mLastRefillTime = now;
+
+				if (priority == RequestPriority.INTERACTIVE) {
+					mTokens -= messageCount;
+					mLastInteractiveTime = now;
+					mLastRequestTimes[priority.ordinal()] = now;
+					return;
+				}
+				final long preemptedUntil = priority.isPreemptible() ? mLastInteractiveTime + PREEMPTION_TIME : 0;
+				final double missingTokens = messageCount + getReservedTokens(priority, now) - mTokens;
+				if (now >= preemptedUntil && missingTokens <= 0) {
+					mTokens -= messageCount;
+					mLastRequestTimes[priority.ordinal()] = now;
+					return;
+				}
+
+				waitTime = Math.max(preemptedUntil - now, (long) Math.ceil(missingTokens * MILLIS_PER_SECOND / mMessagesPerSecond));
+				if (now + waitTime > deadline) {
+					if (priority.isDroppable()) {
+						throw new MessageDroppedException(mTargetAddress, priority);
+					}
+					if (now >= deadline) {
+						// not droppable - send after the maximum delay.
+						mTokens -= messageCount;
+						mLastRequestTimes[priority.ordinal()] = now;
+						return;
+					}
+					waitTime = deadline - now;
+				}
+			}
+			try {
+				Thread.sleep(waitTime);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessageDroppedException(mTargetAddress, priority);
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DeviceBudget[" + mTargetAddress + ", tokens=" + mTokens + "]";
+	}
+}
@@ -0,0 +1,145 @@
+package de.jeisfeld.lifx.lan;
+
+/**
+ * A change of the state of a device, as detected by the device state mirror from the observed traffic.
+ */
+public class DeviceStateChange {
+	/**
+	 * The MAC of the device.
+	 */
+	private final String mMac;
+	/**
+	 * The type of change.
+	 */
+	private final Type mType;
+	/**
+	 * The zone start index or tile index for changes of zones or tiles. Null otherwise.
+	 */
+	private final Integer mIndex;
+	/**
+	 * The old value. Null if not known before.
+	 */
+	private final Object mOldValue;
+	/**
+	 * The new value.
+	 */
+	private final Object mNewValue;
+	/**
+	 * The time of observation.
+	 */
+	private final long mTime;
+
+	/**
+	 * Create a state change.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param type The type of change.
+	 * @param index The zone start index or tile index for changes of zones or tiles. Null otherwise.
+	 * @param oldValue The old value.
+	 * @param newValue The new value.
+	 * @param time The time of observation.
+	 */
+	protected DeviceStateChange(final String mac, final Type type, final Integer index, final Object oldValue, final Object newValue,
+			final long time) {
+		mMac = mac;
+		mType = type;
+		mIndex = index;
+		mOldValue = oldValue;
+		mNewValue = newValue;
+		mTime = time;
+	}
+
+	/**
+	 * Get the MAC of the device.
+	 *
+	 * @return The MAC.
+	 */
+	public final String getMac() {
+		return mMac;
+	}
+
+	/**
+	 * Get the type of change.
+	 *
+	 * @return The type.
+	 */
+	public final Type getType() {
+		return mType;
+	}
+
+	/**
+	 * Get the zone start index or tile index.
+	 *
+	 * @return The index for changes of zones or tiles. Null otherwise.
+	 */
+	public final Integer getIndex() {
+		return mIndex;
+	}
+
+	/**
+	 * Get the old value, of the class given by the type.
+	 *
+	 * @return The old value. Null if not known before.
+	 */
+	public final Object getOldValue() {
+		return mOldValue;
+	}
+
+	/**
+	 * Get the new value, of the class given by the type.
+	 *
+	 * @return The new value.
+	 */
+	public final Object getNewValue() {
+		return mNewValue;
+	}
+
+	/**
+	 * Get the time of observation.
+	 *
+	 * @return The time in millis.
+	 */
+	public final long getTime() {
+		return mTime;
+	}
+
+	@Override
+	public final String toString() {
+		return "DeviceStateChange[" + mMac + ", " + mType + (mIndex == null ? "" : "@" + mIndex) + ": " + mOldValue + " -> " + mNewValue
+				+ "]";
+	}
+
+	/**
+	 * The types of state changes.
+	 */
+	public enum Type {
+		/**
+		 * Change of power. Values are of class Power.
+		 */
+		POWER,
+		/**
+		 * Change of color. Values are of class Color.
+		 */
+		COLOR,
+		/**
+		 * Change of infrared brightness. Values are of class Short.
+		 */
+		INFRARED,
+		/**
+		 * Change of label. Values are of class String.
+		 */
+		LABEL,
+		/**
+		 * Change of the colors of a block of zones. Values are lists of Color.
+		 */
+		ZONES,
+		/**
+		 * Change of the colors of a tile. Values are lists of Color.
+		 */
+		TILES,
+		/**
+		 * Change of reachability. Values are of class Boolean.
+		 */
+		REACHABILITY
+	}
+}
@@ -0,0 +1,407 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.jeisfeld.lifx.lan.DeviceStateChange.Type;
+import de.jeisfeld.lifx.lan.LifxLan.DeviceStateListener;
+import de.jeisfeld.lifx.lan.message.LightState;
+import de.jeisfeld.lifx.lan.message.LightStateInfrared;
+import de.jeisfeld.lifx.lan.message.LightStatePower;
+import de.jeisfeld.lifx.lan.message.MultizoneStateExtendedColorZones;
+import de.jeisfeld.lifx.lan.message.MultizoneStateZone;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
+import de.jeisfeld.lifx.lan.message.StateLabel;
+import de.jeisfeld.lifx.lan.message.StatePower;
+import de.jeisfeld.lifx.lan.message.TileStateTileState64;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.util.TypeUtil;
+
+/**
+ * A passive mirror of the device states, keyed by MAC. It is updated by every state message received from any device, including responses
+ * received for other requests, and keeps the time of observation per field. So state can be served locally within a staleness bound.
+ * Changed values are reported as state changes.
+ */
+public final class DeviceStateMirror {
+	/**
+	 * The singleton instance.
+	 */
+	private static final DeviceStateMirror INSTANCE = new DeviceStateMirror();
+
+	/**
+	 * The mirrored states by MAC.
+	 */
+	private final Map<String, MirroredState> mStates = new ConcurrentHashMap<>();
+	/**
+	 * The listener notified about state changes.
+	 */
+	private volatile DeviceStateListener mListener = null;
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private DeviceStateMirror() {
+	}
+
+	/**
+	 * Get the state mirror as singleton.
+	 *
+	 * @return The state mirror.
+	 */
+	public static DeviceStateMirror getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Set the listener notified about state changes.
+	 *
+	 * @param listener The listener.
+	 */
+	protected void setListener(final DeviceStateListener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Update the mirror with a received message. Messages not carrying state are ignored.
+	 *
+	 * @param message The received message.
+	 */
+	public void update(final ResponseMessage message) {
+		if (message == null || message.getTargetAddress() == null) {
+			return;
+		}
+		final String mac = message.getTargetAddress();
+		final MirroredState state = mStates.computeIfAbsent(mac, key -> new MirroredState());
+		final long now = System.currentTimeMillis();
+		final List<DeviceStateChange> changes = new ArrayList<>();
+
+		synchronized (state) {
+			state.mReachable = observe(mac, Type.REACHABILITY, null, state.mReachable, Boolean.TRUE, now, changes);
+			if (message instanceof LightState) {
+				LightState lightState = (LightState) message;
+				state.mColor = observe(mac, Type.COLOR, null, state.mColor, lightState.getColor(), now, changes);
+				state.mPower = observe(mac, Type.POWER, null, state.mPower, new Power(lightState.getPower()), now, changes);
+				state.mLabel = observe(mac, Type.LABEL, null, state.mLabel, lightState.getLabel(), now, changes);
+			}
+			else if (message instanceof LightStatePower) {
+				Power power = new Power(((LightStatePower) message).getLevel());
+				state.mPower = observe(mac, Type.POWER, null, state.mPower, power, now, changes);
+			}
+			else if (message instanceof StatePower) {
+				Power power = new Power(((StatePower) message).getLevel());
+				state.mPower = observe(mac, Type.POWER, null, state.mPower, power, now, changes);
+			}
+			else if (message instanceof StateLabel) {
+				state.mLabel = observe(mac, Type.LABEL, null, state.mLabel, ((StateLabel) message).getLabel(), now, changes);
+			}
+			else if (message instanceof LightStateInfrared) {
+				state.mInfraredBrightness = observe(mac, Type.INFRARED, null, state.mInfraredBrightness,
+						((LightStateInfrared) message).getBrightness(), now, changes);
+			}
+			else if (message instanceof MultizoneStateExtendedColorZones) {
+				MultizoneStateExtendedColorZones stateZones = (MultizoneStateExtendedColorZones) message;
+				int index = TypeUtil.toUnsignedInt(stateZones.getIndex());
+				state.mZoneColors.put(index,
+						observe(mac, Type.ZONES, index, state.mZoneColors.get(index), stateZones.getColors(), now, changes));
+			}
+			else if (message instanceof MultizoneStateZone) {
+				MultizoneStateZone stateZone = (MultizoneStateZone) message;
+				int index = TypeUtil.toUnsignedInt(stateZone.getIndex());
+				state.mZoneColors.put(index,
+						observe(mac, Type.ZONES, index, state.mZoneColors.get(index), stateZone.getColors(), now, changes));
+			}
+			else if (message instanceof TileStateTileState64) {
+				TileStateTileState64 stateTile = (TileStateTileState64) message;
+				int index = TypeUtil.toUnsignedInt(stateTile.getTileIndex());
+				state.mTileColors.put(index,
+						observe(mac, Type.TILES, index, state.mTileColors.get(index), stateTile.getColors(), now, changes));
+			}
+		}
+		notifyChanges(changes);
+	}
+
+	/**
+	 * Mark a device as unreachable, e.g. after a poll without response.
+	 *
+	 * @param mac The MAC of the device.
+	 */
+	public void markUnreachable(final String mac) {
+		final MirroredState state = mStates.computeIfAbsent(mac, key -> new MirroredState());
+		final List<DeviceStateChange> changes = new ArrayList<>();
+		synchronized (state) {
+			state.mReachable = observe(mac, Type.REACHABILITY, null, state.mReachable, Boolean.FALSE, System.currentTimeMillis(), changes);
+		}
+		notifyChanges(changes);
+	}
+
+	/**
+	 * Create the observation of a value, recording a state change if it differs from the previous observation.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param type The type of change.
+	 * @param index The zone start index or tile index. Null for other types.
+	 * @param previous The previous observation.
+	 * @param value The observed value.
+	 * @param now The time of observation.
+	 * @param changes The list to which a state change is added.
+	 * @param <T> The value type.
+	 * @return The new observation.
+	 */
+	private static <T> Observed<T> observe(final String mac, final Type type, final Integer index, // SUPPRESS_CHECKSTYLE
+			final Observed<T> previous, final T value, final long now, final List<DeviceStateChange> changes) {
+		T oldValue = previous == null ? null : previous.mValue;
+		if (!Objects.equals(oldValue, value)) {
+			changes.add(new DeviceStateChange(mac, type, index, oldValue, value, now));
+		}
+		return new Observed<>(value, now);
+	}
+
+	/**
+	 * Notify the listener about state changes.
+	 *
+	 * @param changes The state changes.
+	 */
+	private void notifyChanges(final List<DeviceStateChange> changes) {
+		DeviceStateListener listener = mListener;
+		if (listener != null) {
+			for (DeviceStateChange change : changes) {
+				listener.onStateChange(change);
+			}
+		}
+	}
+
+	/**
+	 * Get a mirrored value if it is recent enough.
+	 *
+	 * @param observed The observed value.
+	 * @param maxAge The max age in millis.
+	 * @param <T> The value type.
+	 * @return The value, or null if not observed within max age.
+	 */
+	private static <T> T getIfRecent(final Observed<T> observed, final long maxAge) {
+		if (observed == null || observed.mTime == 0) {
+			return null;
+		}
+		return System.currentTimeMillis() - observed.mTime <= maxAge ? observed.mValue : null;
+	}
+
+	/**
+	 * Get the mirrored state of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @return The state. Empty state if nothing was observed.
+	 */
+	private MirroredState getState(final String mac) {
+		MirroredState state = mStates.get(mac);
+		return state == null ? new MirroredState() : state;
+	}
+
+	/**
+	 * Get the mirrored color of a light.
+	 *
+	 * @param mac The MAC of the light.
+	 * @param maxAge The max age in millis.
+	 * @return The color, or null if not observed within max age.
+	 */
+	public Color getColor(final String mac, final long maxAge) {
+		return getIfRecent(getState(mac).mColor, maxAge);
+	}
+
+	/**
+	 * Get the mirrored power of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param maxAge The max age in millis.
+	 * @return The power, or null if not observed within max age.
+	 */
+	public Power getPower(final String mac, final long maxAge) {
+		return getIfRecent(getState(mac).mPower, maxAge);
+	}
+
+	/**
+	 * Get the mirrored label of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param maxAge The max age in millis.
+	 * @return The label, or null if not observed within max age.
+	 */
+	public String getLabel(final String mac, final long maxAge) {
+		return getIfRecent(getState(mac).mLabel, maxAge);
+	}
+
+	/**
+	 * Get the mirrored infrared brightness of a light.
+	 *
+	 * @param mac The MAC of the light.
+	 * @param maxAge The max age in millis.
+	 * @return The infrared brightness, or null if not observed within max age.
+	 */
+	public Short getInfraredBrightness(final String mac, final long maxAge) {
+		return getIfRecent(getState(mac).mInfraredBrightness, maxAge);
+	}
+
+	/**
+	 * Get the mirrored colors of a block of zones of a multizone light, as received in one message.
+	 *
+	 * @param mac The MAC of the light.
+	 * @param startIndex The start index of the block.
+	 * @param maxAge The max age in millis.
+	 * @return The colors of the block, or null if not observed within max age.
+	 */
+	public List<Color> getZoneColors(final String mac, final int startIndex, final long maxAge) {
+		return getIfRecent(getState(mac).mZoneColors.get(startIndex), maxAge);
+	}
+
+	/**
+	 * Get the mirrored colors of a tile.
+	 *
+	 * @param mac The MAC of the tile chain.
+	 * @param tileIndex The tile index.
+	 * @param maxAge The max age in millis.
+	 * @return The colors of the tile, or null if not observed within max age.
+	 */
+	public List<Color> getTileColors(final String mac, final int tileIndex, final long maxAge) {
+		return getIfRecent(getState(mac).mTileColors.get(tileIndex), maxAge);
+	}
+
+	/**
+	 * Get the mirrored reachability of a device.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param maxAge The max age in millis.
+	 * @return The reachability, or null if not observed within max age.
+	 */
+	public Boolean getReachable(final String mac, final long maxAge) {
+		return getIfRecent(getState(mac).mReachable, maxAge);
+	}
+
+	/**
+	 * Expire the mirrored state of a device, e.g. after changing it. The last values are still kept for detecting changes.
+	 *
+	 * @param mac The MAC of the device.
+	 */
+	public void invalidate(final String mac) {
+		invalidate(mac, Type.values());
+	}
+
+	/**
+	 * Expire some fields of the mirrored state of a device, e.g. after changing them. The last values are still kept for detecting changes.
+	 *
+	 * @param mac The MAC of the device.
+	 * @param types The types of the fields to be expired.
+	 */
+	public void invalidate(final String mac, final Type... types) {
+		MirroredState state = mStates.get(mac);
+		if (state != null) {
+			synchronized (state) {
+				for (Type type : types) {
+					switch (type) {
+					case POWER:
+						state.mPower = expire(state.mPower);
+						break;
+					case COLOR:
+						state.mColor = expire(state.mColor);
+						break;
+					case INFRARED:
+						state.mInfraredBrightness = expire(state.mInfraredBrightness);
+						break;
+					case LABEL:
+						state.mLabel = expire(state.mLabel);
+						break;
+					case ZONES:
+						state.mZoneColors.replaceAll((index, observed) -> expire(observed));
+						break;
+					case TILES:
+						state.mTileColors.replaceAll((index, observed) -> expire(observed));
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Expire an observed value, keeping the value.
+	 *
+	 * @param observed The observed value.
+	 * @param <T> The value type.
+	 * @return The expired observation.
+	 */
+	private static <T> Observed<T> expire(final Observed<T> observed) {
+		return observed == null ? null : new Observed<>(observed.mValue, 0);
+	}
+
+	/**
+	 * Remove all mirrored states.
+	 */
+	public void clear() {
+		mStates.clear();
+	}
+
+	/**
+	 * The mirrored state of one device.
+	 */
+	private static final class MirroredState {
+		/**
+		 * The color.
+		 */
+		private volatile Observed<Color> mColor = null;
+		/**
+		 * The power.
+		 */
+		private volatile Observed<Power> mPower = null;
+		/**
+		 * The label.
+		 */
+		private volatile Observed<String> mLabel = null;
+		/**
+		 * The infrared brightness.
+		 */
+		private volatile Observed<Short> mInfraredBrightness = null;
+		/**
+		 * The reachability.
+		 */
+		private volatile Observed<Boolean> mReachable = null;
+		/**
+		 * The colors of zone blocks by start index.
+		 */
+		private final Map<Integer, Observed<List<Color>>> mZoneColors = new ConcurrentHashMap<>();
+		/**
+		 * The colors of tiles by tile index.
+		 */
+		private final Map<Integer, Observed<List<Color>>> mTileColors = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * A value with the time of its observation.
+	 *
+	 * @param <T> The value type.
+	 */
+	private static final class Observed<T> {
+		/**
+		 * The value.
+		 */
+		private final T mValue;
+		/**
+		 * The time of observation. 0 if expired.
+		 */
+		private final long mTime;
+
+		/**
+		 * Create an observed value.
+		 *
+		 * @param value The value.
+		 * @param time The time of observation.
+		 */
+		private Observed(final T value, final long time) {
+			mValue = value;
+			mTime = time;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import de.jeisfeld.lifx.lan.FanOutResult.DeviceResult;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Waveform;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Utility for sending one logical command to several devices in parallel, so that switching a room takes about one round trip instead of
+ * one round trip per device.
+ */
+public final class FanOut {
+	/**
+	 * Hide the default constructor.
+	 */
+	private FanOut() {
+	}
+
+	/**
+	 * Execute a command on several devices in parallel.
+	 *
+	 * @param devices The devices.
+	 * @param command The command.
+	 * @param <T> The device type.
+	 * @return A future completing with the aggregate result when all devices have answered or failed.
+	 */
+	public static <T extends Device> CompletableFuture<FanOutResult> executeAsync(final Collection<T> devices,
+			final DeviceCommand<? super T> command) {
+		final long startTime = System.currentTimeMillis();
+		final List<CompletableFuture<DeviceResult>> futures = new ArrayList<>();
+		final RequestPriority priority = RequestPriority.getCurrent();
+		for (T device : devices) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				final int retryCount = LifxLanConnection.getRetryCount();
+				final long deviceStartTime = System.currentTimeMillis();
+				// the requests to the devices keep the priority of the caller.
+				final RequestPriority previousPriority = RequestPriority.setCurrent(priority);
+				IOException exception = null;
+				try {
+					command.execute(device);
+				}
+				catch (IOException e) {
+					exception = e;
+				}
+				catch (RuntimeException e) {
+					// record the failure on this device, so that the results of the other devices are still reported.
+					Logger.error(e);
+					exception = new IOException("Command failed on " + device.getTargetAddress(), e);
+				}
+				finally {
+					RequestPriority.setCurrent(previousPriority);
+				}
+				return new DeviceResult(device, exception, System.currentTimeMillis() - deviceStartTime,
+						LifxLanConnection.getRetryCount() - retryCount);
+			}, LifxLan.getInstance().getExecutor()));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(result -> {
+			List<DeviceResult> deviceResults = new ArrayList<>();
+			for (CompletableFuture<DeviceResult> future : futures) {
+				deviceResults.add(future.join());
+			}
+			return new FanOutResult(deviceResults, System.currentTimeMillis() - startTime);
+		});
+	}
+
+	/**
+	 * Execute a command on several devices in parallel and wait for the result.
+	 *
+	 * @param devices The devices.
+	 * @param command The command.
+	 * @param <T> The device type.
+	 * @return The aggregate result.
+	 */
+	public static <T extends Device> FanOutResult execute(final Collection<T> devices, final DeviceCommand<? super T> command) {
+		return executeAsync(devices, command).join();
+	}
+
+	/**
+	 * Get the lights out of a list of devices.
+	 *
+	 * @param devices The devices.
+	 * @return The lights.
+	 */
+	public static List<Light> getLights(final Collection<? extends Device> devices) {
+		List<Light> lights = new ArrayList<>();
+		for (Device device : devices) {
+			if (device instanceof Light) {
+				lights.add((Light) device);
+			}
+		}
+		return lights;
+	}
+
+	/**
+	 * Set the power of several devices in parallel.
+	 *
+	 * @param devices The devices.
+	 * @param status true for switching on, false for switching off
+	 * @param duration the duration of power change in millis. Only applicable for lights.
+	 * @return The aggregate result.
+	 */
+	public static FanOutResult setPower(final Collection<? extends Device> devices, final boolean status, final int duration) {
+		return execute(devices, device -> {
+			if (device instanceof Light) {
+				((Light) device).setPower(status, duration, false);
+			}
+			else {
+				device.setPower(status);
+			}
+		});
+	}
+
+	/**
+	 * Set the color of the lights out of several devices in parallel.
+	 *
+	 * @param devices The devices.
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The aggregate result.
+	 */
+	public static FanOutResult setColor(final Collection<? extends Device> devices, final Color color, final int duration) {
+		return execute(getLights(devices), light -> light.setColor(color, duration, false));
+	}
+
+	/**
+	 * Set a waveform on the lights out of several devices in parallel.
+	 *
+	 * @param devices The devices.
+	 * @param isTransient the transient flag indicating if the color finally returns to prior value.
+	 * @param color the target color.
+	 * @param period the cycle period in millis.
+	 * @param cycles the number of cycles.
+	 * @param waveform the waveform.
+	 * @param skewRatio the skew ratio between 0 and 1.
+	 * @return The aggregate result.
+	 */
+	public static FanOutResult setWaveform(final Collection<? extends Device> devices, final boolean isTransient, // SUPPRESS_CHECKSTYLE
+			final Color color, final int period, final double cycles, final Waveform waveform, final double skewRatio) {
+		return execute(getLights(devices), light -> light.setWaveform(isTransient, color, period, cycles, waveform, skewRatio, false));
+	}
+
+	/**
+	 * Send a state frame to the lights out of several devices in parallel.
+	 *
+	 * @param devices The devices.
+	 * @param frame The state frame.
+	 * @return The aggregate result.
+	 */
+	public static FanOutResult setState(final Collection<? extends Device> devices, final LightStateFrame frame) {
+		return execute(getLights(devices), light -> light.setState(frame));
+	}
+
+	/**
+	 * A command executed on a device.
+	 *
+	 * @param <T> The device type.
+	 */
+	@FunctionalInterface
+	public interface DeviceCommand<T extends Device> {
+		/**
+		 * Execute the command on the device.
+		 *
+		 * @param device The device.
+		 * @throws IOException Connection issues
+		 */
+		void execute(T device) throws IOException;
+	}
+}
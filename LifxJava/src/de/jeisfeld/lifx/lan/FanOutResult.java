@@ -0,0 +1,179 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The aggregate result of a command sent to several devices in parallel, with success, latency and retries per device.
+ */
+public class FanOutResult {
+	/**
+	 * The results per device.
+	 */
+	private final List<DeviceResult> mDeviceResults;
+	/**
+	 * The total duration in millis.
+	 */
+	private final long mDuration;
+
+	/**
+	 * Create a fan-out result.
+	 *
+	 * @param deviceResults The results per device.
+	 * @param duration The total duration in millis.
+	 */
+	protected FanOutResult(final List<DeviceResult> deviceResults, final long duration) {
+		mDeviceResults = Collections.unmodifiableList(deviceResults);
+		mDuration = duration;
+	}
+
+	/**
+	 * Get the results per device.
+	 *
+	 * @return The results per device.
+	 */
+	public final List<DeviceResult> getDeviceResults() {
+		return mDeviceResults;
+	}
+
+	/**
+	 * Get the total duration, from sending the first request until the last device has answered or failed.
+	 *
+	 * @return The duration in millis.
+	 */
+	public final long getDuration() {
+		return mDuration;
+	}
+
+	/**
+	 * Check if the command succeeded on all devices.
+	 *
+	 * @return true if all devices succeeded.
+	 */
+	public final boolean isSuccess() {
+		return getFailedDevices().isEmpty();
+	}
+
+	/**
+	 * Get the devices on which the command failed.
+	 *
+	 * @return The failed devices.
+	 */
+	public final List<Device> getFailedDevices() {
+		List<Device> failedDevices = new ArrayList<>();
+		for (DeviceResult deviceResult : mDeviceResults) {
+			if (!deviceResult.isSuccess()) {
+				failedDevices.add(deviceResult.getDevice());
+			}
+		}
+		return failedDevices;
+	}
+
+	/**
+	 * Throw the exception of the first failed device, if any.
+	 *
+	 * @throws IOException The exception of the first failed device.
+	 */
+	public final void throwOnFailure() throws IOException {
+		for (DeviceResult deviceResult : mDeviceResults) {
+			if (!deviceResult.isSuccess()) {
+				throw deviceResult.getException();
+			}
+		}
+	}
+
+	@Override
+	public final String toString() {
+		return "FanOutResult[devices=" + mDeviceResults.size() + ", failed=" + getFailedDevices().size() + ", duration=" + mDuration + "]";
+	}
+
+	/**
+	 * The result of the command on one device.
+	 */
+	public static class DeviceResult {
+		/**
+		 * The device.
+		 */
+		private final Device mDevice;
+		/**
+		 * The exception. Null on success.
+		 */
+		private final IOException mException;
+		/**
+		 * The latency in millis.
+		 */
+		private final long mLatency;
+		/**
+		 * The number of retried sends.
+		 */
+		private final int mRetries;
+
+		/**
+		 * Create a device result.
+		 *
+		 * @param device The device.
+		 * @param exception The exception. Null on success.
+		 * @param latency The latency in millis.
+		 * @param retries The number of retried sends.
+		 */
+		protected DeviceResult(final Device device, final IOException exception, final long latency, final int retries) {
+			mDevice = device;
+			mException = exception;
+			mLatency = latency;
+			mRetries = retries;
+		}
+
+		/**
+		 * Get the device.
+		 *
+		 * @return The device.
+		 */
+		public final Device getDevice() {
+			return mDevice;
+		}
+
+		/**
+		 * Check if the command succeeded on the device.
+		 *
+		 * @return true on success.
+		 */
+		public final boolean isSuccess() {
+			return mException == null;
+		}
+
+		/**
+		 * Get the exception.
+		 *
+		 * @return The exception. Null on success.
+		 */
+		public final IOException getException() {
+			return mException;
+		}
+
+		/**
+		 * Get the latency until the device answered or failed.
+		 *
+		 * @return The latency in millis.
+		 */
+		public final long getLatency() {
+			return mLatency;
+		}
+
+		/**
+		 * Get the number of retried sends.
+		 *
+		 * @return The number of retries.
+		 */
+		public final int getRetries() {
+			return mRetries;
+		}
+
+		@Override
+		public final String toString() {
+			return "DeviceResult[" + mDevice.getTargetAddress() + ", " + (mException == null ? "OK" : mException.getMessage())
+					+ ", latency=" + mLatency + ", retries=" + mRetries + "]";
+		}
+	}
+}
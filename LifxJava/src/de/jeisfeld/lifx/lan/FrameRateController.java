@@ -0,0 +1,113 @@
+package de.jeisfeld.lifx.lan;
+
+/**
+ * Controller adapting the frame interval of host driven animations to the link quality. It works in AIMD manner on the frame rate:
+ * each acknowledged frame increases the rate additively, while timeouts and slow acknowledgements decrease it multiplicatively. This
+ * class is not thread-safe and is intended to be used by a single animation thread.
+ */
+public class FrameRateController {
+	/**
+	 * The maximum frame rate in frames per second. Up to this rate, frames are not throttled.
+	 */
+	private static final double MAX_RATE = 50;
+	/**
+	 * The minimum frame rate in frames per second.
+	 */
+	private static final double MIN_RATE = 0.2;
+	/**
+	 * The maximum frame rate after a timeout.
+	 */
+	private static final double MAX_RATE_AFTER_TIMEOUT = 4;
+	/**
+	 * The additive increase of the frame rate after an acknowledged frame.
+	 */
+	private static final double ADDITIVE_INCREASE = 1;
+	/**
+	 * The multiplicative decrease of the frame rate after a slow acknowledgement.
+	 */
+	private static final double SLOW_ACK_DECREASE = 0.75;
+	/**
+	 * The multiplicative decrease of the frame rate after a timeout.
+	 */
+	private static final double TIMEOUT_DECREASE = 0.5;
+	/**
+	 * The weight of a new sample in the smoothed round trip time.
+	 */
+	private static final double RTT_WEIGHT = 0.125;
+	/**
+	 * Milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000;
+
+	/**
+	 * The current frame rate in frames per second.
+	 */
+	private double mRate = MAX_RATE;
+	/**
+	 * The smoothed round trip time in millis. Negative if not yet measured.
+	 */
+	private double mSmoothedRtt = -1;
+
+	/**
+	 * Get the current minimum interval between two frames.
+	 *
+	 * @return The frame interval in millis. 0 if frames are not throttled.
+	 */
+	public int getFrameInterval() {
+		return mRate >= MAX_RATE ? 0 : (int) (MILLIS_PER_SECOND / mRate);
+	}
+
+	/**
+	 * Get the smoothed round trip time of frames.
+	 *
+	 * @return The smoothed round trip time in millis, or -1 if not yet measured.
+	 */
+	public int getSmoothedRtt() {
+		return (int) mSmoothedRtt;
+	}
+
+	/**
+	 * Check if the frame interval has reached its maximum, so that no further adaption is possible.
+	 *
+	 * @return true if the interval is at maximum.
+	 */
+	public boolean isAtMaximumInterval() {
+		return mRate <= MIN_RATE;
+	}
+
+	/**
+	 * Register an acknowledged frame.
+	 *
+	 * @param rtt The time between sending the frame and receiving the acknowledgement, in millis.
+	 */
+	public void onAcknowledged(final long rtt) {
+		mSmoothedRtt = mSmoothedRtt < 0 ? rtt : (1 - RTT_WEIGHT) * mSmoothedRtt + RTT_WEIGHT * rtt;
+		if (rtt > getFrameInterval() && mSmoothedRtt > getFrameInterval()) {
+			// the device acknowledges slower than frames are sent.
+			mRate = Math.max(MIN_RATE, Math.min(mRate * SLOW_ACK_DECREASE, MILLIS_PER_SECOND / mSmoothedRtt));
+		}
+		else {
+			mRate = Math.min(MAX_RATE, mRate + ADDITIVE_INCREASE);
+		}
+	}
+
+	/**
+	 * Register a frame that has not been acknowledged.
+	 */
+	public void onTimeout() {
+		mRate = Math.max(MIN_RATE, Math.min(mRate * TIMEOUT_DECREASE, MAX_RATE_AFTER_TIMEOUT));
+	}
+
+	/**
+	 * Reset the controller to initial state.
+	 */
+	public void reset() {
+		mRate = MAX_RATE;
+		mSmoothedRtt = -1;
+	}
+
+	@Override
+	public final String toString() {
+		return "FrameRateController[interval=" + getFrameInterval() + ", rtt=" + getSmoothedRtt() + "]";
+	}
+}
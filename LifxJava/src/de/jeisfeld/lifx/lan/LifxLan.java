@@ -2,11 +2,25 @@ package de.jeisfeld.lifx.lan;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import de.jeisfeld.lifx.lan.LifxLanConnection.DeviceFilter;
 import de.jeisfeld.lifx.lan.LifxLanConnection.RetryPolicy;
 import de.jeisfeld.lifx.lan.message.GetService;
+import de.jeisfeld.lifx.lan.message.LightGet;
 import de.jeisfeld.lifx.lan.message.ResponseMessage;
 import de.jeisfeld.lifx.lan.message.StateService;
 import de.jeisfeld.lifx.os.Logger;
@@ -32,6 +46,42 @@ public final class LifxLan {
 	 * The list of lights.
 	 */
 	private List<Light> mLights = new ArrayList<>();
+	/**
+	 * The executor for asynchronous requests.
+	 */
+	private final ExecutorService mExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "LifxLanExecutor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/**
+	 * The executor for scheduling delayed tasks.
+	 */
+	private final ScheduledExecutorService mScheduledExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "LifxLanScheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/**
+	 * The executor for notifying state listeners, keeping the order of state changes.
+	 */
+	private final ExecutorService mEventExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "LifxLanEvents");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/**
+	 * The listeners for device state changes.
+	 */
+	private final List<DeviceStateListener> mStateListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * The background poller of device states.
+	 */
+	private ScheduledFuture<?> mStatePoller = null;
+	/**
+	 * The MACs of devices for which a poll is running.
+	 */
+	private final Set<String> mPolledMacs = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * Get a LifxLan instance as singleton.
@@ -50,6 +100,164 @@ public final class LifxLan {
 	 */
 	private LifxLan() {
 		mSourceId = OsTools.getPid();
+		DeviceStateMirror.getInstance().setListener(this::dispatchStateChange);
+	}
+
+	/**
+	 * Get the executor used for scheduling delayed tasks. Tasks should be short and hand over blocking work to the executor.
+	 *
+	 * @return The scheduled executor.
+	 */
+	public ScheduledExecutorService getScheduledExecutor() {
+		return mScheduledExecutor;
+	}
+
+	/**
+	 * Get the executor used for asynchronous requests to devices.
+	 *
+	 * @return The executor.
+	 */
+	public ExecutorService getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * Add a listener for device state changes. State changes are detected from all state messages received from devices, including
+	 * responses to other requests and to the optional background poller. Listeners are called sequentially in a dedicated thread.
+	 *
+	 * @param listener The listener.
+	 */
+	public void addDeviceStateListener(final DeviceStateListener listener) {
+		mStateListeners.add(listener);
+	}
+
+	/**
+	 * Remove a listener for device state changes.
+	 *
+	 * @param listener The listener.
+	 */
+	public void removeDeviceStateListener(final DeviceStateListener listener) {
+		mStateListeners.remove(listener);
+	}
+
+	/**
+	 * Dispatch a state change to the listeners.
+	 *
+	 * @param change The state change.
+	 */
+	private void dispatchStateChange(final DeviceStateChange change) {
+		if (mStateListeners.isEmpty()) {
+			return;
+		}
+		mEventExecutor.execute(() -> {
+			for (DeviceStateListener listener : mStateListeners) {
+				try {
+					listener.onStateChange(change);
+				}
+				catch (RuntimeException e) {
+					Logger.error(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Start polling the state of devices in the background, so that state listeners get changes not caused by own requests as well as
+	 * changes of reachability. A running poller is replaced.
+	 *
+	 * @param devices The devices to be polled.
+	 * @param interval The poll interval in millis.
+	 */
+	public synchronized void startStatePolling(final Collection<? extends Device> devices, final long interval) {
+		stopStatePolling();
+		final List<Device> polledDevices = new ArrayList<>(devices);
+		mStatePoller = mScheduledExecutor.scheduleWithFixedDelay(() -> {
+			for (Device device : polledDevices) {
+				// skip devices for which the previous poll has not yet finished.
+				if (mPolledMacs.add(device.getTargetAddress())) {
+					mExecutor.execute(() -> {
+						try {
+							pollState(device);
+						}
+						finally {
+							mPolledMacs.remove(device.getTargetAddress());
+						}
+					});
+				}
+			}
+		}, 0, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop polling the state of devices in the background.
+	 */
+	public synchronized void stopStatePolling() {
+		if (mStatePoller != null) {
+			mStatePoller.cancel(false);
+			mStatePoller = null;
+		}
+	}
+
+	/**
+	 * Poll the state of a device. The responses update the device state mirror, which reports the changes.
+	 *
+	 * @param device The device.
+	 */
+	private void pollState(final Device device) {
+		RequestPriority previousPriority = RequestPriority.setCurrent(RequestPriority.BACKGROUND);
+		try {
+			if (device instanceof Light) {
+				device.getConnection().requestWithResponse(new LightGet());
+				// zone and tile colors only refresh the mirror - reachability is decided by the basic request.
+				if (device instanceof MultiZoneLight) {
+					((MultiZoneLight) device).getColors();
+				}
+				else if (device instanceof TileChain) {
+					((TileChain) device).getColors();
+				}
+			}
+			else {
+				device.retrievePower();
+			}
+		}
+		catch (MessageDroppedException e) {
+			// the device budget is needed for requests of higher priority - poll again later.
+		}
+		catch (IOException e) {
+			DeviceStateMirror.getInstance().markUnreachable(device.getTargetAddress());
+		}
+		finally {
+			RequestPriority.setCurrent(previousPriority);
+		}
+	}
+
+	/**
+	 * Capture the current state of all lights matching a filter in parallel, so that it can be restored later. The snapshot can be
+	 * serialized via Scene.toBytes(). The lights known from previous discoveries are used, and a discovery is run only if no light is
+	 * known.
+	 *
+	 * @param filter The filter. Null for all lights.
+	 * @return The snapshot.
+	 * @throws IOException if the state of some light could not be retrieved.
+	 */
+	public Scene snapshot(final DeviceFilter filter) throws IOException {
+		if (filter != null) {
+			return Scene.snapshot(FanOut.getLights(getDevicesByFilter(filter)));
+		}
+		List<Light> lights = new ArrayList<>(mLights);
+		return Scene.snapshot(lights.size() > 0 ? lights : getLights());
+	}
+
+	/**
+	 * Restore a snapshot. All lights are restored in parallel. Zone and tile colors are sent first, followed by power, color and infrared
+	 * brightness in one pipelined burst.
+	 *
+	 * @param snapshot The snapshot.
+	 * @param transitionTime The transition time in millis.
+	 * @return The result.
+	 */
+	public FanOutResult restore(final Scene snapshot, final int transitionTime) {
+		return snapshot.withTransitionTime(transitionTime).send();
 	}
 
 	/**
@@ -74,6 +282,15 @@ public final class LifxLan {
 		return mLights;
 	}
 
+	/**
+	 * Get the devices found by previous discoveries, without triggering a discovery.
+	 *
+	 * @return The known devices.
+	 */
+	public List<Device> getKnownDevices() {
+		return new ArrayList<>(mDevices);
+	}
+
 	/**
 	 * Get a light by a filter.
 	 *
@@ -148,6 +365,51 @@ public final class LifxLan {
 		return getLightByFilter(device -> mac.equalsIgnoreCase(device.getTargetAddress()));
 	}
 
+	/**
+	 * Get lights by their MACs. Lights not yet known are searched in one common discovery.
+	 *
+	 * @param macs The MACs.
+	 * @return The found lights by upper case MAC.
+	 */
+	public Map<String, Light> getLightsByMac(final Collection<String> macs) {
+		final Map<String, Light> result = new HashMap<>();
+		final Set<String> missingMacs = new HashSet<>();
+		for (String mac : macs) {
+			missingMacs.add(mac.toUpperCase(Locale.ENGLISH));
+		}
+		for (Light light : mLights) {
+			String mac = light.getTargetAddress().toUpperCase(Locale.ENGLISH);
+			if (missingMacs.remove(mac)) {
+				result.put(mac, light);
+			}
+		}
+		if (missingMacs.isEmpty()) {
+			return result;
+		}
+
+		final int expectedResponses = missingMacs.size();
+		try {
+			List<Device> devices = retrieveDeviceInformation(new RetryPolicy() {
+				@Override
+				public int getTimeout(final int attempt) {
+					return 5000; // MAGIC_NUMBER
+				}
+
+				@Override
+				public int getExpectedResponses() {
+					return expectedResponses;
+				}
+			}, device -> device.getProduct().isLight() && missingMacs.contains(device.getTargetAddress().toUpperCase(Locale.ENGLISH)));
+			for (Device device : devices) {
+				result.put(device.getTargetAddress().toUpperCase(Locale.ENGLISH), (Light) device);
+			}
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+		return result;
+	}
+
 	/**
 	 * Get a light by its label.
 	 *
@@ -220,4 +482,16 @@ public final class LifxLan {
 		return foundDevices;
 	}
 
+	/**
+	 * Listener for device state changes.
+	 */
+	@FunctionalInterface
+	public interface DeviceStateListener {
+		/**
+		 * Callback called on a state change.
+		 *
+		 * @param change The state change.
+		 */
+		void onStateChange(DeviceStateChange change);
+	}
 }
@@ -7,7 +7,9 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import de.jeisfeld.lifx.lan.message.GetService;
 import de.jeisfeld.lifx.lan.message.RequestMessage;
@@ -27,6 +29,10 @@ public class LifxLanConnection {
 	 * The default number of attempts.
 	 */
 	private static final int DEFAULT_ATTEMPTS = 2;
+	/**
+	 * The maximum number of requests that are sent without waiting for response.
+	 */
+	private static final int PIPELINE_WINDOW = 16;
 	/**
 	 * The buffer size.
 	 */
@@ -39,6 +45,10 @@ public class LifxLanConnection {
 	 * The ist of UDP broadcast addresses.
 	 */
 	private static final InetAddress[] UDP_BROADCAST_ADDRESSES;
+	/**
+	 * The number of retried sends done by requests of the current thread.
+	 */
+	private static final ThreadLocal<int[]> RETRY_COUNT = ThreadLocal.withInitial(() -> new int[1]);
 	/**
 	 * The sourceId.
 	 */
@@ -111,6 +121,18 @@ public class LifxLanConnection {
 		return (byte) Thread.currentThread().getId();
 	}
 
+	/**
+	 * Acquire the device budget for sending messages with the priority of the current thread. Broadcasts are not budgeted.
+	 *
+	 * @param messageCount The number of messages to be sent.
+	 * @throws MessageDroppedException if the messages should be dropped in favor of requests of higher priority.
+	 */
+	private void acquireBudget(final int messageCount) throws MessageDroppedException {
+		if (mInetAddress != null && !RequestMessage.BROADCAST_MAC.equals(mTargetAddress)) {
+			DeviceBudget.getInstance(mTargetAddress).acquire(messageCount);
+		}
+	}
+
 	/**
 	 * Broadcast a request and receive responses.
 	 *
@@ -136,6 +158,9 @@ public class LifxLanConnection {
 			try {
 				boolean isSent = false;
 				long startTime = System.currentTimeMillis();
+				if (attempt > 0) {
+					RETRY_COUNT.get()[0]++;
+				}
 
 				DatagramSocket socket = new DatagramSocket();
 				socket.setBroadcast(true);
@@ -145,32 +170,13 @@ public class LifxLanConnection {
 
 				while (numDevicesSeen < retryPolicy.getExpectedResponses() && !timedOut) {
 					if (!isSent) {
-						if (mInetAddress == null) {
-							for (InetAddress address : LifxLanConnection.UDP_BROADCAST_ADDRESSES) {
-								DatagramPacket requestPacket = new DatagramPacket(message, message.length, address, mPort);
-								try {
-									socket.send(requestPacket);
-								}
-								catch (IOException e) {
-									Logger.error(e);
-								}
-							}
-						}
-						else {
-							DatagramPacket requestPacket = new DatagramPacket(message, message.length, mInetAddress, mPort);
-							try {
-								socket.send(requestPacket);
-							}
-							catch (IOException e) {
-								Logger.error(e);
-							}
-						}
+						send(socket, message);
 						isSent = true;
 					}
 					DatagramPacket responsePacket = new DatagramPacket(new byte[LifxLanConnection.BUFFER_SIZE], LifxLanConnection.BUFFER_SIZE);
 					try {
 						socket.receive(responsePacket);
-						ResponseMessage responseMessage = ResponseMessage.createResponseMessage(responsePacket);
+						ResponseMessage responseMessage = decode(responsePacket);
 						boolean isMatch = request.matches(responseMessage);
 						if (mFilter != null && request instanceof GetService) {
 							Device device = ((StateService) responseMessage).getDevice().getDeviceProduct();
@@ -216,14 +222,162 @@ public class LifxLanConnection {
 		return responses;
 	}
 
+	/**
+	 * Send a packed message via a socket, either to the target address or as broadcast.
+	 *
+	 * @param socket The socket.
+	 * @param message The packed message.
+	 */
+	private void send(final DatagramSocket socket, final byte[] message) {
+		if (mInetAddress == null) {
+			for (InetAddress address : LifxLanConnection.UDP_BROADCAST_ADDRESSES) {
+				DatagramPacket requestPacket = new DatagramPacket(message, message.length, address, mPort);
+				try {
+					socket.send(requestPacket);
+				}
+				catch (IOException e) {
+					Logger.error(e);
+				}
+			}
+		}
+		else {
+			DatagramPacket requestPacket = new DatagramPacket(message, message.length, mInetAddress, mPort);
+			try {
+				socket.send(requestPacket);
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Send multiple requests pipelined and receive one response for each of them. Requests are sent in windows without waiting for the
+	 * responses of the previous requests, and only requests without response are retransmitted, after an adaptive timeout based on the
+	 * measured round trip time of the device.
+	 *
+	 * @param requests The requests to be sent.
+	 * @return the responses, in the order of the requests.
+	 * @throws IOException No response for some request.
+	 */
+	public List<ResponseMessage> requestWithResponses(final List<? extends RequestMessage> requests) throws IOException {
+		ResponseMessage[] responses = new ResponseMessage[requests.size()];
+		for (int windowStart = 0; windowStart < requests.size(); windowStart += PIPELINE_WINDOW) {
+			requestWindow(requests, windowStart, Math.min(requests.size(), windowStart + PIPELINE_WINDOW), responses);
+		}
+		return Arrays.asList(responses);
+	}
+
+	/**
+	 * Send multiple requests pipelined in the background, as in requestWithResponses.
+	 *
+	 * @param requests The requests to be sent.
+	 * @return A future completing with the responses in the order of the requests, or exceptionally if some request got no response.
+	 */
+	public CompletableFuture<List<ResponseMessage>> requestWithResponsesAsync(final List<? extends RequestMessage> requests) {
+		final CompletableFuture<List<ResponseMessage>> future = new CompletableFuture<>();
+		final RequestPriority priority = RequestPriority.getCurrent();
+		LifxLan.getInstance().getExecutor().execute(() -> {
+			RequestPriority previousPriority = RequestPriority.setCurrent(priority);
+			try {
+				future.complete(requestWithResponses(requests));
+			}
+			catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+			finally {
+				RequestPriority.setCurrent(previousPriority);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Send one window of requests pipelined and receive their responses. Responses are assigned to the requests by sequence number. Missing
+	 * requests are retransmitted after the retransmission timeout, which is doubled after each round, until the responses are complete or
+	 * the total timeout of all attempts is exceeded.
+	 *
+	 * @param requests The requests.
+	 * @param from The first request index of the window.
+	 * @param to The request index after the window.
+	 * @param responses The array where the responses are stored.
+	 * @throws IOException No response for some request.
+	 */
+	private void requestWindow(final List<? extends RequestMessage> requests, final int from, final int to, final ResponseMessage[] responses)
+			throws IOException {
+		acquireBudget(to - from);
+		byte[][] messages = new byte[to - from][];
+		for (int i = from; i < to; i++) {
+			RequestMessage request = requests.get(i);
+			request.setSourceId(mSourceId);
+			request.setSequenceNumber((byte) (i - from));
+			request.setTargetAddress(mTargetAddress);
+			messages[i - from] = request.getPackedMessage();
+		}
+
+		final RoundTripEstimator estimator = RoundTripEstimator.getInstance(mTargetAddress);
+		final long[] sendTimes = new long[to - from];
+		final boolean[] isRetransmitted = new boolean[to - from];
+		final long deadline = System.currentTimeMillis() + DEFAULT_TIMEOUT * DEFAULT_ATTEMPTS;
+		long retransmitTimeout = estimator.getRetransmitTimeout();
+		int missingCount = to - from;
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setBroadcast(true);
+			socket.setReuseAddress(true);
+			while (missingCount > 0 && System.currentTimeMillis() < deadline) {
+				for (int i = from; i < to; i++) {
+					if (responses[i] == null) {
+						Logger.traceRequest(requests.get(i));
+						if (sendTimes[i - from] > 0) {
+							isRetransmitted[i - from] = true;
+							RETRY_COUNT.get()[0]++;
+						}
+						sendTimes[i - from] = System.currentTimeMillis();
+						send(socket, messages[i - from]);
+					}
+				}
+
+				final long roundEnd = Math.min(deadline, System.currentTimeMillis() + retransmitTimeout);
+				long remainingTime = roundEnd - System.currentTimeMillis();
+				while (missingCount > 0 && remainingTime > 0) {
+					socket.setSoTimeout((int) remainingTime);
+					DatagramPacket responsePacket = new DatagramPacket(new byte[LifxLanConnection.BUFFER_SIZE], LifxLanConnection.BUFFER_SIZE);
+					try {
+						socket.receive(responsePacket);
+						ResponseMessage responseMessage = decode(responsePacket);
+						int index = from + (responseMessage.getSequenceNumber() & 0xFF); // MAGIC_NUMBER
+						boolean isMatch = index < to && responses[index] == null && requests.get(index).matches(responseMessage);
+						if (isMatch) {
+							responses[index] = responseMessage;
+							missingCount--;
+							if (!isRetransmitted[index - from]) {
+								estimator.addSample(System.currentTimeMillis() - sendTimes[index - from]);
+							}
+						}
+						Logger.traceResponse(responseMessage, !isMatch);
+					}
+					catch (SocketTimeoutException e) {
+						break;
+					}
+					remainingTime = roundEnd - System.currentTimeMillis();
+				}
+				retransmitTimeout = Math.min(2 * retransmitTimeout, DEFAULT_TIMEOUT);
+			}
+		}
+		if (missingCount > 0) {
+			throw new IOException("Did not get " + missingCount + " of " + (to - from) + " responses from socket.");
+		}
+	}
+
 	/**
 	 * Send a request and receive single response.
 	 *
 	 * @param request The request to be sent.
 	 * @return the response.
-	 * @throws IOException No response.
+	 * @throws IOException No response. MessageDroppedException if dropped in favor of requests of higher priority.
 	 */
 	public ResponseMessage requestWithResponse(final RequestMessage request) throws IOException {
+		acquireBudget(1);
 		List<ResponseMessage> responses = broadcastWithResponse(request, new RetryPolicy() {
 		});
 		if (responses.size() == 0) {
@@ -234,6 +388,74 @@ public class LifxLanConnection {
 		}
 	}
 
+	/**
+	 * Send a request once and collect multiple responses to it from the same device within one receive window. In contrast to
+	 * broadcastWithResponse, responses from the same target address are not de-duplicated. There is no retry - the caller is responsible to
+	 * re-request missing parts.
+	 *
+	 * @param request The request to be sent.
+	 * @param expectedCount The number of expected responses. Receiving stops after this number of responses or timeout.
+	 * @return the responses received.
+	 * @throws IOException Exception while connecting.
+	 */
+	public List<ResponseMessage> requestWithMultipleResponses(final RequestMessage request, final int expectedCount) throws IOException {
+		acquireBudget(1);
+		request.setSourceId(mSourceId);
+		request.setSequenceNumber(getSequenceNumber());
+		request.setTargetAddress(mTargetAddress);
+		Logger.traceRequest(request);
+
+		List<ResponseMessage> responses = new ArrayList<>();
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setBroadcast(true);
+			socket.setReuseAddress(true);
+			send(socket, request.getPackedMessage());
+
+			long startTime = System.currentTimeMillis();
+			long remainingTime = DEFAULT_TIMEOUT;
+			while (responses.size() < expectedCount && remainingTime > 0) {
+				socket.setSoTimeout((int) remainingTime);
+				DatagramPacket responsePacket = new DatagramPacket(new byte[LifxLanConnection.BUFFER_SIZE], LifxLanConnection.BUFFER_SIZE);
+				try {
+					socket.receive(responsePacket);
+					ResponseMessage responseMessage = decode(responsePacket);
+					boolean isMatch = request.matches(responseMessage);
+					Logger.traceResponse(responseMessage, !isMatch);
+					if (isMatch) {
+						responses.add(responseMessage);
+					}
+				}
+				catch (SocketTimeoutException e) {
+					break;
+				}
+				remainingTime = DEFAULT_TIMEOUT - (System.currentTimeMillis() - startTime);
+			}
+		}
+		return responses;
+	}
+
+	/**
+	 * Get the number of retried sends done by requests of the current thread. The difference before and after a call gives the retries of
+	 * this call.
+	 *
+	 * @return The number of retried sends.
+	 */
+	public static int getRetryCount() {
+		return RETRY_COUNT.get()[0];
+	}
+
+	/**
+	 * Decode a received packet. Every decoded message updates the device state mirror, also if it is not the response to the request.
+	 *
+	 * @param packet The received packet.
+	 * @return The response message.
+	 */
+	private static ResponseMessage decode(final DatagramPacket packet) {
+		ResponseMessage responseMessage = ResponseMessage.createResponseMessage(packet);
+		DeviceStateMirror.getInstance().update(responseMessage);
+		return responseMessage;
+	}
+
 	/**
 	 * An interface filtering devices.
 	 */
@@ -4,7 +4,12 @@ import static de.jeisfeld.lifx.lan.util.TypeUtil.INDENT;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
 
+import de.jeisfeld.lifx.lan.DeviceStateChange.Type;
 import de.jeisfeld.lifx.lan.message.LightGet;
 import de.jeisfeld.lifx.lan.message.LightGetInfrared;
 import de.jeisfeld.lifx.lan.message.LightGetPower;
@@ -16,6 +21,7 @@ import de.jeisfeld.lifx.lan.message.LightSetWaveformOptional;
 import de.jeisfeld.lifx.lan.message.LightState;
 import de.jeisfeld.lifx.lan.message.LightStateInfrared;
 import de.jeisfeld.lifx.lan.message.LightStatePower;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
 import de.jeisfeld.lifx.lan.type.Color;
 import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.Product;
@@ -32,10 +38,22 @@ public class Light extends Device {
 	 * The waiting times before retry after error (increasing delays for repeated errors).
 	 */
 	protected static final int[] WAITING_TIMES_AFTER_ERROR = new int[] {1000, 2000, 5000, 10000, 10000, 10000};
+	/**
+	 * The maximum number of animation frames that are combined into one frame sent in case of adaptive frame rate.
+	 */
+	private static final int MAX_COMBINED_FRAMES = 100;
+	/**
+	 * The max age in millis of a mirrored power for considering the light to be on when starting an animation.
+	 */
+	private static final long KNOWN_POWER_MAX_AGE = 2000;
 	/**
 	 * The cycle thread.
 	 */
 	private BaseAnimationThread mAnimationThread = null;
+	/**
+	 * The estimator of the current color.
+	 */
+	private final TransitionEstimator mTransitionEstimator = new TransitionEstimator();
 
 	/**
 	 * Constructor.
@@ -76,16 +94,9 @@ public class Light extends Device {
 	}
 
 	@Override
-	public final Power getPower() {
-		LightStatePower lightStatePower;
-		try {
-			lightStatePower = (LightStatePower) getConnection().requestWithResponse(new LightGetPower());
-			return new Power(lightStatePower.getLevel());
-		}
-		catch (IOException e) {
-			Logger.error(e);
-			return null;
-		}
+	protected final Power retrievePower() throws IOException {
+		LightStatePower lightStatePower = (LightStatePower) getConnection().requestWithResponse(new LightGetPower());
+		return new Power(lightStatePower.getLevel());
 	}
 
 	/**
@@ -129,7 +140,31 @@ public class Light extends Device {
 	 */
 	public final Color getColor() {
 		LightState lightState = getState();
-		return lightState == null ? null : lightState.getColor();
+		if (lightState == null) {
+			return null;
+		}
+		mTransitionEstimator.onObserved(lightState.getColor());
+		return lightState.getColor();
+	}
+
+	/**
+	 * Get the color, served from the device state mirror if observed recently enough.
+	 *
+	 * @param maxAge The max age of the mirrored value in millis.
+	 * @return the color.
+	 */
+	public final Color getColor(final long maxAge) {
+		Color color = DeviceStateMirror.getInstance().getColor(getTargetAddress(), maxAge);
+		return color == null ? getColor() : color;
+	}
+
+	/**
+	 * Get the estimator of the current color, based on the transitions issued to the light.
+	 *
+	 * @return The transition estimator.
+	 */
+	public final TransitionEstimator getTransitionEstimator() {
+		return mTransitionEstimator;
 	}
 
 	/**
@@ -142,6 +177,7 @@ public class Light extends Device {
 	 */
 	public void setPower(final boolean status, final int duration, final boolean wait) throws IOException {
 		getConnection().requestWithResponse(new LightSetPower(status, duration));
+		invalidateCache(CachedField.POWER);
 		if (wait) {
 			try {
 				Thread.sleep(duration);
@@ -161,6 +197,8 @@ public class Light extends Device {
 	 * @throws IOException Connection issues
 	 */
 	public void setColor(final Color color, final int duration, final boolean wait) throws IOException {
+		onColorsOverwritten();
+		mTransitionEstimator.onTransition(color, duration);
 		getConnection().requestWithResponse(new LightSetColor(color, duration));
 		if (wait) {
 			try {
@@ -198,6 +236,8 @@ public class Light extends Device {
 	public void setWaveform(final boolean isTransient, final Color color, final int period, final double cycles,
 			final Waveform waveform, final double skewRatio, final boolean wait) throws IOException {
 		float floatCycles = (float) Math.max(0, Math.min(Float.MAX_VALUE, cycles));
+		onColorsOverwritten();
+		mTransitionEstimator.onWaveform(isTransient, color, period, floatCycles, waveform);
 		getConnection()
 				.requestWithResponse(
 						new LightSetWaveform(isTransient, color, period, floatCycles,
@@ -264,6 +304,8 @@ public class Light extends Device {
 		short saturationValue = TypeUtil.toShort(saturation == null ? 1 : saturation);
 		short brightnessValue = TypeUtil.toShort(brightness == null ? 1 : brightness);
 		short colorTemperatureValue = colorTemperature == null ? 4000 : colorTemperature.shortValue(); // MAGIC_NUMBER
+		onColorsOverwritten();
+		mTransitionEstimator.onWaveform(isTransient, null, period, floatCycles, waveform);
 
 		getConnection().requestWithResponse(
 				new LightSetWaveformOptional(isTransient, new Color(hueValue, saturationValue, brightnessValue, colorTemperatureValue),
@@ -280,6 +322,14 @@ public class Light extends Device {
 		}
 	}
 
+	/**
+	 * Callback called before the colors of the device are changed in a way that is not tracked per zone, such as setting the color of the
+	 * whole light or a waveform. Subclasses holding a shadow of the device colors need to invalidate it.
+	 */
+	protected void onColorsOverwritten() {
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.COLOR);
+	}
+
 	/**
 	 * Set the infrared brightness.
 	 *
@@ -287,9 +337,74 @@ public class Light extends Device {
 	 * @throws IOException Connection issues
 	 */
 	public void setInfraredBrightness(final short brightness) throws IOException {
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.INFRARED);
 		getConnection().requestWithResponse(new LightSetInfrared(brightness));
 	}
 
+	/**
+	 * Set power, color and infrared brightness as planned in a state frame. The requests are sent as one pipelined burst.
+	 *
+	 * @param frame The state frame.
+	 * @throws IOException Connection issues
+	 */
+	public void setState(final LightStateFrame frame) throws IOException {
+		if (frame.getColor() != null) {
+			onColorsOverwritten();
+			mTransitionEstimator.onTransition(frame.getColor(), frame.getColorTransitionTime());
+		}
+		sendRequests(frame.getRequests());
+		onStateSent(frame);
+	}
+
+	/**
+	 * Expire the cached and mirrored values overwritten by a state frame sent to the device.
+	 *
+	 * @param frame The state frame.
+	 */
+	protected final void onStateSent(final LightStateFrame frame) {
+		if (frame.getPower() != null) {
+			invalidateCache(CachedField.POWER);
+		}
+		if (frame.getInfraredBrightness() != null) {
+			DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.INFRARED);
+		}
+	}
+
+	/**
+	 * Send requests as one pipelined burst.
+	 *
+	 * @param requests The requests.
+	 * @throws IOException Connection issues
+	 */
+	protected final void sendRequests(final List<? extends RequestMessage> requests) throws IOException {
+		if (requests.size() == 1) {
+			getConnection().requestWithResponse(requests.get(0));
+		}
+		else if (requests.size() > 1) {
+			getConnection().requestWithResponses(requests);
+		}
+	}
+
+	/**
+	 * Set power, color and infrared brightness as planned in a state frame asynchronously.
+	 *
+	 * @param frame The state frame.
+	 * @return A future completing when the device has acknowledged the frame.
+	 */
+	public CompletableFuture<Void> setStateAsync(final LightStateFrame frame) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		LifxLan.getInstance().getExecutor().execute(() -> {
+			try {
+				setState(frame);
+				future.complete(null);
+			}
+			catch (IOException e) {
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
 	/**
 	 * Wait until the color fulfils a certain condition.
 	 *
@@ -298,6 +413,65 @@ public class Light extends Device {
 	 */
 	public void waitForColor(final ColorFilter filter, final long timeout) {
 		long startTime = System.currentTimeMillis();
+		long waitTime = getPredictedWaitTime(filter, startTime, timeout);
+		if (waitTime > 0) {
+			try {
+				Thread.sleep(waitTime);
+			}
+			catch (InterruptedException e) {
+				// ignore
+			}
+		}
+		pollForColor(filter, startTime, timeout);
+	}
+
+	/**
+	 * Wait asynchronously until the color fulfils a certain condition. The check is scheduled for the predicted end of the running
+	 * transition.
+	 *
+	 * @param filter The filtering condition.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return A future completing with true if the condition is fulfilled, or false in case of timeout.
+	 */
+	public CompletableFuture<Boolean> waitForColorAsync(final ColorFilter filter, final long timeout) {
+		final long startTime = System.currentTimeMillis();
+		final CompletableFuture<Boolean> future = new CompletableFuture<>();
+		LifxLan.getInstance().getScheduledExecutor().schedule(
+				() -> LifxLan.getInstance().getExecutor().execute(() -> future.complete(pollForColor(filter, startTime, timeout))),
+				getPredictedWaitTime(filter, startTime, timeout), TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	/**
+	 * Get the time until the running transition is predicted to end with a color matching the filter.
+	 *
+	 * @param filter The filtering condition.
+	 * @param startTime The start time of waiting.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return The predicted waiting time. 0 if there is no prediction of a matching color.
+	 */
+	private long getPredictedWaitTime(final ColorFilter filter, final long startTime, final long timeout) {
+		long endTime = mTransitionEstimator.getEndTime();
+		if (endTime <= startTime || endTime == Long.MAX_VALUE) {
+			return 0;
+		}
+		Color predictedColor = mTransitionEstimator.estimateColor(endTime);
+		if (predictedColor != null && !filter.matches(predictedColor)) {
+			// the transition does not lead to the expected color - it will need to be changed by someone else.
+			return 0;
+		}
+		return timeout < 0 ? endTime - startTime : Math.min(endTime - startTime, timeout);
+	}
+
+	/**
+	 * Read the color until it fulfils a certain condition.
+	 *
+	 * @param filter The filtering condition.
+	 * @param startTime The start time of waiting.
+	 * @param timeout Max waiting time in millis. No timeout in case of negative values.
+	 * @return true if the condition is fulfilled.
+	 */
+	private boolean pollForColor(final ColorFilter filter, final long startTime, final long timeout) {
 		Color color = getColor();
 		boolean isMatching = filter.matches(color);
 		while (!isMatching && (timeout < 0 || System.currentTimeMillis() - startTime < timeout)) {
@@ -310,6 +484,7 @@ public class Light extends Device {
 			color = getColor();
 			isMatching = filter.matches(color);
 		}
+		return isMatching;
 	}
 
 	/**
@@ -550,9 +725,13 @@ public class Light extends Device {
 		 */
 		private double mRelativeBrightness = 1;
 		/**
-		 * An exception callback called in case of SocketException.
+		 * Flag indicating if the frame rate is adapted to the link quality.
 		 */
-		private AnimationCallback mAnimationCallback = null;
+		private boolean mIsAdaptiveFrameRate = true;
+		/**
+		 * The controller for adaptive frame rate.
+		 */
+		private final FrameRateController mFrameRateController = new FrameRateController();
 
 		/**
 		 * Create an animation thread.
@@ -597,16 +776,143 @@ public class Light extends Device {
 		}
 
 		/**
-		 * Set the exception callback called in case of Exception.
+		 * Set the flag indicating if the frame rate should be adapted to the link quality. If enabled, then frames are skipped and
+		 * transitions are stretched when the device acknowledges slowly or frames get lost, so that the animation gets smoother with
+		 * lower frame rate instead of freezing.
 		 *
-		 * @param callback The callback.
+		 * @param adaptiveFrameRate The flag.
 		 * @return The updated animation thread.
 		 */
+		public AnimationThread setAdaptiveFrameRate(final boolean adaptiveFrameRate) {
+			mIsAdaptiveFrameRate = adaptiveFrameRate;
+			return this;
+		}
+
+		/**
+		 * Get the controller for the adaptive frame rate.
+		 *
+		 * @return The frame rate controller.
+		 */
+		public FrameRateController getFrameRateController() {
+			return mFrameRateController;
+		}
+
+		@Override
 		public AnimationThread setAnimationCallback(final AnimationCallback callback) {
-			mAnimationCallback = callback;
+			super.setAnimationCallback(callback);
 			return this;
 		}
 
+		/**
+		 * Get the number of animation frames to be combined into the next frame sent to the device. Frames are combined until their total
+		 * duration reaches the current adaptive frame interval. Only the durations are evaluated, so that skipped frames are not computed.
+		 * If the animation ends within the span, the caller has to shorten it.
+		 *
+		 * @param count The number of the next animation frame.
+		 * @param durations The durations of the animation frames.
+		 * @return The number of animation frames to be combined.
+		 */
+		protected final int getFrameSpan(final int count, final IntUnaryOperator durations) {
+			if (!mIsAdaptiveFrameRate) {
+				return 1;
+			}
+			final int frameInterval = mFrameRateController.getFrameInterval();
+			int frameSpan = 1;
+			int duration = Math.max(durations.applyAsInt(count), 0);
+			while (duration < frameInterval && frameSpan < MAX_COMBINED_FRAMES) {
+				duration += Math.max(durations.applyAsInt(count + frameSpan), 0);
+				frameSpan++;
+			}
+			return frameSpan;
+		}
+
+		/**
+		 * Get the transition duration of a frame combined from several animation frames. The duration is stretched to the adaptive frame
+		 * interval, so that the transition on the device hides skipped frames.
+		 *
+		 * @param count The number of the first combined animation frame.
+		 * @param frameSpan The number of combined animation frames.
+		 * @param durations The durations of the animation frames.
+		 * @return The duration of the combined frame.
+		 */
+		protected final int getSpanDuration(final int count, final int frameSpan, final IntUnaryOperator durations) {
+			int duration = 0;
+			for (int i = 0; i < frameSpan; i++) {
+				duration += Math.max(durations.applyAsInt(count + i), 0);
+			}
+			return mIsAdaptiveFrameRate ? Math.max(duration, mFrameRateController.getFrameInterval()) : duration;
+		}
+
+		/**
+		 * Get the state frame switching on the light at the start of the animation. The power is not read from the device, so that the
+		 * first animation frame is sent in one burst. Unless the light is known to be on, the color is set instantly, so that the light
+		 * fades in with the start color instead of fading from its old color.
+		 *
+		 * @param duration The duration of the first animation frame.
+		 * @return The start frame. The color is still to be set.
+		 */
+		protected final LightStateFrame getStartFrame(final int duration) {
+			Power power = DeviceStateMirror.getInstance().getPower(getTargetAddress(), KNOWN_POWER_MAX_AGE);
+			return new LightStateFrame().setPower(true).setPowerTransitionTime(duration)
+					.setColorTransitionTime(power != null && power.isOn() ? duration : 0);
+		}
+
+		/**
+		 * Send the end state of the animation and wait for its transition.
+		 *
+		 * @param frame The end state.
+		 * @throws IOException Connection issues
+		 */
+		protected final void setEndState(final LightStateFrame frame) throws IOException {
+			setState(frame);
+			try {
+				Thread.sleep(frame.getTransitionTime());
+			}
+			catch (InterruptedException e) {
+				// ignore
+			}
+		}
+
+		/**
+		 * Register the acknowledgement of a frame.
+		 *
+		 * @param sendTime The time when sending the frame started.
+		 */
+		protected final void onFrameAcknowledged(final long sendTime) {
+			if (mIsAdaptiveFrameRate) {
+				mFrameRateController.onAcknowledged(System.currentTimeMillis() - sendTime);
+			}
+		}
+
+		/**
+		 * Register a frame that failed due to timeout.
+		 *
+		 * @param count The number of the animation frame.
+		 * @return true if the frame can be dropped, as the frame rate can still be lowered. false if the error handling should wait and
+		 *         retry.
+		 */
+		protected final boolean onFrameTimeout(final int count) {
+			if (!mIsAdaptiveFrameRate) {
+				return false;
+			}
+			mFrameRateController.onTimeout();
+			Logger.info("Frame " + count + " of animation dropped - " + mFrameRateController);
+			return count > 0 && !mFrameRateController.isAtMaximumInterval();
+		}
+
+		/**
+		 * Register a frame that was dropped as the device budget is needed for requests of higher priority. This is a congestion signal, so
+		 * the frame rate is lowered as on timeout.
+		 *
+		 * @param count The number of the animation frame.
+		 */
+		protected final void onFrameDropped(final int count) {
+			if (mIsAdaptiveFrameRate) {
+				mFrameRateController.onTimeout();
+				Logger.info("Frame " + count + " of animation dropped for higher priority - " + mFrameRateController);
+			}
+		}
+
 		// OVERRIDABLE
 		@Override
 		public void run() {
@@ -618,21 +924,38 @@ public class Light extends Device {
 						long startTime = System.currentTimeMillis();
 						int errorCount = 0;
 						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
+						int frameSpan = getFrameSpan(count, mDefinition::getDuration);
+						Color color = mDefinition.getColor(count + frameSpan - 1);
+						while (color == null) {
+							// the animation ends within the span.
+							frameSpan--;
+							color = mDefinition.getColor(count + frameSpan - 1);
+						}
+						final int duration = getSpanDuration(count, frameSpan, mDefinition::getDuration);
+						// the first frame establishes the animation and must not be dropped.
+						RequestPriority.setCurrent(count == 0 ? RequestPriority.SCENE : RequestPriority.ANIMATION);
 						while (!success) {
+							final long sendTime = System.currentTimeMillis();
 							try { // SUPPRESS_CHECKSTYLE
-								Color color = mDefinition.getColor(count);
-								Power power;
-								if (count == 0 && (power = getPower()) != null && power.isOff()) { // SUPPRESS_CHECKSTYLE
-									setColor(color.withRelativeBrightness(mRelativeBrightness));
-									setPower(true, duration, false);
+								if (count == 0) {
+									setState(getStartFrame(duration).setColor(color.withRelativeBrightness(mRelativeBrightness)));
 								}
 								else {
 									setColor(color.withRelativeBrightness(mRelativeBrightness), duration, false);
 								}
+								onFrameAcknowledged(sendTime);
 								success = true;
 							}
+							catch (MessageDroppedException e) {
+								// the device budget is needed for requests of higher priority - skip the frame.
+								onFrameDropped(count);
+								break;
+							}
 							catch (IOException e) {
+								if (onFrameTimeout(count)) {
+									// drop the frame. The next frame is sent with lower frame rate.
+									break;
+								}
 								errorCount++;
 								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
 									throw e;
@@ -641,31 +964,32 @@ public class Light extends Device {
 							}
 						}
 						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
+						count += frameSpan;
 					}
 				}
 				catch (InterruptedException e) {
 					isInterrupted = true;
 				}
 
+				RequestPriority.setCurrent(RequestPriority.SCENE);
 				if (mEndColor == null) {
 					// stop the previous color transition by sending setWaveform command with no change.
 					setWaveform(false, null, null, null, null, 0, 0, 0, Waveform.PULSE, false);
 				}
 				else if (mEndColor.getBrightness() == 0) {
-					setPower(false, mEndTransitionTime, true);
+					setEndState(new LightStateFrame().setPower(false).setTransitionTime(mEndTransitionTime));
 				}
 				else {
-					setColor(mEndColor, mEndTransitionTime, true);
+					setEndState(new LightStateFrame().setColor(mEndColor).setTransitionTime(mEndTransitionTime));
 				}
-				if (mAnimationCallback != null) {
-					mAnimationCallback.onAnimationEnd(isInterrupted);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onAnimationEnd(isInterrupted);
 				}
 			}
 			catch (IOException e) {
 				Logger.error(e);
-				if (mAnimationCallback != null) {
-					mAnimationCallback.onException(e);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onException(e);
 				}
 			}
 		}
@@ -679,6 +1003,28 @@ public class Light extends Device {
 			return mRelativeBrightness;
 		}
 
+	}
+
+	/**
+	 * A base thread for animating the light.
+	 */
+	public class BaseAnimationThread extends Thread { // SUPPRESS_CHECKSTYLE
+		/**
+		 * An exception callback called in case of SocketException.
+		 */
+		private AnimationCallback mAnimationCallback = null;
+
+		/**
+		 * Set the exception callback called in case of Exception.
+		 *
+		 * @param callback The callback.
+		 * @return The updated animation thread.
+		 */
+		public BaseAnimationThread setAnimationCallback(final AnimationCallback callback) {
+			mAnimationCallback = callback;
+			return this;
+		}
+
 		/**
 		 * Get the exception callback.
 		 *
@@ -687,12 +1033,7 @@ public class Light extends Device {
 		protected AnimationCallback getAnimationCallback() {
 			return mAnimationCallback;
 		}
-	}
 
-	/**
-	 * A base thread for animating the light.
-	 */
-	public class BaseAnimationThread extends Thread { // SUPPRESS_CHECKSTYLE
 		@Override
 		public final void start() {
 			synchronized (Light.this) {
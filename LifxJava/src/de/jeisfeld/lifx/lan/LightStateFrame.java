@@ -0,0 +1,207 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import de.jeisfeld.lifx.lan.message.LightSetColor;
+import de.jeisfeld.lifx.lan.message.LightSetInfrared;
+import de.jeisfeld.lifx.lan.message.LightSetPower;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.type.Color;
+
+/**
+ * The target state of a light, bundling power, color and infrared brightness with a common transition time. Color and power may have
+ * separate transition times, e.g. for switching on into a new color. The frame is sent to a light as one pipelined burst, so that a scene
+ * switch takes one round trip per device.
+ */
+public class LightStateFrame {
+	/**
+	 * The target power. Null if unchanged.
+	 */
+	private Boolean mPower = null;
+	/**
+	 * The target color. Null if unchanged.
+	 */
+	private Color mColor = null;
+	/**
+	 * The target infrared brightness. Null if unchanged.
+	 */
+	private Short mInfraredBrightness = null;
+	/**
+	 * The transition time in millis.
+	 */
+	private int mTransitionTime = 0;
+	/**
+	 * The transition time of the color in millis. Null for the common transition time.
+	 */
+	private Integer mColorTransitionTime = null;
+	/**
+	 * The transition time of the power in millis. Null for the common transition time.
+	 */
+	private Integer mPowerTransitionTime = null;
+
+	/**
+	 * Set the target power.
+	 *
+	 * @param power true for on, false for off, null for unchanged.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setPower(final Boolean power) {
+		mPower = power;
+		return this;
+	}
+
+	/**
+	 * Set the target color.
+	 *
+	 * @param color The color. Null for unchanged.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setColor(final Color color) {
+		mColor = color;
+		return this;
+	}
+
+	/**
+	 * Set the target infrared brightness.
+	 *
+	 * @param infraredBrightness The infrared brightness. Null for unchanged.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setInfraredBrightness(final Short infraredBrightness) {
+		mInfraredBrightness = infraredBrightness;
+		return this;
+	}
+
+	/**
+	 * Set the transition time applied to power and color, unless set separately for them.
+	 *
+	 * @param transitionTime The transition time in millis.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setTransitionTime(final int transitionTime) {
+		mTransitionTime = transitionTime;
+		return this;
+	}
+
+	/**
+	 * Set the transition time of the color.
+	 *
+	 * @param colorTransitionTime The transition time in millis. Null for the common transition time.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setColorTransitionTime(final Integer colorTransitionTime) {
+		mColorTransitionTime = colorTransitionTime;
+		return this;
+	}
+
+	/**
+	 * Set the transition time of the power.
+	 *
+	 * @param powerTransitionTime The transition time in millis. Null for the common transition time.
+	 * @return The updated frame.
+	 */
+	public LightStateFrame setPowerTransitionTime(final Integer powerTransitionTime) {
+		mPowerTransitionTime = powerTransitionTime;
+		return this;
+	}
+
+	/**
+	 * Get the target power.
+	 *
+	 * @return The target power. Null if unchanged.
+	 */
+	public final Boolean getPower() {
+		return mPower;
+	}
+
+	/**
+	 * Get the target color.
+	 *
+	 * @return The target color. Null if unchanged.
+	 */
+	public final Color getColor() {
+		return mColor;
+	}
+
+	/**
+	 * Get the target infrared brightness.
+	 *
+	 * @return The target infrared brightness. Null if unchanged.
+	 */
+	public final Short getInfraredBrightness() {
+		return mInfraredBrightness;
+	}
+
+	/**
+	 * Get the transition time.
+	 *
+	 * @return The transition time in millis.
+	 */
+	public final int getTransitionTime() {
+		return mTransitionTime;
+	}
+
+	/**
+	 * Get the transition time of the color.
+	 *
+	 * @return The transition time in millis.
+	 */
+	public final int getColorTransitionTime() {
+		return mColorTransitionTime == null ? mTransitionTime : mColorTransitionTime;
+	}
+
+	/**
+	 * Get the transition time of the power.
+	 *
+	 * @return The transition time in millis.
+	 */
+	public final int getPowerTransitionTime() {
+		return mPowerTransitionTime == null ? mTransitionTime : mPowerTransitionTime;
+	}
+
+	/**
+	 * Plan the requests for this frame. The color is set before switching on, so that the light powers up into the new color, and after
+	 * switching off, so that it fades out with the current color.
+	 *
+	 * @return The requests.
+	 */
+	protected List<RequestMessage> getRequests() {
+		List<RequestMessage> requests = new ArrayList<>();
+		if (mPower != null && !mPower) {
+			requests.add(new LightSetPower(false, getPowerTransitionTime()));
+		}
+		if (mColor != null) {
+			requests.add(new LightSetColor(mColor, getColorTransitionTime()));
+		}
+		if (mInfraredBrightness != null) {
+			requests.add(new LightSetInfrared(mInfraredBrightness));
+		}
+		if (mPower != null && mPower) {
+			requests.add(new LightSetPower(true, getPowerTransitionTime()));
+		}
+		return requests;
+	}
+
+	/**
+	 * Send this frame to several lights in parallel.
+	 *
+	 * @param lights The lights.
+	 * @return A future completing when all lights have acknowledged the frame.
+	 */
+	public CompletableFuture<Void> sendTo(final Collection<? extends Light> lights) {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (Light light : lights) {
+			futures.add(light.setStateAsync(this));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	@Override
+	public final String toString() {
+		return "LightStateFrame[power=" + mPower + ", color=" + mColor + ", infrared=" + mInfraredBrightness + ", transition="
+				+ getColorTransitionTime() + "/" + getPowerTransitionTime() + "]";
+	}
+}
@@ -1,10 +1,13 @@
 package de.jeisfeld.lifx.lan;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Waveform;
 import de.jeisfeld.lifx.lan.util.TypeUtil;
 
 /**
@@ -65,25 +68,89 @@ public class Location {
 	}
 
 	/**
-	 * Retrieve the list of devices of this group.
+	 * Retrieve the list of devices of this location. Only devices found by previous discoveries are considered. The membership is
+	 * resolved from the cached location of the devices, and devices without cached location are queried in parallel.
 	 *
-	 * @return the list of devices found in this group.
+	 * @return the list of devices found in this location.
 	 */
 	public List<Device> getDevices() {
-		return LifxLan.getInstance().getDevicesByFilter(device -> equals(device.getLocation()));
+		List<Device> knownDevices = LifxLan.getInstance().getKnownDevices();
+		List<Device> unresolvedDevices = new ArrayList<>();
+		for (Device device : knownDevices) {
+			if (device.getCachedLocation() == null) {
+				unresolvedDevices.add(device);
+			}
+		}
+		if (unresolvedDevices.size() > 0) {
+			FanOut.execute(unresolvedDevices, Device::getLocation);
+		}
+
+		List<Device> result = new ArrayList<>();
+		for (Device device : knownDevices) {
+			if (equals(device.getCachedLocation())) {
+				result.add(device);
+			}
+		}
+		return result;
 	}
 
 	/**
-	 * Update the location label.
+	 * Update the location label. The update is sent to all devices of the location in parallel.
 	 *
 	 * @param newLocationLabel The new location label.
 	 * @throws IOException Connection issues
 	 */
 	public void updateLabel(final String newLocationLabel) throws IOException {
 		Location updatedLocation = new Location(getLocationId(), newLocationLabel);
-		for (Device device : getDevices()) {
-			device.setLocation(updatedLocation);
-		}
+		FanOut.execute(getDevices(), device -> device.setLocation(updatedLocation)).throwOnFailure();
+	}
+
+	/**
+	 * Set the power of all devices of the location in parallel.
+	 *
+	 * @param status true for switching on, false for switching off
+	 * @param duration the duration of power change in millis. Only applicable for lights.
+	 * @return The aggregate result.
+	 */
+	public FanOutResult setPower(final boolean status, final int duration) {
+		return FanOut.setPower(getDevices(), status, duration);
+	}
+
+	/**
+	 * Set the color of all lights of the location in parallel.
+	 *
+	 * @param color the target color.
+	 * @param duration the duration of color change in millis.
+	 * @return The aggregate result.
+	 */
+	public FanOutResult setColor(final Color color, final int duration) {
+		return FanOut.setColor(getDevices(), color, duration);
+	}
+
+	/**
+	 * Set a waveform on all lights of the location in parallel.
+	 *
+	 * @param isTransient the transient flag indicating if the color finally returns to prior value.
+	 * @param color the target color.
+	 * @param period the cycle period in millis.
+	 * @param cycles the number of cycles.
+	 * @param waveform the waveform.
+	 * @param skewRatio the skew ratio between 0 and 1.
+	 * @return The aggregate result.
+	 */
+	public FanOutResult setWaveform(final boolean isTransient, final Color color, final int period, final double cycles,
+			final Waveform waveform, final double skewRatio) {
+		return FanOut.setWaveform(getDevices(), isTransient, color, period, cycles, waveform, skewRatio);
+	}
+
+	/**
+	 * Send a state frame to all lights of the location in parallel.
+	 *
+	 * @param frame The state frame.
+	 * @return The aggregate result.
+	 */
+	public FanOutResult setState(final LightStateFrame frame) {
+		return FanOut.setState(getDevices(), frame);
 	}
 
 	@Override
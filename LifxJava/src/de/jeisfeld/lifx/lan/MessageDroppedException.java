@@ -0,0 +1,23 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown if a request is dropped without sending, as the message budget of the device is needed for requests of higher priority.
+ */
+public class MessageDroppedException extends IOException {
+	/**
+	 * The default serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param targetAddress The target address of the device.
+	 * @param priority The priority of the dropped request.
+	 */
+	public MessageDroppedException(final String targetAddress, final RequestPriority priority) {
+		super("Dropped " + priority + " request to " + targetAddress + " as device budget is exhausted");
+	}
+}
@@ -5,8 +5,11 @@ import static de.jeisfeld.lifx.lan.util.TypeUtil.INDENT;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import de.jeisfeld.lifx.lan.DeviceStateChange.Type;
 import de.jeisfeld.lifx.lan.message.MultizoneGetColorZones;
 import de.jeisfeld.lifx.lan.message.MultizoneGetExtendedColorZones;
 import de.jeisfeld.lifx.lan.message.MultizoneGetMultizoneEffect;
@@ -17,10 +20,13 @@ import de.jeisfeld.lifx.lan.message.MultizoneSetMultizoneEffect;
 import de.jeisfeld.lifx.lan.message.MultizoneStateExtendedColorZones;
 import de.jeisfeld.lifx.lan.message.MultizoneStateMultizoneEffect;
 import de.jeisfeld.lifx.lan.message.MultizoneStateZone;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
 import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.ColorFrame;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
-import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.type.MultizoneFrame;
 import de.jeisfeld.lifx.lan.type.Product;
 import de.jeisfeld.lifx.lan.type.Vendor;
 import de.jeisfeld.lifx.lan.type.Waveform;
@@ -35,11 +41,51 @@ public class MultiZoneLight extends Light {
 	 * The size of a bulk of colors.
 	 */
 	private static final int BULK_SIZE = 8;
+	/**
+	 * The max difference of hue, saturation and brightness of zones that are sent as one run to devices without extended API.
+	 */
+	private static final int LEGACY_RUN_TOLERANCE = 512;
+	/**
+	 * The max difference of color temperature of zones that are sent as one run to devices without extended API.
+	 */
+	private static final int LEGACY_RUN_KELVIN_TOLERANCE = 50;
+	/**
+	 * The max difference of hue, saturation and brightness of a zone to the last written color that is not sent as change.
+	 */
+	private static final int DELTA_TOLERANCE = 64;
+	/**
+	 * The max difference of color temperature of a zone to the last written color that is not sent as change.
+	 */
+	private static final int DELTA_KELVIN_TOLERANCE = 10;
+	/**
+	 * The interval in millis after which all zones are sent again, even if unchanged.
+	 */
+	private static final int FULL_REFRESH_INTERVAL = 10000;
+	/**
+	 * The number of attempts to gather the colors of all zones.
+	 */
+	private static final int GATHER_ATTEMPTS = 3;
+	/**
+	 * The max zone index that can be addressed without extended API.
+	 */
+	private static final int MAX_LEGACY_ZONE_INDEX = 255;
 
 	/**
 	 * The count of colors zones.
 	 */
-	private final byte mZoneCount;
+	private final int mZoneCount;
+	/**
+	 * The shadow of the colors last written to the device. Null if unknown.
+	 */
+	private MultizoneFrame mShadow = null;
+	/**
+	 * The time of the last write of all zones.
+	 */
+	private long mLastFullRefreshTime = 0;
+	/**
+	 * Lock for access to the shadow.
+	 */
+	private final Object mShadowLock = new Object();
 
 	/**
 	 * Constructor.
@@ -49,8 +95,19 @@ public class MultiZoneLight extends Light {
 	public MultiZoneLight(final Device device) {
 		super(device);
 		MultizoneStateZone stateZone = getMultizoneState((byte) 0, (byte) 0);
-		mZoneCount = stateZone == null ? 0 : stateZone.getCount();
+		int zoneCount = stateZone == null ? 0 : TypeUtil.toUnsignedInt(stateZone.getCount());
 		getFirmwareBuildTime();
+		if (hasExtendedApi()) {
+			// the legacy zone count is limited to one byte.
+			try {
+				zoneCount = TypeUtil.toUnsignedInt(
+						((MultizoneStateExtendedColorZones) getConnection().requestWithResponse(new MultizoneGetExtendedColorZones())).getCount());
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+		mZoneCount = zoneCount;
 	}
 
 	/**
@@ -68,7 +125,7 @@ public class MultiZoneLight extends Light {
 	 * @param firmwareBuildTimeStamp The firmware build timestamp
 	 */
 	public MultiZoneLight(final String targetAddress, final InetAddress inetAddress, final int port, final int sourceId, // SUPPRESS_CHECKSTYLE
-			final Vendor vendor, final Product product, final int version, final String label, final byte zoneCount,
+			final Vendor vendor, final Product product, final int version, final String label, final int zoneCount,
 			final long firmwareBuildTimeStamp) {
 		super(targetAddress, inetAddress, port, sourceId, vendor, product, version, label);
 		mZoneCount = zoneCount;
@@ -102,20 +159,37 @@ public class MultiZoneLight extends Light {
 	}
 
 	/**
-	 * Get the light state via extended API. Works only with new devices and new Firmware.
+	 * Get the light state via extended API. Works only with new devices and new Firmware. Devices with more than 82 zones answer with
+	 * several messages, which are reassembled by their zone index.
 	 *
 	 * @return the light state.
 	 */
 	public List<Color> getMultizoneExtendedColors() {
 		try {
-			MultizoneStateExtendedColorZones multizoneExtendedColorZones =
-					(MultizoneStateExtendedColorZones) getConnection().requestWithResponse(new MultizoneGetExtendedColorZones());
-			if (multizoneExtendedColorZones == null) {
-				return null;
-			}
-			else {
-				return multizoneExtendedColorZones.getColors();
+			Color[] colors = null;
+			for (int attempt = 0; attempt < GATHER_ATTEMPTS; attempt++) {
+				int zoneCount = colors == null ? getZoneCount() : colors.length;
+				int expectedCount =
+						Math.max(1, (zoneCount + MultizoneSetExtendedColorZones.MAX_COLORS - 1) / MultizoneSetExtendedColorZones.MAX_COLORS);
+				for (ResponseMessage response : getConnection().requestWithMultipleResponses(new MultizoneGetExtendedColorZones(),
+						expectedCount)) {
+					MultizoneStateExtendedColorZones stateZones = (MultizoneStateExtendedColorZones) response;
+					if (colors == null) {
+						colors = new Color[TypeUtil.toUnsignedInt(stateZones.getCount())];
+					}
+					int index = TypeUtil.toUnsignedInt(stateZones.getIndex());
+					for (Color color : stateZones.getColors()) {
+						if (index < colors.length) {
+							colors[index] = color;
+						}
+						index++;
+					}
+				}
+				if (colors != null && !Arrays.asList(colors).contains(null)) {
+					return new ArrayList<>(Arrays.asList(colors));
+				}
 			}
+			throw new IOException("Did not get colors of all zones from " + getLabel());
 		}
 		catch (IOException e) {
 			Logger.error(e);
@@ -124,7 +198,8 @@ public class MultiZoneLight extends Light {
 	}
 
 	/**
-	 * Get the colors of a range of zones.
+	 * Get the colors of a range of zones. All blocks of zones are requested with a single request, and only missing blocks are requested
+	 * again.
 	 *
 	 * @param startIndex The index of the start zone.
 	 * @param endIndex The index of the end zone.
@@ -133,18 +208,68 @@ public class MultiZoneLight extends Light {
 	public final List<Color> getColors(final byte startIndex, final byte endIndex) {
 		int start = TypeUtil.toUnsignedInt(startIndex);
 		int end = TypeUtil.toUnsignedInt(endIndex);
-		List<Color> result = new ArrayList<>();
-		for (int blockIndex = start / 8; blockIndex <= end / 8; blockIndex++) { // MAGIC_NUMBER
-			MultizoneStateZone multizoneState =
-					getMultizoneState((byte) Math.max(start, blockIndex * 8), (byte) Math.min(end, blockIndex * 8 + 7)); // MAGIC_NUMBER
-			if (multizoneState == null) {
+		if (end < start) {
+			return new ArrayList<>();
+		}
+		Color[] colors = new Color[end - start + 1];
+		try {
+			for (int attempt = 0; attempt < GATHER_ATTEMPTS; attempt++) {
+				boolean isComplete = true;
+				int rangeStart = 0;
+				while (rangeStart < colors.length) {
+					if (colors[rangeStart] != null) {
+						rangeStart++;
+						continue;
+					}
+					int rangeEnd = rangeStart;
+					while (rangeEnd + 1 < colors.length && colors[rangeEnd + 1] == null) {
+						rangeEnd++;
+					}
+					isComplete = false;
+					gatherColors(start + rangeStart, start + rangeEnd, start, colors);
+					rangeStart = rangeEnd + 1;
+				}
+				if (isComplete) {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			Logger.error(e);
+			return null;
+		}
+		for (Color color : colors) {
+			if (color == null) {
+				Logger.error(new IOException("Did not get colors of all zones from " + getLabel()));
 				return null;
 			}
-			else {
-				result.addAll(multizoneState.getColors());
+		}
+		return new ArrayList<>(Arrays.asList(colors));
+	}
+
+	/**
+	 * Request the colors of a range of zones with a single request, and store the colors of all received blocks.
+	 *
+	 * @param rangeStart The index of the start zone of the request.
+	 * @param rangeEnd The index of the end zone of the request.
+	 * @param offset The zone index of the first entry in the target array.
+	 * @param colors The target array.
+	 * @throws IOException Connection issues
+	 */
+	private void gatherColors(final int rangeStart, final int rangeEnd, final int offset, final Color[] colors) throws IOException {
+		// the device answers with blocks of 8 zones aligned to multiples of 8.
+		int expectedBlocks = rangeEnd / 8 - rangeStart / 8 + 1; // MAGIC_NUMBER
+		for (ResponseMessage response : getConnection().requestWithMultipleResponses(
+				new MultizoneGetColorZones((byte) rangeStart, (byte) rangeEnd), expectedBlocks)) {
+			MultizoneStateZone stateZone = (MultizoneStateZone) response;
+			int index = TypeUtil.toUnsignedInt(stateZone.getIndex()) - offset;
+			for (Color color : stateZone.getColors()) {
+				if (index >= 0 && index < colors.length && colors[index] == null) {
+					colors[index] = color;
+				}
+				index++;
 			}
 		}
-		return result;
 	}
 
 	/**
@@ -157,7 +282,7 @@ public class MultiZoneLight extends Light {
 			return getMultizoneExtendedColors();
 		}
 		else {
-			return getColors((byte) 0, (byte) (getZoneCount() - 1));
+			return getColors((byte) 0, (byte) Math.min(getZoneCount() - 1, MAX_LEGACY_ZONE_INDEX));
 		}
 	}
 
@@ -192,6 +317,7 @@ public class MultiZoneLight extends Light {
 	 */
 	public void setColor(final byte startIndex, final byte endIndex, final Color color, final int duration, final boolean wait, final boolean apply)
 			throws IOException {
+		onColorsOverwritten();
 		getConnection().requestWithResponse(new MultizoneSetColorZones(startIndex, endIndex, color, duration, apply ? Apply.APPLY : Apply.NO_APPLY));
 	}
 
@@ -204,15 +330,27 @@ public class MultiZoneLight extends Light {
 	 * @throws IOException Connection issues
 	 */
 	public void setColors(final int duration, final boolean wait, final MultizoneColors colors) throws IOException {
-		if (hasExtendedApi()) {
-			getConnection().requestWithResponse(
-					new MultizoneSetExtendedColorZones((byte) 0, duration, Apply.APPLY, colors.getColors(mZoneCount)));
-		}
-		else {
-			for (int i = 0; i < mZoneCount; i++) {
-				setColor((byte) i, (byte) i, colors.getColor(i, getZoneCount()), duration, false, i == mZoneCount - 1);
+		writeColors(duration, MultizoneFrame.from(colors, getZoneCount()).getValues(), getZoneCount(), Collections.emptyList());
+		if (wait) {
+			try {
+				Thread.sleep(duration);
+			}
+			catch (InterruptedException e) {
+				// ignore
 			}
 		}
+	}
+
+	/**
+	 * Set the colors from a frame.
+	 *
+	 * @param duration the duration of power change in millis.
+	 * @param wait flag indicating if the method should return only after the final color is reached.
+	 * @param frame the frame holding the target colors. Zones beyond the frame size are not changed.
+	 * @throws IOException Connection issues
+	 */
+	public void setColors(final int duration, final boolean wait, final MultizoneFrame frame) throws IOException {
+		writeColors(duration, frame.getValues(), Math.min(frame.getZoneCount(), getZoneCount()), Collections.emptyList());
 		if (wait) {
 			try {
 				Thread.sleep(duration);
@@ -223,6 +361,219 @@ public class MultiZoneLight extends Light {
 		}
 	}
 
+	/**
+	 * Write colors to the device. Only the zones differing from the shadow of the last written colors are sent, except for a periodic
+	 * full refresh which repairs drift caused by other clients or lost messages.
+	 *
+	 * @param duration the duration of power change in millis.
+	 * @param colors the target colors in packed form, starting with zone 0.
+	 * @param zoneCount the number of zones to be written.
+	 * @param trailingRequests requests sent in the same burst after the last zone message.
+	 * @throws IOException Connection issues
+	 */
+	private void writeColors(final int duration, final long[] colors, final int zoneCount, // SUPPRESS_CHECKSTYLE
+			final List<? extends RequestMessage> trailingRequests) throws IOException {
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.COLOR, Type.ZONES);
+		getTransitionEstimator().invalidate();
+		synchronized (mShadowLock) {
+			final long now = System.currentTimeMillis();
+			final boolean isFullRefresh = mShadow == null || now - mLastFullRefreshTime > FULL_REFRESH_INTERVAL;
+			if (isFullRefresh) {
+				mShadow = new MultizoneFrame(getZoneCount());
+			}
+			final long[] shadow = mShadow.getValues();
+			boolean[] isChanged = new boolean[zoneCount];
+			int firstChanged = -1;
+			int lastChanged = -1;
+			for (int i = 0; i < zoneCount; i++) {
+				isChanged[i] = isFullRefresh || !isSimilar(shadow[i], colors[i], DELTA_TOLERANCE, DELTA_KELVIN_TOLERANCE);
+				if (isChanged[i]) {
+					firstChanged = firstChanged < 0 ? i : firstChanged;
+					lastChanged = i;
+				}
+			}
+			if (firstChanged < 0) {
+				sendRequests(trailingRequests);
+				return;
+			}
+
+			try {
+				if (hasExtendedApi()) {
+					writeColorsExtended(duration, colors, firstChanged, lastChanged, Apply.APPLY, trailingRequests);
+					System.arraycopy(colors, firstChanged, shadow, firstChanged, lastChanged - firstChanged + 1);
+				}
+				else {
+					writeColorsLegacy(duration, colors, zoneCount, isChanged, shadow, Apply.APPLY, trailingRequests);
+				}
+			}
+			catch (IOException e) {
+				mShadow = null;
+				throw e;
+			}
+			if (isFullRefresh) {
+				mLastFullRefreshTime = now;
+			}
+		}
+	}
+
+	/**
+	 * Write a range of zones via extended API. Ranges exceeding the capacity of one message are split into chunks with increasing start
+	 * index, which are sent pipelined without applying them, followed by the last chunk with apply flag.
+	 *
+	 * @param duration the duration of power change in millis.
+	 * @param colors the target colors in packed form, starting with zone 0.
+	 * @param firstZone the first zone to be written.
+	 * @param lastZone the last zone to be written.
+	 * @param lastApply the apply flag of the last chunk.
+	 * @param trailingRequests requests sent in the same burst after the last chunk.
+	 * @throws IOException Connection issues
+	 */
+	private void writeColorsExtended(final int duration, final long[] colors, final int firstZone, final int lastZone, // SUPPRESS_CHECKSTYLE
+			final Apply lastApply, final List<? extends RequestMessage> trailingRequests) throws IOException {
+		List<MultizoneSetExtendedColorZones> chunkMessages = new ArrayList<>();
+		int chunkStart = firstZone;
+		while (lastZone - chunkStart >= MultizoneSetExtendedColorZones.MAX_COLORS) {
+			chunkMessages.add(new MultizoneSetExtendedColorZones((short) chunkStart, duration, Apply.NO_APPLY, colors, chunkStart,
+					MultizoneSetExtendedColorZones.MAX_COLORS));
+			chunkStart += MultizoneSetExtendedColorZones.MAX_COLORS;
+		}
+		if (!chunkMessages.isEmpty()) {
+			getConnection().requestWithResponses(chunkMessages);
+		}
+		List<RequestMessage> lastRequests = new ArrayList<>();
+		lastRequests.add(
+				new MultizoneSetExtendedColorZones((short) chunkStart, duration, lastApply, colors, chunkStart, lastZone - chunkStart + 1));
+		lastRequests.addAll(trailingRequests);
+		sendRequests(lastRequests);
+	}
+
+	/**
+	 * Write colors on a device without extended API. Runs of similar adjacent zones are merged into ranged messages, and runs without
+	 * changed zone are skipped. The run messages are sent pipelined without applying them. Then the last run is sent with apply flag.
+	 *
+	 * @param duration the duration of power change in millis.
+	 * @param colors the target colors in packed form, starting with zone 0.
+	 * @param zoneCount the number of zones to be written.
+	 * @param isChanged flags indicating which zones need to be sent.
+	 * @param shadow the shadow of the device colors, which is updated with the sent colors.
+	 * @param lastApply the apply flag of the last run.
+	 * @param trailingRequests requests sent in the same burst after the last run.
+	 * @throws IOException Connection issues
+	 */
+	private void writeColorsLegacy(final int duration, final long[] colors, final int zoneCount, final boolean[] isChanged, // SUPPRESS_CHECKSTYLE
+			final long[] shadow, final Apply lastApply, final List<? extends RequestMessage> trailingRequests) throws IOException {
+		List<MultizoneSetColorZones> runMessages = new ArrayList<>();
+		int runStart = 0;
+		while (runStart < zoneCount) {
+			int runEnd = runStart;
+			boolean isRunChanged = isChanged[runStart];
+			while (runEnd + 1 < zoneCount && isSimilar(colors[runStart], colors[runEnd + 1], LEGACY_RUN_TOLERANCE, LEGACY_RUN_KELVIN_TOLERANCE)) {
+				runEnd++;
+				isRunChanged = isRunChanged || isChanged[runEnd];
+			}
+			if (isRunChanged) {
+				long runColor = colors[(runStart + runEnd) / 2];
+				runMessages.add(new MultizoneSetColorZones((byte) runStart, (byte) runEnd, new Color(runColor), duration, Apply.NO_APPLY));
+				for (int i = runStart; i <= runEnd; i++) {
+					shadow[i] = runColor;
+				}
+			}
+			runStart = runEnd + 1;
+		}
+		if (runMessages.size() == 0) {
+			sendRequests(trailingRequests);
+			return;
+		}
+		MultizoneSetColorZones lastRun = runMessages.remove(runMessages.size() - 1);
+		if (runMessages.size() > 0) {
+			getConnection().requestWithResponses(runMessages);
+		}
+		List<RequestMessage> lastRequests = new ArrayList<>();
+		lastRequests.add(lastRun.withApply(lastApply));
+		lastRequests.addAll(trailingRequests);
+		sendRequests(lastRequests);
+	}
+
+	/**
+	 * Set the colors together with a state frame in one burst. The zones are written with the color transition time of the frame, and the
+	 * power of the frame is sent after the last zone message.
+	 *
+	 * @param colors the target colors.
+	 * @param frame the state frame.
+	 * @throws IOException Connection issues
+	 */
+	private void setColors(final MultizoneColors colors, final LightStateFrame frame) throws IOException {
+		writeColors(frame.getColorTransitionTime(), MultizoneFrame.from(colors, getZoneCount()).getValues(), getZoneCount(),
+				frame.getRequests());
+		onStateSent(frame);
+	}
+
+	/**
+	 * Stage colors on the device without applying them. They become visible with the next applyStagedColors, so that the zones of several
+	 * devices can be switched at nearly the same time.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @param frame the frame holding the target colors. Zones beyond the frame size are not changed.
+	 * @throws IOException Connection issues
+	 */
+	public void stageColors(final int duration, final MultizoneFrame frame) throws IOException {
+		onColorsOverwritten();
+		final int zoneCount = Math.min(frame.getZoneCount(), getZoneCount());
+		if (zoneCount == 0) {
+			return;
+		}
+		if (hasExtendedApi()) {
+			writeColorsExtended(duration, frame.getValues(), 0, zoneCount - 1, Apply.NO_APPLY, Collections.emptyList());
+		}
+		else {
+			boolean[] isChanged = new boolean[zoneCount];
+			Arrays.fill(isChanged, true);
+			writeColorsLegacy(duration, frame.getValues(), zoneCount, isChanged, new long[zoneCount], Apply.NO_APPLY,
+					Collections.emptyList());
+		}
+	}
+
+	/**
+	 * Apply the colors staged via stageColors.
+	 *
+	 * @param duration the duration of color change in millis.
+	 * @throws IOException Connection issues
+	 */
+	public void applyStagedColors(final int duration) throws IOException {
+		onColorsOverwritten();
+		getConnection().requestWithResponse(new MultizoneSetColorZones((byte) 0, (byte) 0, Color.OFF, duration, Apply.APPLY_ONLY));
+	}
+
+	/**
+	 * Check if two packed colors are similar within a tolerance.
+	 *
+	 * @param color1 The first color.
+	 * @param color2 The second color.
+	 * @param tolerance The tolerance for hue, saturation and brightness.
+	 * @param kelvinTolerance The tolerance for color temperature.
+	 * @return true if they are similar.
+	 */
+	private static boolean isSimilar(final long color1, final long color2, final int tolerance, final int kelvinTolerance) {
+		if (ColorFrame.getBrightness(color1) == 0 && ColorFrame.getBrightness(color2) == 0) {
+			return true;
+		}
+		int hueDiff = Math.abs(ColorFrame.getHue(color1) - ColorFrame.getHue(color2));
+		return Math.min(hueDiff, 65536 - hueDiff) <= tolerance // MAGIC_NUMBER
+				&& Math.abs(ColorFrame.getSaturation(color1) - ColorFrame.getSaturation(color2)) <= tolerance
+				&& Math.abs(ColorFrame.getBrightness(color1) - ColorFrame.getBrightness(color2)) <= tolerance
+				&& Math.abs(ColorFrame.getColorTemperature(color1) - ColorFrame.getColorTemperature(color2)) <= kelvinTolerance;
+	}
+
+	@Override
+	protected void onColorsOverwritten() {
+		super.onColorsOverwritten();
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.ZONES);
+		getTransitionEstimator().invalidate();
+		synchronized (mShadowLock) {
+			mShadow = null;
+		}
+	}
+
 	@Override
 	public final String getFullInformation() {
 		StringBuilder result = new StringBuilder(super.getFullInformation());
@@ -246,7 +597,7 @@ public class MultiZoneLight extends Light {
 	 *
 	 * @return The number of zones.
 	 */
-	public byte getZoneCount() {
+	public int getZoneCount() {
 		return mZoneCount;
 	}
 
@@ -258,6 +609,7 @@ public class MultiZoneLight extends Light {
 	 * @throws IOException Connection issues
 	 */
 	public final void setEffect(final MultizoneEffectInfo effectInfo, final long duration) throws IOException {
+		onColorsOverwritten();
 		getConnection().requestWithResponse(new MultizoneSetMultizoneEffect(effectInfo, duration));
 	}
 
@@ -303,6 +655,76 @@ public class MultiZoneLight extends Light {
 		});
 	}
 
+	/**
+	 * Create a thread running a firmware effect on the device until the thread is ended.
+	 *
+	 * @param colors The colors to be set before starting the effect. Null keeps the current colors.
+	 * @param effectInfo The effect info.
+	 * @return The effect thread.
+	 */
+	public final EffectThread effectAnimation(final MultizoneColors colors, final MultizoneEffectInfo effectInfo) {
+		return new EffectThread(colors, effectInfo);
+	}
+
+	/**
+	 * A thread keeping a firmware effect running on the device. The device does the animation, so no traffic is generated while running.
+	 */
+	public class EffectThread extends BaseAnimationThread { // SUPPRESS_CHECKSTYLE
+		/**
+		 * The colors to be set before starting the effect.
+		 */
+		private final MultizoneColors mColors;
+		/**
+		 * The effect info.
+		 */
+		private final MultizoneEffectInfo mEffectInfo;
+
+		/**
+		 * Create an effect thread.
+		 *
+		 * @param colors The colors to be set before starting the effect. Null keeps the current colors.
+		 * @param effectInfo The effect info.
+		 */
+		private EffectThread(final MultizoneColors colors, final MultizoneEffectInfo effectInfo) {
+			mColors = colors;
+			mEffectInfo = effectInfo;
+		}
+
+		@Override
+		public final EffectThread setAnimationCallback(final AnimationCallback callback) {
+			super.setAnimationCallback(callback);
+			return this;
+		}
+
+		@Override
+		public final void run() {
+			try {
+				if (mColors != null) {
+					setColors(0, false, mColors);
+				}
+				setEffect(mEffectInfo);
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(60000); // MAGIC_NUMBER
+					}
+				}
+				catch (InterruptedException e) {
+					// end of effect
+				}
+				setEffect(MultizoneEffectInfo.OFF);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onAnimationEnd(true);
+				}
+			}
+			catch (IOException e) {
+				Logger.error(e);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onException(e);
+				}
+			}
+		}
+	}
+
 	/**
 	 * A thread animating the colors.
 	 */
@@ -353,21 +775,39 @@ public class MultiZoneLight extends Light {
 						final long startTime = System.currentTimeMillis();
 						int errorCount = 0;
 						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
+						int frameSpan = getFrameSpan(count, mDefinition::getDuration);
+						MultizoneColors frameColors = mDefinition.getColors(count + frameSpan - 1);
+						while (frameColors == null) {
+							// the animation ends within the span.
+							frameSpan--;
+							frameColors = mDefinition.getColors(count + frameSpan - 1);
+						}
+						final int duration = getSpanDuration(count, frameSpan, mDefinition::getDuration);
+						// the first frame establishes the animation and must not be dropped.
+						RequestPriority.setCurrent(count == 0 ? RequestPriority.SCENE : RequestPriority.ANIMATION);
 						while (!success) {
+							final long sendTime = System.currentTimeMillis();
 							try { // SUPPRESS_CHECKSTYLE
-								MultizoneColors colors = mDefinition.getColors(count).withRelativeBrightness(getRelativeBrightness());
-								Power power;
-								if (count == 0 && (power = getPower()) != null && power.isOff()) { // SUPPRESS_CHECKSTYLE
-									setColors(0, false, colors);
-									setPower(true, duration, false);
+								MultizoneColors colors = frameColors.withRelativeBrightness(getRelativeBrightness());
+								if (count == 0) {
+									setColors(colors, getStartFrame(duration));
 								}
 								else {
 									setColors(duration, false, colors);
 								}
+								onFrameAcknowledged(sendTime);
 								success = true;
 							}
+							catch (MessageDroppedException e) {
+								// the device budget is needed for requests of higher priority - skip the frame.
+								onFrameDropped(count);
+								break;
+							}
 							catch (IOException e) {
+								if (onFrameTimeout(count)) {
+									// drop the frame. The next frame is sent with lower frame rate.
+									break;
+								}
 								errorCount++;
 								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
 									throw e;
@@ -376,19 +816,20 @@ public class MultiZoneLight extends Light {
 							}
 						}
 						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
+						count += frameSpan;
 					}
 				}
 				catch (InterruptedException e) {
 					isInterrupted = true;
 				}
 
+				RequestPriority.setCurrent(RequestPriority.SCENE);
 				if (mEndColors == null) {
 					// stop the previous color transition by sending setWaveform command with no change.
 					setWaveform(false, null, null, null, null, 0, 0, 0, Waveform.PULSE, false);
 				}
 				else if (mEndColors == MultizoneColors.OFF) {
-					setPower(false, mEndTransitionTime, true);
+					setEndState(new LightStateFrame().setPower(false).setTransitionTime(mEndTransitionTime));
 				}
 				else {
 					setColors(mEndTransitionTime, true, mEndColors);
@@ -0,0 +1,120 @@
+package de.jeisfeld.lifx.lan;
+
+/**
+ * The priority classes of requests to devices. The priority is kept per thread, so that animation threads, pollers and scene executors
+ * mark their traffic once, while plain calls (e.g. from user actions) are interactive. Lower classes are delayed or dropped if the message
+ * budget of the device is needed for higher classes.
+ */
+public enum RequestPriority {
+	/**
+	 * User actions. They are never delayed or dropped, and they preempt animation and background traffic for a short time.
+	 */
+	INTERACTIVE(0, 0, false, false),
+	/**
+	 * Scene changes. They are delayed if the device budget is exhausted, but never dropped.
+	 */
+	SCENE(0, 1000, false, false), // MAGIC_NUMBER
+	/**
+	 * Animation frames. They keep a reserve of the device budget for interactive requests and are dropped if they cannot be sent within
+	 * a short time.
+	 */
+	ANIMATION(4, 50, true, true), // MAGIC_NUMBER
+	/**
+	 * Background polling. It only uses spare budget and is dropped otherwise.
+	 */
+	BACKGROUND(10, 0, true, true); // MAGIC_NUMBER
+
+	/**
+	 * The priority of the current thread.
+	 */
+	private static final ThreadLocal<RequestPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+	/**
+	 * The number of budget tokens which have to remain after sending.
+	 */
+	private final int mReservedTokens;
+	/**
+	 * The maximum time in millis for which requests are delayed.
+	 */
+	private final long mMaxDelay;
+	/**
+	 * Flag indicating if requests are dropped if they cannot be sent within the maximum delay.
+	 */
+	private final boolean mIsDroppable;
+	/**
+	 * Flag indicating if requests pause after interactive requests.
+	 */
+	private final boolean mIsPreemptible;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param reservedTokens The number of budget tokens which have to remain after sending.
+	 * @param maxDelay The maximum time in millis for which requests are delayed.
+	 * @param isDroppable Flag indicating if requests are dropped if they cannot be sent within the maximum delay.
+	 * @param isPreemptible Flag indicating if requests pause after interactive requests.
+	 */
+	RequestPriority(final int reservedTokens, final long maxDelay, final boolean isDroppable, final boolean isPreemptible) {
+		mReservedTokens = reservedTokens;
+		mMaxDelay = maxDelay;
+		mIsDroppable = isDroppable;
+		mIsPreemptible = isPreemptible;
+	}
+
+	/**
+	 * Get the priority of the current thread.
+	 *
+	 * @return The priority.
+	 */
+	public static RequestPriority getCurrent() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Set the priority of the current thread.
+	 *
+	 * @param priority The priority.
+	 * @return The previous priority of the current thread.
+	 */
+	public static RequestPriority setCurrent(final RequestPriority priority) {
+		RequestPriority previous = CURRENT.get();
+		CURRENT.set(priority);
+		return previous;
+	}
+
+	/**
+	 * Get the number of budget tokens which have to remain after sending.
+	 *
+	 * @return The number of reserved tokens.
+	 */
+	public final int getReservedTokens() {
+		return mReservedTokens;
+	}
+
+	/**
+	 * Get the maximum time for which requests are delayed.
+	 *
+	 * @return The maximum delay in millis.
+	 */
+	public final long getMaxDelay() {
+		return mMaxDelay;
+	}
+
+	/**
+	 * Check if requests are dropped if they cannot be sent within the maximum delay.
+	 *
+	 * @return true if droppable.
+	 */
+	public final boolean isDroppable() {
+		return mIsDroppable;
+	}
+
+	/**
+	 * Check if requests pause after interactive requests.
+	 *
+	 * @return true if preemptible.
+	 */
+	public final boolean isPreemptible() {
+		return mIsPreemptible;
+	}
+}
@@ -0,0 +1,115 @@
+package de.jeisfeld.lifx.lan;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimator of the round trip time of a device, giving an adaptive retransmission timeout. The smoothed round trip time and its variation
+ * are updated from acknowledged requests as in TCP (RFC 6298), so that lost packets are retransmitted after a few round trips instead of
+ * after a fixed timeout.
+ */
+public final class RoundTripEstimator {
+	/**
+	 * The estimators by MAC.
+	 */
+	private static final Map<String, RoundTripEstimator> ESTIMATORS = new ConcurrentHashMap<>();
+	/**
+	 * The retransmission timeout in millis before the first measurement.
+	 */
+	private static final long INITIAL_TIMEOUT = 1000;
+	/**
+	 * The minimum retransmission timeout in millis.
+	 */
+	private static final long MIN_TIMEOUT = 100;
+	/**
+	 * The maximum retransmission timeout in millis.
+	 */
+	private static final long MAX_TIMEOUT = 1000;
+	/**
+	 * The weight of a new measurement for the smoothed round trip time.
+	 */
+	private static final double ALPHA = 0.125;
+	/**
+	 * The weight of a new measurement for the round trip time variation.
+	 */
+	private static final double BETA = 0.25;
+	/**
+	 * The factor of the round trip time variation in the retransmission timeout.
+	 */
+	private static final int VARIATION_FACTOR = 4;
+
+	/**
+	 * The smoothed round trip time in millis. Negative if not yet measured.
+	 */
+	private double mSmoothedRoundTripTime = -1;
+	/**
+	 * The round trip time variation in millis.
+	 */
+	private double mRoundTripTimeVariation = 0;
+	/**
+	 * The number of measurements.
+	 */
+	private int mSampleCount = 0;
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private RoundTripEstimator() {
+	}
+
+	/**
+	 * Get the estimator of a device.
+	 *
+	 * @param targetAddress The MAC of the device.
+	 * @return The estimator.
+	 */
+	public static RoundTripEstimator getInstance(final String targetAddress) {
+		return ESTIMATORS.computeIfAbsent(targetAddress, mac -> new RoundTripEstimator());
+	}
+
+	/**
+	 * Add a measured round trip time. Only requests which have not been retransmitted should be measured, as the response of a
+	 * retransmitted request cannot be assigned to one of the sends.
+	 *
+	 * @param roundTripTime The round trip time in millis.
+	 */
+	public synchronized void addSample(final long roundTripTime) {
+		if (mSmoothedRoundTripTime < 0) {
+			mSmoothedRoundTripTime = roundTripTime;
+			mRoundTripTimeVariation = roundTripTime / 2.0;
+		}
+		else {
+			mRoundTripTimeVariation = (1 - BETA) * mRoundTripTimeVariation + BETA * Math.abs(mSmoothedRoundTripTime - roundTripTime);
+			mSmoothedRoundTripTime = (1 - ALPHA) * mSmoothedRoundTripTime + ALPHA * roundTripTime;
+		}
+		mSampleCount++;
+	}
+
+	/**
+	 * Get the retransmission timeout.
+	 *
+	 * @return The retransmission timeout in millis.
+	 */
+	public synchronized long getRetransmitTimeout() {
+		if (mSmoothedRoundTripTime < 0) {
+			return INITIAL_TIMEOUT;
+		}
+		long timeout = (long) Math.ceil(mSmoothedRoundTripTime + VARIATION_FACTOR * mRoundTripTimeVariation);
+		return Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, timeout));
+	}
+
+	/**
+	 * Get the smoothed round trip time.
+	 *
+	 * @return The smoothed round trip time in millis. Negative if not yet measured.
+	 */
+	public synchronized double getSmoothedRoundTripTime() {
+		return mSmoothedRoundTripTime;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RoundTripEstimator[srtt=" + mSmoothedRoundTripTime + ", rttvar=" + mRoundTripTimeVariation + ", samples=" + mSampleCount
+				+ ", rto=" + getRetransmitTimeout() + "]";
+	}
+}
@@ -0,0 +1,562 @@
+package de.jeisfeld.lifx.lan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.jeisfeld.lifx.lan.message.LightGet;
+import de.jeisfeld.lifx.lan.message.LightGetInfrared;
+import de.jeisfeld.lifx.lan.message.LightState;
+import de.jeisfeld.lifx.lan.message.LightStateInfrared;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.MultizoneColors;
+import de.jeisfeld.lifx.lan.type.MultizoneFrame;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileChainFrame;
+
+/**
+ * A scene, mapping lights to target states. The scene is applied to all lights in parallel in phases:
+ * <ul>
+ * <li>a snapshot of the current states is captured, so that the scene can be rolled back,</li>
+ * <li>zone colors are staged on multizone lights without applying them,</li>
+ * <li>all lights are switched in one parallel burst, applying the staged zone colors.</li>
+ * </ul>
+ * If the preparation does not finish within the deadline, the scene is not applied. If the burst fails on some lights, the others are
+ * rolled back to the snapshot.
+ */
+public class Scene {
+	/**
+	 * The version of the binary format.
+	 */
+	private static final byte BINARY_VERSION = 1;
+	/**
+	 * Flag in the binary format indicating that the power is set.
+	 */
+	private static final int FLAG_POWER = 1;
+	/**
+	 * Flag in the binary format indicating that the power is on.
+	 */
+	private static final int FLAG_POWER_ON = 2;
+	/**
+	 * Flag in the binary format indicating that the color is set.
+	 */
+	private static final int FLAG_COLOR = 4;
+	/**
+	 * Flag in the binary format indicating that the infrared brightness is set.
+	 */
+	private static final int FLAG_INFRARED = 8;
+	/**
+	 * Flag in the binary format indicating that zone colors are set.
+	 */
+	private static final int FLAG_ZONES = 16;
+	/**
+	 * Flag in the binary format indicating that tile colors are set.
+	 */
+	private static final int FLAG_TILES = 32;
+	/**
+	 * The number of bytes of a MAC.
+	 */
+	private static final int MAC_LENGTH = 6;
+	/**
+	 * The radix of the hex representation of MACs.
+	 */
+	private static final int HEX_RADIX = 16;
+	/**
+	 * The maximum number of lights or colors per light accepted in the binary format.
+	 */
+	private static final int MAX_COUNT = 65536;
+
+	/**
+	 * The target states by light.
+	 */
+	private final Map<Light, Target> mTargets = new LinkedHashMap<>();
+	/**
+	 * The snapshot captured before the last apply. Null if not yet applied.
+	 */
+	private Scene mSnapshot = null;
+
+	/**
+	 * Add a light with its target state.
+	 *
+	 * @param light The light.
+	 * @param frame The target power, color and infrared brightness with the transition time.
+	 * @return The updated scene.
+	 */
+	public Scene put(final Light light, final LightStateFrame frame) {
+		mTargets.put(light, new Target(frame, null, null));
+		return this;
+	}
+
+	/**
+	 * Add a multizone light with its target state.
+	 *
+	 * @param light The multizone light.
+	 * @param frame The target power and infrared brightness with the transition time. The color should be null.
+	 * @param zones The target zone colors.
+	 * @return The updated scene.
+	 */
+	public Scene put(final MultiZoneLight light, final LightStateFrame frame, final MultizoneFrame zones) {
+		mTargets.put(light, new Target(frame, zones, null));
+		return this;
+	}
+
+	/**
+	 * Add a tile chain with its target state.
+	 *
+	 * @param tileChain The tile chain.
+	 * @param frame The target power with the transition time. The color should be null.
+	 * @param tiles The target tile colors.
+	 * @return The updated scene.
+	 */
+	public Scene put(final TileChain tileChain, final LightStateFrame frame, final TileChainFrame tiles) {
+		mTargets.put(tileChain, new Target(frame, null, tiles));
+		return this;
+	}
+
+	/**
+	 * Get the lights of the scene.
+	 *
+	 * @return The lights.
+	 */
+	public final List<Light> getLights() {
+		return Collections.unmodifiableList(new ArrayList<>(mTargets.keySet()));
+	}
+
+	/**
+	 * Get the snapshot captured before the last apply.
+	 *
+	 * @return The snapshot. Null if not yet applied.
+	 */
+	public final Scene getSnapshot() {
+		return mSnapshot;
+	}
+
+	/**
+	 * Capture the current states of the lights of this scene in parallel.
+	 *
+	 * @return A scene restoring the current states.
+	 * @throws IOException if the state of some light could not be retrieved.
+	 */
+	public Scene capture() throws IOException {
+		return snapshot(mTargets.keySet());
+	}
+
+	/**
+	 * Capture the current states of lights in parallel. Power and color are retrieved in one request per light, zones and tiles via bulk
+	 * gather requests.
+	 *
+	 * @param lights The lights.
+	 * @return A scene restoring the current states.
+	 * @throws IOException if the state of some light could not be retrieved.
+	 */
+	public static Scene snapshot(final Collection<? extends Light> lights) throws IOException {
+		final Map<Light, Target> capturedTargets = new ConcurrentHashMap<>();
+		execute(lights, light -> capturedTargets.put(light, captureTarget(light))).throwOnFailure();
+		Scene snapshot = new Scene();
+		for (Light light : lights) {
+			snapshot.mTargets.put(light, capturedTargets.get(light));
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Capture the current state of a light.
+	 *
+	 * @param light The light.
+	 * @return The current state as target.
+	 * @throws IOException if the state could not be retrieved.
+	 */
+	private static Target captureTarget(final Light light) throws IOException {
+		LightState lightState = (LightState) light.getConnection().requestWithResponse(new LightGet());
+		LightStateFrame frame = new LightStateFrame().setPower(!new Power(lightState.getPower()).isOff());
+		if (light.getProduct().hasInfrared()) {
+			LightStateInfrared stateInfrared = (LightStateInfrared) light.getConnection().requestWithResponse(new LightGetInfrared());
+			frame.setInfraredBrightness(stateInfrared.getBrightness());
+		}
+
+		if (light instanceof MultiZoneLight) {
+			MultiZoneLight multiZoneLight = (MultiZoneLight) light;
+			List<Color> colors = multiZoneLight.getColors();
+			if (colors == null) {
+				throw new IOException("Could not retrieve zone colors of " + light);
+			}
+			return new Target(frame, MultizoneFrame.from(new MultizoneColors.Exact(colors), multiZoneLight.getZoneCount()), null);
+		}
+		else if (light instanceof TileChain) {
+			TileChain tileChain = (TileChain) light;
+			TileChainColors colors = tileChain.getColors();
+			if (colors == null) {
+				throw new IOException("Could not retrieve tile colors of " + light);
+			}
+			return new Target(frame, null, TileChainFrame.from(colors, tileChain.getTotalWidth(), tileChain.getTotalHeight()));
+		}
+		else {
+			return new Target(frame.setColor(lightState.getColor()), null, null);
+		}
+	}
+
+	/**
+	 * Apply the scene to all lights in parallel.
+	 *
+	 * @param deadline The time in millis available for snapshot and staging. If exceeded, the scene is not applied.
+	 * @return The result of the switching burst. If it failed on some lights, the others have been rolled back.
+	 * @throws IOException if snapshot or staging failed or exceeded the deadline, so that the scene was not applied.
+	 */
+	public FanOutResult apply(final long deadline) throws IOException {
+		final long deadlineTime = System.currentTimeMillis() + deadline;
+		mSnapshot = capture();
+		if (System.currentTimeMillis() > deadlineTime) {
+			throw new IOException("Scene snapshot exceeded deadline of " + deadline + " ms");
+		}
+
+		FanOutResult stageResult = stage(mTargets.keySet());
+		if (!stageResult.isSuccess()) {
+			// staged zone colors are replaced by the snapshot, so that a later apply of other clients does not show them.
+			mSnapshot.stage(getSuccessfulLights(stageResult));
+			stageResult.throwOnFailure();
+		}
+		if (System.currentTimeMillis() > deadlineTime) {
+			mSnapshot.stage(mTargets.keySet());
+			throw new IOException("Scene staging exceeded deadline of " + deadline + " ms");
+		}
+
+		FanOutResult result = execute(mTargets.keySet(), light -> mTargets.get(light).apply(light));
+		if (!result.isSuccess()) {
+			mSnapshot.applyDirectly(getSuccessfulLights(result));
+		}
+		return result;
+	}
+
+	/**
+	 * Roll back the lights to the snapshot captured before the last apply.
+	 *
+	 * @return The result.
+	 */
+	public FanOutResult rollback() {
+		if (mSnapshot == null) {
+			return new FanOutResult(new ArrayList<>(), 0);
+		}
+		return mSnapshot.send();
+	}
+
+	/**
+	 * Send the scene to all lights in parallel, without snapshot and deadline. Zone and tile colors are sent first, followed by power,
+	 * color and infrared brightness in one pipelined burst.
+	 *
+	 * @return The result.
+	 */
+	public FanOutResult send() {
+		return applyDirectly(mTargets.keySet());
+	}
+
+	/**
+	 * Get a copy of this scene with another transition time for all lights.
+	 *
+	 * @param transitionTime The transition time in millis.
+	 * @return The copy of the scene.
+	 */
+	public Scene withTransitionTime(final int transitionTime) {
+		Scene scene = new Scene();
+		for (Map.Entry<Light, Target> entry : mTargets.entrySet()) {
+			Target target = entry.getValue();
+			LightStateFrame frame = new LightStateFrame().setPower(target.mFrame.getPower()).setColor(target.mFrame.getColor())
+					.setInfraredBrightness(target.mFrame.getInfraredBrightness()).setTransitionTime(transitionTime);
+			scene.mTargets.put(entry.getKey(), new Target(frame, target.mZones, target.mTiles));
+		}
+		return scene;
+	}
+
+	/**
+	 * Serialize the scene to a compact binary form. Lights are stored by MAC.
+	 *
+	 * @return The binary form.
+	 */
+	public byte[] toBytes() {
+		ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(byteStream)) {
+			out.writeByte(BINARY_VERSION);
+			out.writeInt(mTargets.size());
+			for (Map.Entry<Light, Target> entry : mTargets.entrySet()) {
+				String[] macParts = entry.getKey().getTargetAddress().split(":");
+				for (int i = 0; i < MAC_LENGTH; i++) {
+					out.writeByte(Integer.parseInt(macParts[i], HEX_RADIX));
+				}
+				LightStateFrame frame = entry.getValue().mFrame;
+				MultizoneFrame zones = entry.getValue().mZones;
+				TileChainFrame tiles = entry.getValue().mTiles;
+				int flags = (frame.getPower() == null ? 0 : FLAG_POWER) | (Boolean.TRUE.equals(frame.getPower()) ? FLAG_POWER_ON : 0)
+						| (frame.getColor() == null ? 0 : FLAG_COLOR) | (frame.getInfraredBrightness() == null ? 0 : FLAG_INFRARED)
+						| (zones == null ? 0 : FLAG_ZONES) | (tiles == null ? 0 : FLAG_TILES);
+				out.writeByte(flags);
+				out.writeInt(frame.getTransitionTime());
+				if (frame.getColor() != null) {
+					out.writeLong(frame.getColor().asLong());
+				}
+				if (frame.getInfraredBrightness() != null) {
+					out.writeShort(frame.getInfraredBrightness());
+				}
+				if (zones != null) {
+					out.writeInt(zones.getZoneCount());
+					writeValues(out, zones.getValues());
+				}
+				if (tiles != null) {
+					out.writeInt(tiles.getWidth());
+					out.writeInt(tiles.getHeight());
+					writeValues(out, tiles.getValues());
+				}
+			}
+		}
+		catch (IOException e) {
+			// cannot happen on byte array.
+			throw new IllegalStateException(e);
+		}
+		return byteStream.toByteArray();
+	}
+
+	/**
+	 * Write packed color values.
+	 *
+	 * @param out The output stream.
+	 * @param values The packed color values.
+	 * @throws IOException Exception while writing.
+	 */
+	private static void writeValues(final DataOutputStream out, final long[] values) throws IOException {
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+	/**
+	 * Read packed color values.
+	 *
+	 * @param in The input stream.
+	 * @param count The number of values.
+	 * @return The packed color values.
+	 * @throws IOException Exception while reading.
+	 */
+	private static long[] readValues(final DataInputStream in, final int count) throws IOException {
+		checkCount(count);
+		long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	/**
+	 * Check a count read from the binary form, so that invalid data does not cause huge allocations.
+	 *
+	 * @param count The count.
+	 * @throws IOException if the count is out of range.
+	 */
+	private static void checkCount(final long count) throws IOException {
+		if (count < 0 || count > MAX_COUNT) {
+			throw new IOException("Invalid count " + count + " in scene");
+		}
+	}
+
+	/**
+	 * Deserialize a scene from its binary form. Lights are resolved by MAC in one common discovery. Lights which cannot be found are
+	 * skipped.
+	 *
+	 * @param bytes The binary form.
+	 * @return The scene.
+	 * @throws IOException if the binary form is invalid.
+	 */
+	public static Scene fromBytes(final byte[] bytes) throws IOException {
+		Map<String, Target> targets = new LinkedHashMap<>();
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			byte version = in.readByte();
+			if (version != BINARY_VERSION) {
+				throw new IOException("Unsupported scene format version " + version);
+			}
+			int count = in.readInt();
+			checkCount(count);
+			for (int n = 0; n < count; n++) {
+				StringBuilder mac = new StringBuilder();
+				for (int i = 0; i < MAC_LENGTH; i++) {
+					mac.append(i == 0 ? "" : ":").append(String.format("%02X", in.readUnsignedByte()));
+				}
+				int flags = in.readUnsignedByte();
+				LightStateFrame frame = new LightStateFrame().setTransitionTime(in.readInt());
+				if ((flags & FLAG_POWER) != 0) {
+					frame.setPower((flags & FLAG_POWER_ON) != 0);
+				}
+				if ((flags & FLAG_COLOR) != 0) {
+					frame.setColor(new Color(in.readLong()));
+				}
+				if ((flags & FLAG_INFRARED) != 0) {
+					frame.setInfraredBrightness(in.readShort());
+				}
+				MultizoneFrame zones = null;
+				if ((flags & FLAG_ZONES) != 0) {
+					zones = new MultizoneFrame(readValues(in, in.readInt()));
+				}
+				TileChainFrame tiles = null;
+				if ((flags & FLAG_TILES) != 0) {
+					int width = in.readInt();
+					int height = in.readInt();
+					checkCount(width);
+					checkCount((long) width * height);
+					tiles = new TileChainFrame(width, height, readValues(in, width * height));
+				}
+				targets.put(mac.toString(), new Target(frame, zones, tiles));
+			}
+		}
+
+		Scene scene = new Scene();
+		Map<String, Light> lights = LifxLan.getInstance().getLightsByMac(targets.keySet());
+		for (Map.Entry<String, Target> entry : targets.entrySet()) {
+			Light light = lights.get(entry.getKey());
+			if (light != null) {
+				scene.mTargets.put(light, entry.getValue());
+			}
+		}
+		return scene;
+	}
+
+	/**
+	 * Execute a command on several lights in parallel with scene priority, so that scene requests are delayed rather than dropped if the
+	 * device budget is exhausted.
+	 *
+	 * @param lights The lights.
+	 * @param command The command.
+	 * @param <T> The light type.
+	 * @return The result.
+	 */
+	private static <T extends Light> FanOutResult execute(final Collection<T> lights, final FanOut.DeviceCommand<? super T> command) {
+		RequestPriority previousPriority = RequestPriority.setCurrent(RequestPriority.SCENE);
+		try {
+			return FanOut.execute(lights, command);
+		}
+		finally {
+			RequestPriority.setCurrent(previousPriority);
+		}
+	}
+
+	/**
+	 * Stage the zone colors on some of the lights of the scene in parallel.
+	 *
+	 * @param lights The lights.
+	 * @return The result.
+	 */
+	private FanOutResult stage(final Collection<Light> lights) {
+		return execute(lights, light -> {
+			Target target = mTargets.get(light);
+			if (target != null) {
+				target.stage(light);
+			}
+		});
+	}
+
+	/**
+	 * Get the lights on which a command succeeded.
+	 *
+	 * @param result The result of the command.
+	 * @return The lights on which it succeeded.
+	 */
+	private static List<Light> getSuccessfulLights(final FanOutResult result) {
+		List<Light> lights = new ArrayList<>();
+		for (FanOutResult.DeviceResult deviceResult : result.getDeviceResults()) {
+			if (deviceResult.isSuccess()) {
+				lights.add((Light) deviceResult.getDevice());
+			}
+		}
+		return lights;
+	}
+
+	/**
+	 * Apply the scene to some of its lights without snapshot.
+	 *
+	 * @param lights The lights.
+	 * @return The result.
+	 */
+	private FanOutResult applyDirectly(final Collection<Light> lights) {
+		return execute(lights, light -> {
+			Target target = mTargets.get(light);
+			if (target != null) {
+				target.stage(light);
+				target.apply(light);
+			}
+		});
+	}
+
+	@Override
+	public final String toString() {
+		return "Scene" + mTargets;
+	}
+
+	/**
+	 * The target state of a light.
+	 */
+	private static final class Target {
+		/**
+		 * The target power, color and infrared brightness with the transition time.
+		 */
+		private final LightStateFrame mFrame;
+		/**
+		 * The target zone colors. Null if not a multizone light.
+		 */
+		private final MultizoneFrame mZones;
+		/**
+		 * The target tile colors. Null if not a tile chain.
+		 */
+		private final TileChainFrame mTiles;
+
+		/**
+		 * Create a target state.
+		 *
+		 * @param frame The target power, color and infrared brightness with the transition time.
+		 * @param zones The target zone colors.
+		 * @param tiles The target tile colors.
+		 */
+		private Target(final LightStateFrame frame, final MultizoneFrame zones, final TileChainFrame tiles) {
+			mFrame = frame == null ? new LightStateFrame() : frame;
+			mZones = zones;
+			mTiles = tiles;
+		}
+
+		/**
+		 * Stage the target on the light, as far as supported by the protocol.
+		 *
+		 * @param light The light.
+		 * @throws IOException Connection issues
+		 */
+		private void stage(final Light light) throws IOException {
+			if (mZones != null && light instanceof MultiZoneLight) {
+				((MultiZoneLight) light).stageColors(mFrame.getTransitionTime(), mZones);
+			}
+		}
+
+		/**
+		 * Apply the staged target on the light, and send the parts which cannot be staged.
+		 *
+		 * @param light The light.
+		 * @throws IOException Connection issues
+		 */
+		private void apply(final Light light) throws IOException {
+			if (mZones != null && light instanceof MultiZoneLight) {
+				((MultiZoneLight) light).applyStagedColors(mFrame.getTransitionTime());
+			}
+			if (mTiles != null && light instanceof TileChain) {
+				((TileChain) light).setColors(mFrame.getTransitionTime(), mTiles);
+			}
+			light.setState(mFrame);
+		}
+
+		@Override
+		public String toString() {
+			return mFrame + (mZones == null ? "" : " " + mZones) + (mTiles == null ? "" : " " + mTiles);
+		}
+	}
+}
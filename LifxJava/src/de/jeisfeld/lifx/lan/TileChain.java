@@ -4,8 +4,14 @@ import static de.jeisfeld.lifx.lan.util.TypeUtil.INDENT;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import de.jeisfeld.lifx.lan.DeviceStateChange.Type;
+import de.jeisfeld.lifx.lan.message.RequestMessage;
+import de.jeisfeld.lifx.lan.message.ResponseMessage;
 import de.jeisfeld.lifx.lan.message.TileGetDeviceChain;
 import de.jeisfeld.lifx.lan.message.TileGetTileEffect;
 import de.jeisfeld.lifx.lan.message.TileGetTileState64;
@@ -16,9 +22,10 @@ import de.jeisfeld.lifx.lan.message.TileStateDeviceChain;
 import de.jeisfeld.lifx.lan.message.TileStateTileEffect;
 import de.jeisfeld.lifx.lan.message.TileStateTileState64;
 import de.jeisfeld.lifx.lan.type.Color;
-import de.jeisfeld.lifx.lan.type.Power;
 import de.jeisfeld.lifx.lan.type.Product;
+import de.jeisfeld.lifx.lan.type.TileCanvas;
 import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.type.TileChainFrame;
 import de.jeisfeld.lifx.lan.type.TileColors;
 import de.jeisfeld.lifx.lan.type.TileEffectInfo;
 import de.jeisfeld.lifx.lan.type.TileInfo;
@@ -31,6 +38,15 @@ import de.jeisfeld.lifx.os.Logger;
  * Class managing a LIFX Tile Chain.
  */
 public class TileChain extends Light {
+	/**
+	 * The interval in millis after which all tiles are sent again, even if unchanged.
+	 */
+	private static final int FULL_REFRESH_INTERVAL = 10000;
+	/**
+	 * The number of attempts to gather the colors of all tiles.
+	 */
+	private static final int GATHER_ATTEMPTS = 3;
+
 	/**
 	 * The number of tiles.
 	 */
@@ -51,6 +67,22 @@ public class TileChain extends Light {
 	 * The tile information.
 	 */
 	private List<TileInfo> mTileInfo = null;
+	/**
+	 * The canvas mapping the total area to the tiles.
+	 */
+	private TileCanvas mCanvas = null;
+	/**
+	 * The shadow of the packed colors last written to each tile, in the order of TileSetTileState64. Null if unknown.
+	 */
+	private long[][] mShadow = null;
+	/**
+	 * The time of the last write of all tiles.
+	 */
+	private long mLastFullRefreshTime = 0;
+	/**
+	 * Lock for access to the shadow.
+	 */
+	private final Object mShadowLock = new Object();
 
 	/**
 	 * Constructor.
@@ -101,6 +133,11 @@ public class TileChain extends Light {
 			}
 			mTotalWidth = totalWidth;
 			mTotalHeight = totalHeight;
+			if (mCanvas == null || !mCanvas.matchesLayout(mTileInfo)) {
+				mCanvas = new TileCanvas(mTileInfo);
+				// the shadow and the cached colors refer to the old layout.
+				onColorsOverwritten();
+			}
 		}
 	}
 
@@ -143,6 +180,15 @@ public class TileChain extends Light {
 		return mTileInfo;
 	}
 
+	/**
+	 * Get the canvas mapping the total area of the tile chain to the tiles.
+	 *
+	 * @return The canvas.
+	 */
+	public TileCanvas getCanvas() {
+		return mCanvas;
+	}
+
 	/**
 	 * Get the tile count.
 	 *
@@ -179,6 +225,15 @@ public class TileChain extends Light {
 		return mTotalHeight;
 	}
 
+	/**
+	 * Check if the firmware of the device supports tile effects.
+	 *
+	 * @return true if it supports tile effects.
+	 */
+	public boolean hasTileEffects() {
+		return getProduct().hasTileEffects(getFirmwareBuildTime());
+	}
+
 	/**
 	 * Set the user position of one tile.
 	 *
@@ -210,24 +265,66 @@ public class TileChain extends Light {
 	}
 
 	/**
-	 * Get the colors of all tiles.
+	 * Get the colors of all tiles. All tiles are requested with a single request, and only missing tiles are requested again.
 	 *
 	 * @return The colors of all tiles.
 	 */
 	public final TileChainColors getColors() {
+		TileColors[] colors = new TileColors[mTileCount];
 		try {
-			TileColors[] colors = new TileColors[mTileCount];
-			for (byte tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
-				colors[tileIndex] = new TileColors.Exact(((TileStateTileState64) getConnection().requestWithResponse(
-						new TileGetTileState64((byte) (mStartIndex + tileIndex), (byte) 1, (byte) 0, (byte) 0, mTileInfo.get(tileIndex).getWidth())))
-								.getColors());
+			for (int attempt = 0; attempt < GATHER_ATTEMPTS; attempt++) {
+				boolean isComplete = true;
+				int rangeStart = 0;
+				while (rangeStart < colors.length) {
+					if (colors[rangeStart] != null) {
+						rangeStart++;
+						continue;
+					}
+					byte width = mTileInfo.get(rangeStart).getWidth();
+					int rangeEnd = rangeStart + 1;
+					while (rangeEnd < colors.length && colors[rangeEnd] == null && mTileInfo.get(rangeEnd).getWidth() == width) {
+						rangeEnd++;
+					}
+					isComplete = false;
+					gatherColors(rangeStart, rangeEnd - rangeStart, width, colors);
+					rangeStart = rangeEnd;
+				}
+				if (isComplete) {
+					break;
+				}
 			}
-			return new TileChainColors.PerTile(this, colors);
 		}
 		catch (IOException e) {
 			Logger.error(e);
 			return null;
 		}
+		for (TileColors tileColors : colors) {
+			if (tileColors == null) {
+				Logger.error(new IOException("Did not get colors of all tiles from " + getLabel()));
+				return null;
+			}
+		}
+		return new TileChainColors.PerTile(this, colors);
+	}
+
+	/**
+	 * Request the colors of a range of tiles with a single request, and store the colors of all received tiles.
+	 *
+	 * @param firstTile The index of the first tile of the request.
+	 * @param length The number of tiles of the request.
+	 * @param width The width of the tiles.
+	 * @param colors The target array.
+	 * @throws IOException Connection issues
+	 */
+	private void gatherColors(final int firstTile, final int length, final byte width, final TileColors[] colors) throws IOException {
+		for (ResponseMessage response : getConnection().requestWithMultipleResponses(
+				new TileGetTileState64((byte) (mStartIndex + firstTile), (byte) length, (byte) 0, (byte) 0, width), length)) {
+			TileStateTileState64 stateTile = (TileStateTileState64) response;
+			int tileIndex = TypeUtil.toUnsignedInt(stateTile.getTileIndex()) - TypeUtil.toUnsignedInt(mStartIndex);
+			if (tileIndex >= 0 && tileIndex < colors.length && colors[tileIndex] == null) {
+				colors[tileIndex] = new TileColors.Exact(stateTile.getColors());
+			}
+		}
 	}
 
 	/**
@@ -254,8 +351,22 @@ public class TileChain extends Light {
 	 * @throws IOException Connection issues
 	 */
 	private void setColors(final byte tileIndex, final int duration, final List<Color> colors) throws IOException {
-		getConnection().requestWithResponse(
-				new TileSetTileState64(tileIndex, (byte) 1, (byte) 0, (byte) 0, mTileInfo.get(tileIndex).getWidth(), duration, colors));
+		TileSetTileState64 request =
+				new TileSetTileState64(tileIndex, (byte) 1, (byte) 0, (byte) 0, mTileInfo.get(tileIndex).getWidth(), duration, colors);
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.COLOR, Type.TILES);
+		getTransitionEstimator().invalidate();
+		synchronized (mShadowLock) {
+			try {
+				getConnection().requestWithResponse(request);
+			}
+			catch (IOException e) {
+				mShadow = null;
+				throw e;
+			}
+			if (mShadow != null) {
+				mShadow[tileIndex] = toTileValues(colors);
+			}
+		}
 	}
 
 	/**
@@ -278,20 +389,155 @@ public class TileChain extends Light {
 	 * @throws IOException Connection issues
 	 */
 	public final void setColors(final int duration, final TileChainColors colors) throws IOException {
-		for (byte tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
-			TileInfo tileInfo = mTileInfo.get(tileIndex);
-			setColors(tileIndex, duration, colors.getTileColors(tileInfo.getMinX(), tileInfo.getMinY(), mTotalWidth, mTotalHeight));
+		writeTiles(duration, getTileValues(colors), Collections.emptyList());
+	}
+
+	/**
+	 * Set the colors for all tiles together with a state frame in one burst. The tiles are written with the color transition time of the
+	 * frame, and the power of the frame is sent after the last tile message.
+	 *
+	 * @param colors the colors to be set.
+	 * @param frame the state frame.
+	 * @throws IOException Connection issues
+	 */
+	private void setColors(final TileChainColors colors, final LightStateFrame frame) throws IOException {
+		writeTiles(frame.getColorTransitionTime(), getTileValues(colors), frame.getRequests());
+		onStateSent(frame);
+	}
+
+	/**
+	 * Get the packed colors per tile.
+	 *
+	 * @param colors the colors.
+	 * @return The packed colors per tile, in the order of TileSetTileState64.
+	 */
+	private long[][] getTileValues(final TileChainColors colors) {
+		long[][] tileValues = new long[mTileCount][];
+		for (int tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
+			tileValues[tileIndex] = mCanvas.getTileValues(colors, tileIndex, new long[TileChainFrame.TILE_COLOR_COUNT]);
 		}
+		return tileValues;
 	}
 
 	/**
-	 * Set the colors for a subset of tiles.
+	 * Set the colors for all tiles from a frame covering the total area of the tile chain.
+	 *
+	 * @param duration The duration of the color change.
+	 * @param frame the frame holding the colors to be set.
+	 * @throws IOException Connection issues
+	 */
+	public final void setColors(final int duration, final TileChainFrame frame) throws IOException {
+		long[][] tileValues = new long[mTileCount][];
+		for (int tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
+			tileValues[tileIndex] = mCanvas.getTileValues(frame, tileIndex, new long[TileChainFrame.TILE_COLOR_COUNT]);
+		}
+		writeTiles(duration, tileValues, Collections.emptyList());
+	}
+
+	/**
+	 * Write the colors of all tiles. Only the tiles differing from the shadow of the last written colors are sent, except for a periodic
+	 * full refresh. Consecutive tiles with identical content are covered by one message using its length field. The messages are sent
+	 * pipelined.
+	 *
+	 * @param duration The duration of the color change.
+	 * @param tileValues The packed colors per tile, in the order of TileSetTileState64.
+	 * @param trailingRequests requests sent in the same burst after the last tile message.
+	 * @throws IOException Connection issues
+	 */
+	private void writeTiles(final int duration, final long[][] tileValues, final List<? extends RequestMessage> trailingRequests)
+			throws IOException {
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.COLOR, Type.TILES);
+		getTransitionEstimator().invalidate();
+		synchronized (mShadowLock) {
+			final long now = System.currentTimeMillis();
+			final boolean isFullRefresh = mShadow == null || mShadow.length != tileValues.length
+					|| now - mLastFullRefreshTime > FULL_REFRESH_INTERVAL;
+			if (isFullRefresh) {
+				mShadow = new long[tileValues.length][];
+			}
+
+			List<RequestMessage> messages = new ArrayList<>();
+			int tileIndex = 0;
+			while (tileIndex < tileValues.length) {
+				if (!isFullRefresh && Arrays.equals(mShadow[tileIndex], tileValues[tileIndex])) {
+					tileIndex++;
+					continue;
+				}
+				byte width = mTileInfo.get(tileIndex).getWidth();
+				int groupEnd = tileIndex + 1;
+				while (groupEnd < tileValues.length && mTileInfo.get(groupEnd).getWidth() == width
+						&& Arrays.equals(tileValues[groupEnd], tileValues[tileIndex])) {
+					groupEnd++;
+				}
+				messages.add(new TileSetTileState64((byte) tileIndex, (byte) (groupEnd - tileIndex), (byte) 0, (byte) 0, width, duration,
+						tileValues[tileIndex]));
+				tileIndex = groupEnd;
+			}
+
+			messages.addAll(trailingRequests);
+			try {
+				sendRequests(messages);
+			}
+			catch (IOException e) {
+				mShadow = null;
+				throw e;
+			}
+			for (int i = 0; i < tileValues.length; i++) {
+				mShadow[i] = tileValues[i].clone();
+			}
+			if (isFullRefresh) {
+				mLastFullRefreshTime = now;
+			}
+		}
+	}
+
+	/**
+	 * Convert a list of tile colors into packed form as required by TileSetTileState64.
+	 *
+	 * @param colors The colors.
+	 * @return The packed colors, filled up with off.
+	 */
+	private static long[] toTileValues(final List<Color> colors) {
+		long[] tileValues = new long[TileChainFrame.TILE_COLOR_COUNT];
+		for (int i = 0; i < TileChainFrame.TILE_COLOR_COUNT; i++) {
+			tileValues[i] = i < colors.size() ? colors.get(i).asLong() : Color.OFF.asLong();
+		}
+		return tileValues;
+	}
+
+	@Override
+	protected void onColorsOverwritten() {
+		super.onColorsOverwritten();
+		DeviceStateMirror.getInstance().invalidate(getTargetAddress(), Type.TILES);
+		getTransitionEstimator().invalidate();
+		synchronized (mShadowLock) {
+			mShadow = null;
+		}
+	}
+
+	/**
+	 * Set the colors for a subset of tiles. If the colors last written are known, they are used for the remaining tiles. Otherwise the
+	 * colors are read from the device.
 	 *
 	 * @param duration The duration of the color change.
 	 * @param colors the colors to be set. May have null entries.
 	 * @throws IOException Connection issues
 	 */
 	public final void setColorsOptional(final int duration, final TileChainColors colors) throws IOException {
+		long[][] tileValues = null;
+		synchronized (mShadowLock) {
+			if (mShadow != null && mShadow.length == mTileCount) {
+				tileValues = new long[mTileCount][];
+				for (int tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
+					tileValues[tileIndex] = mCanvas.getTileValues(colors, tileIndex, mShadow[tileIndex].clone());
+				}
+			}
+		}
+		if (tileValues != null) {
+			writeTiles(duration, tileValues, Collections.emptyList());
+			return;
+		}
+
 		final TileChainColors oldColors = getColors();
 		setColors(duration, new TileChainColors() {
 			@Override
@@ -310,6 +556,7 @@ public class TileChain extends Light {
 	 * @throws IOException Connection issues
 	 */
 	public final void setEffect(final TileEffectInfo effectInfo, final long duration) throws IOException {
+		onColorsOverwritten();
 		getConnection().requestWithResponse(new TileSetTileEffect(effectInfo, 1000000 * duration)); // MAGIC_NUMBER
 	}
 
@@ -328,6 +575,66 @@ public class TileChain extends Light {
 		return new TileChain.AnimationThread((TileChain.AnimationDefinition) definition);
 	}
 
+	/**
+	 * Create a thread running a firmware effect on the device until the thread is ended.
+	 *
+	 * @param effectInfo The effect info.
+	 * @return The effect thread.
+	 */
+	public final EffectThread effectAnimation(final TileEffectInfo effectInfo) {
+		return new EffectThread(effectInfo);
+	}
+
+	/**
+	 * A thread keeping a firmware effect running on the device. The device does the animation, so no traffic is generated while running.
+	 */
+	public class EffectThread extends BaseAnimationThread { // SUPPRESS_CHECKSTYLE
+		/**
+		 * The effect info.
+		 */
+		private final TileEffectInfo mEffectInfo;
+
+		/**
+		 * Create an effect thread.
+		 *
+		 * @param effectInfo The effect info.
+		 */
+		private EffectThread(final TileEffectInfo effectInfo) {
+			mEffectInfo = effectInfo;
+		}
+
+		@Override
+		public final EffectThread setAnimationCallback(final AnimationCallback callback) {
+			super.setAnimationCallback(callback);
+			return this;
+		}
+
+		@Override
+		public final void run() {
+			try {
+				setEffect(mEffectInfo);
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(60000); // MAGIC_NUMBER
+					}
+				}
+				catch (InterruptedException e) {
+					// end of effect
+				}
+				setEffect(TileEffectInfo.OFF);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onAnimationEnd(true);
+				}
+			}
+			catch (IOException e) {
+				Logger.error(e);
+				if (getAnimationCallback() != null) {
+					getAnimationCallback().onException(e);
+				}
+			}
+		}
+	}
+
 	/**
 	 * A thread animating the colors.
 	 */
@@ -378,21 +685,39 @@ public class TileChain extends Light {
 						final long startTime = System.currentTimeMillis();
 						int errorCount = 0;
 						boolean success = false;
-						int duration = Math.max(mDefinition.getDuration(count), 0);
+						int frameSpan = getFrameSpan(count, mDefinition::getDuration);
+						TileChainColors frameColors = mDefinition.getColors(count + frameSpan - 1);
+						while (frameColors == null) {
+							// the animation ends within the span.
+							frameSpan--;
+							frameColors = mDefinition.getColors(count + frameSpan - 1);
+						}
+						final int duration = getSpanDuration(count, frameSpan, mDefinition::getDuration);
+						// the first frame establishes the animation and must not be dropped.
+						RequestPriority.setCurrent(count == 0 ? RequestPriority.SCENE : RequestPriority.ANIMATION);
 						while (!success) {
+							final long sendTime = System.currentTimeMillis();
 							try { // SUPPRESS_CHECKSTYLE
-								TileChainColors colors = mDefinition.getColors(count).withRelativeBrightness(getRelativeBrightness());
-								Power power;
-								if (count == 0 && (power = getPower()) != null && power.isOff()) { // SUPPRESS_CHECKSTYLE
-									setColors(0, colors);
-									setPower(true, duration, false);
+								TileChainColors colors = frameColors.withRelativeBrightness(getRelativeBrightness());
+								if (count == 0) {
+									setColors(colors, getStartFrame(duration));
 								}
 								else {
 									setColors(duration, colors);
 								}
+								onFrameAcknowledged(sendTime);
 								success = true;
 							}
+							catch (MessageDroppedException e) {
+								// the device budget is needed for requests of higher priority - skip the frame.
+								onFrameDropped(count);
+								break;
+							}
 							catch (IOException e) {
+								if (onFrameTimeout(count)) {
+									// drop the frame. The next frame is sent with lower frame rate.
+									break;
+								}
 								errorCount++;
 								if (errorCount >= WAITING_TIMES_AFTER_ERROR.length) {
 									throw e;
@@ -401,19 +726,20 @@ public class TileChain extends Light {
 							}
 						}
 						Thread.sleep(Math.max(0, duration + startTime - System.currentTimeMillis()));
-						count++;
+						count += frameSpan;
 					}
 				}
 				catch (InterruptedException e) {
 					isInterrupted = true;
 				}
 
+				RequestPriority.setCurrent(RequestPriority.SCENE);
 				if (mEndColors == null) {
 					// stop the previous color transition by sending setWaveform command with no change.
 					setWaveform(false, null, null, null, null, 0, 0, 0, Waveform.PULSE, false);
 				}
 				else if (mEndColors == TileChainColors.OFF) {
-					setPower(false, mEndTransitionTime, true);
+					setEndState(new LightStateFrame().setPower(false).setTransitionTime(mEndTransitionTime));
 				}
 				else {
 					setColors(mEndTransitionTime, mEndColors);
@@ -0,0 +1,133 @@
+package de.jeisfeld.lifx.lan;
+
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Waveform;
+
+/**
+ * Estimator of the color of a light, based on the transitions issued to it. It records the last color change (start color, target color,
+ * duration and waveform) and predicts the color of the light at a given time without querying it. Colors read from the light are used to
+ * correct the estimate.
+ */
+public class TransitionEstimator {
+	/**
+	 * The color at the start of the last transition. Null if unknown.
+	 */
+	private Color mStartColor = null;
+	/**
+	 * The target color of the last transition. Null if unknown.
+	 */
+	private Color mTargetColor = null;
+	/**
+	 * The color after the end of the last transition. Null if unknown.
+	 */
+	private Color mFinalColor = null;
+	/**
+	 * The waveform of the last transition. Null for a plain linear transition.
+	 */
+	private Waveform mWaveform = null;
+	/**
+	 * The start time of the last transition.
+	 */
+	private long mStartTime = 0;
+	/**
+	 * The end time of the last transition. Long.MAX_VALUE for endless waveforms.
+	 */
+	private long mEndTime = 0;
+
+	/**
+	 * Register a linear color transition issued to the light.
+	 *
+	 * @param color The target color.
+	 * @param duration The duration in millis.
+	 */
+	public synchronized void onTransition(final Color color, final int duration) {
+		long now = System.currentTimeMillis();
+		mStartColor = estimateColor(now);
+		mTargetColor = color;
+		mFinalColor = color;
+		mWaveform = null;
+		mStartTime = now;
+		mEndTime = now + Math.max(0, duration);
+	}
+
+	/**
+	 * Register a waveform issued to the light.
+	 *
+	 * @param isTransient the transient flag indicating if the color finally returns to prior value.
+	 * @param color The target color. Null if only some components are changed, so that the target is not known.
+	 * @param period The cycle period in millis.
+	 * @param cycles The number of cycles.
+	 * @param waveform The waveform.
+	 */
+	public synchronized void onWaveform(final boolean isTransient, final Color color, final int period, final float cycles,
+			final Waveform waveform) {
+		long now = System.currentTimeMillis();
+		mStartColor = estimateColor(now);
+		mTargetColor = color;
+		mFinalColor = isTransient ? mStartColor : color;
+		mWaveform = waveform;
+		mStartTime = now;
+		double duration = (double) Math.max(0, period) * cycles;
+		mEndTime = duration >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + (long) duration;
+	}
+
+	/**
+	 * Register a color read from the light. If no transition is running, this becomes the known steady color.
+	 *
+	 * @param color The color read from the light.
+	 */
+	public synchronized void onObserved(final Color color) {
+		long now = System.currentTimeMillis();
+		if (color != null && now >= mEndTime) {
+			mStartColor = color;
+			mTargetColor = color;
+			mFinalColor = color;
+			mWaveform = null;
+			mStartTime = now;
+			mEndTime = now;
+		}
+	}
+
+	/**
+	 * Forget the recorded transition, e.g. if the colors were changed in a way not tracked by the estimator.
+	 */
+	public synchronized void invalidate() {
+		mStartColor = null;
+		mTargetColor = null;
+		mFinalColor = null;
+		mWaveform = null;
+		mStartTime = 0;
+		mEndTime = 0;
+	}
+
+	/**
+	 * Get the end time of the last recorded transition.
+	 *
+	 * @return The end time. Long.MAX_VALUE for endless waveforms. 0 if no transition is recorded.
+	 */
+	public synchronized long getEndTime() {
+		return mEndTime;
+	}
+
+	/**
+	 * Estimate the color of the light at a certain time.
+	 *
+	 * @param time The time.
+	 * @return The estimated color, or null if it cannot be estimated.
+	 */
+	public synchronized Color estimateColor(final long time) {
+		if (time >= mEndTime) {
+			return mFinalColor;
+		}
+		if (mWaveform != null || mStartColor == null || mTargetColor == null || time < mStartTime) {
+			// waveforms are not modelled within their runtime.
+			return null;
+		}
+		return mStartColor.add(mTargetColor, (double) (time - mStartTime) / (mEndTime - mStartTime));
+	}
+
+	@Override
+	public final String toString() {
+		return "TransitionEstimator[" + mStartColor + " -> " + mTargetColor + ", waveform=" + mWaveform + ", end=" + mEndTime + "]";
+	}
+}
@@ -47,6 +47,16 @@ public class MultizoneSetColorZones extends RequestMessage {
 		mApply = apply;
 	}
 
+	/**
+	 * Get a copy of this request with other apply flag.
+	 *
+	 * @param apply the apply flag.
+	 * @return The request with this apply flag.
+	 */
+	public MultizoneSetColorZones withApply(final Apply apply) {
+		return new MultizoneSetColorZones(mStartIndex, mEndIndex, mColor, mDuration, apply);
+	}
+
 	@Override
 	protected final byte[] getPayload() {
 		ByteBuffer byteBuffer = ByteBuffer.allocate(15); // MAGIC_NUMBER
@@ -10,14 +10,26 @@ import de.jeisfeld.lifx.lan.type.Color;
  * Request message of type MultizoneSetExtendedColorZones.
  */
 public class MultizoneSetExtendedColorZones extends RequestMessage {
+	/**
+	 * The max number of colors that can be sent in one message.
+	 */
+	public static final int MAX_COLORS = 82;
 	/**
 	 * The start index.
 	 */
 	private final short mStartIndex;
 	/**
-	 * The colors.
+	 * The colors in packed form.
+	 */
+	private final long[] mColors;
+	/**
+	 * The offset of the colors to be sent within the color array.
+	 */
+	private final int mOffset;
+	/**
+	 * The number of colors to be sent.
 	 */
-	private final Color[] mColors;
+	private final int mCount;
 	/**
 	 * The duration in millis.
 	 */
@@ -36,10 +48,41 @@ public class MultizoneSetExtendedColorZones extends RequestMessage {
 	 * @param colors The target colors.
 	 */
 	public MultizoneSetExtendedColorZones(final short startIndex, final int duration, final Apply apply, final Color... colors) {
+		mStartIndex = startIndex;
+		mDuration = duration;
+		mApply = apply;
+		if (colors.length > MAX_COLORS) {
+			throw new IllegalArgumentException("Cannot send more than " + MAX_COLORS + " colors in one message");
+		}
+		mColors = new long[colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			mColors[i] = colors[i].asLong();
+		}
+		mOffset = 0;
+		mCount = colors.length;
+	}
+
+	/**
+	 * Create MultizoneSetExtendedColorZones from packed colors.
+	 *
+	 * @param startIndex The start index.
+	 * @param duration The color change duration in millis.
+	 * @param apply the apply flag.
+	 * @param colors The target colors in packed form (as in {@link Color#asLong()}).
+	 * @param offset The offset of the colors to be sent within the array.
+	 * @param count The number of colors to be sent.
+	 */
+	public MultizoneSetExtendedColorZones(final short startIndex, final int duration, final Apply apply, final long[] colors,
+			final int offset, final int count) {
+		if (count > MAX_COLORS) {
+			throw new IllegalArgumentException("Cannot send more than " + MAX_COLORS + " colors in one message");
+		}
 		mStartIndex = startIndex;
 		mDuration = duration;
 		mApply = apply;
 		mColors = colors;
+		mOffset = offset;
+		mCount = count;
 	}
 
 	@Override
@@ -49,12 +92,12 @@ public class MultizoneSetExtendedColorZones extends RequestMessage {
 		byteBuffer.putInt(mDuration);
 		byteBuffer.put((byte) mApply.ordinal());
 		byteBuffer.putShort(mStartIndex);
-		byteBuffer.put((byte) mColors.length);
-		for (Color color : mColors) {
-			byteBuffer.putShort(color.getHue());
-			byteBuffer.putShort(color.getSaturation());
-			byteBuffer.putShort(color.getBrightness());
-			byteBuffer.putShort(color.getColorTemperature());
+		byteBuffer.put((byte) mCount);
+		for (int i = mOffset; i < mOffset + mCount; i++) {
+			byteBuffer.putShort((short) (mColors[i] >>> 48)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) (mColors[i] >>> 32)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) (mColors[i] >>> 16)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) mColors[i]);
 		}
 		return byteBuffer.array();
 	}
@@ -40,9 +40,9 @@ public class TileSetTileState64 extends RequestMessage {
 	 */
 	private final int mDuration;
 	/**
-	 * The list of colors to be set.
+	 * The colors to be set in packed form.
 	 */
-	private final List<Color> mColors;
+	private final long[] mColors;
 
 	/**
 	 * Create TileSetTileState64 request.
@@ -53,7 +53,7 @@ public class TileSetTileState64 extends RequestMessage {
 	 * @param y the start y position. Should be 0.
 	 * @param width the tile width.
 	 * @param duration the duration of the change.
-	 * @param colors the list of colors to be set. Must be 64, othewise it will be filled up to 64.
+	 * @param colors the list of colors to be set. Must be 64, othewise it will be filled up to 64 or truncated.
 	 */
 	public TileSetTileState64(final byte tileIndex, final byte length, final byte x, final byte y, final byte width, final int duration,
 			final List<Color> colors) {
@@ -63,17 +63,35 @@ public class TileSetTileState64 extends RequestMessage {
 		mY = y;
 		mWidth = width;
 		mDuration = duration;
-		mColors = colors;
-
-		if (mColors.size() < COLOR_COUNT) {
-			int missingCount = COLOR_COUNT - mColors.size();
-			for (int i = 0; i < missingCount; i++) {
-				mColors.add(Color.OFF);
-			}
+		mColors = new long[COLOR_COUNT];
+		for (int i = 0; i < COLOR_COUNT; i++) {
+			mColors[i] = i < colors.size() ? colors.get(i).asLong() : Color.OFF.asLong();
 		}
-		while (mColors.size() > COLOR_COUNT) {
-			mColors.remove(mColors.size() - 1);
+	}
+
+	/**
+	 * Create TileSetTileState64 request from packed colors.
+	 *
+	 * @param tileIndex the tile index.
+	 * @param length the number of tiles for which response is awaited. Should be 1.
+	 * @param x the start x position. Should be 0.
+	 * @param y the start y position. Should be 0.
+	 * @param width the tile width.
+	 * @param duration the duration of the change.
+	 * @param colors the colors to be set in packed form (as in {@link Color#asLong()}). Must have length 64.
+	 */
+	public TileSetTileState64(final byte tileIndex, final byte length, final byte x, final byte y, final byte width, final int duration,
+			final long[] colors) {
+		if (colors.length != COLOR_COUNT) {
+			throw new IllegalArgumentException("Tile colors must have length " + COLOR_COUNT);
 		}
+		mTileIndex = tileIndex;
+		mLength = length;
+		mX = x;
+		mY = y;
+		mWidth = width;
+		mDuration = duration;
+		mColors = colors;
 	}
 
 	@Override
@@ -87,11 +105,11 @@ public class TileSetTileState64 extends RequestMessage {
 		byteBuffer.put(mY);
 		byteBuffer.put(mWidth);
 		byteBuffer.putInt(mDuration);
-		for (Color color : mColors) {
-			byteBuffer.putShort(color.getHue());
-			byteBuffer.putShort(color.getSaturation());
-			byteBuffer.putShort(color.getBrightness());
-			byteBuffer.putShort(color.getColorTemperature());
+		for (long color : mColors) {
+			byteBuffer.putShort((short) (color >>> 48)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) (color >>> 32)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) (color >>> 16)); // MAGIC_NUMBER
+			byteBuffer.putShort((short) color);
 		}
 		return byteBuffer.array();
 	}
@@ -78,6 +78,15 @@ public class TileStateTileState64 extends ResponseMessage {
 		return payloadFields;
 	}
 
+	/**
+	 * Get the tile index.
+	 *
+	 * @return The tile index.
+	 */
+	public byte getTileIndex() {
+		return mTileIndex;
+	}
+
 	/**
 	 * Get the colors.
 	 *
@@ -0,0 +1,32 @@
+package de.jeisfeld.lifx.lan.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of image frames of fixed size, such as the frames of a video.
+ */
+public interface FrameSource extends Closeable {
+	/**
+	 * Get the width of the frames.
+	 *
+	 * @return The width in pixels.
+	 */
+	int getWidth();
+
+	/**
+	 * Get the height of the frames.
+	 *
+	 * @return The height in pixels.
+	 */
+	int getHeight();
+
+	/**
+	 * Read the next frame.
+	 *
+	 * @param argb The target array for the frame as ARGB colors, row by row starting with the top row. Has size width * height.
+	 * @return true if a frame was read, false if the source has ended.
+	 * @throws IOException Issues while reading the frame.
+	 */
+	boolean readFrame(int[] argb) throws IOException;
+}
@@ -0,0 +1,92 @@
+package de.jeisfeld.lifx.lan.stream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A frame source reading raw frames of 8 bit RGB triples from a stream, such as a file or a pipe. This is the format created e.g. by
+ * "ffmpeg -i video.mp4 -vf scale=32:8 -f rawvideo -pix_fmt rgb24 -".
+ */
+public class RawRgbFrameSource implements FrameSource {
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 3;
+
+	/**
+	 * The input stream.
+	 */
+	private final InputStream mInputStream;
+	/**
+	 * The width of the frames.
+	 */
+	private final int mWidth;
+	/**
+	 * The height of the frames.
+	 */
+	private final int mHeight;
+	/**
+	 * The buffer holding the bytes of one frame.
+	 */
+	private final byte[] mBuffer;
+
+	/**
+	 * Create a raw RGB frame source from a stream.
+	 *
+	 * @param inputStream The input stream.
+	 * @param width The width of the frames.
+	 * @param height The height of the frames.
+	 */
+	public RawRgbFrameSource(final InputStream inputStream, final int width, final int height) {
+		mInputStream = new BufferedInputStream(inputStream);
+		mWidth = width;
+		mHeight = height;
+		mBuffer = new byte[width * height * BYTES_PER_PIXEL];
+	}
+
+	/**
+	 * Create a raw RGB frame source from a file.
+	 *
+	 * @param file The file.
+	 * @param width The width of the frames.
+	 * @param height The height of the frames.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public RawRgbFrameSource(final File file, final int width, final int height) throws IOException {
+		this(new FileInputStream(file), width, height);
+	}
+
+	@Override
+	public final int getWidth() {
+		return mWidth;
+	}
+
+	@Override
+	public final int getHeight() {
+		return mHeight;
+	}
+
+	@Override
+	public final boolean readFrame(final int[] argb) throws IOException {
+		int offset = 0;
+		while (offset < mBuffer.length) {
+			int count = mInputStream.read(mBuffer, offset, mBuffer.length - offset);
+			if (count < 0) {
+				return false;
+			}
+			offset += count;
+		}
+		for (int i = 0, j = 0; i < argb.length; i++, j += BYTES_PER_PIXEL) {
+			argb[i] = 0xFF000000 | (mBuffer[j] & 0xFF) << 16 | (mBuffer[j + 1] & 0xFF) << 8 | mBuffer[j + 2] & 0xFF; // MAGIC_NUMBER
+		}
+		return true;
+	}
+
+	@Override
+	public final void close() throws IOException {
+		mInputStream.close();
+	}
+}
@@ -0,0 +1,425 @@
+package de.jeisfeld.lifx.lan.stream;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.jeisfeld.lifx.lan.Light.AnimationCallback;
+import de.jeisfeld.lifx.lan.MessageDroppedException;
+import de.jeisfeld.lifx.lan.RequestPriority;
+import de.jeisfeld.lifx.lan.TileChain;
+import de.jeisfeld.lifx.lan.type.TileCanvas;
+import de.jeisfeld.lifx.lan.type.TileChainFrame;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * A pipeline streaming frames from a frame source to a tile chain. It consists of three stages running in own threads:
+ * <ul>
+ * <li>a reader, reading frames from the source paced to the frame rate,</li>
+ * <li>a converter, downscaling the frames to the tile chain canvas and converting them to HSBK,</li>
+ * <li>a sender, sending the latest converted frame to the tile chain.</li>
+ * </ul>
+ * The stages are connected by bounded queues. If a stage falls behind, the oldest frames are dropped, so that the tile chain always shows
+ * the most recent frame. Frame buffers are recycled, so that no allocation is done per frame.
+ */
+public class TileStreamPipeline {
+	/**
+	 * The default frame rate.
+	 */
+	private static final double DEFAULT_FRAME_RATE = 25;
+	/**
+	 * The default color temperature.
+	 */
+	private static final short DEFAULT_COLOR_TEMPERATURE = 4000;
+	/**
+	 * The capacity of the queues between the stages.
+	 */
+	private static final int QUEUE_CAPACITY = 2;
+	/**
+	 * The number of recycled buffers per stage (queue, one in work in each adjacent stage, plus one spare).
+	 */
+	private static final int BUFFER_COUNT = QUEUE_CAPACITY + 3;
+	/**
+	 * Milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000;
+
+	/**
+	 * The tile chain.
+	 */
+	private final TileChain mTileChain;
+	/**
+	 * The frame source.
+	 */
+	private final FrameSource mSource;
+	/**
+	 * The frame rate.
+	 */
+	private double mFrameRate = DEFAULT_FRAME_RATE;
+	/**
+	 * The color temperature used for the frames.
+	 */
+	private short mColorTemperature = DEFAULT_COLOR_TEMPERATURE;
+	/**
+	 * The callback.
+	 */
+	private AnimationCallback mAnimationCallback = null;
+
+	/**
+	 * The queue of frames read from the source.
+	 */
+	private final BlockingQueue<int[]> mRawQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	/**
+	 * The recycled buffers for frames read from the source.
+	 */
+	private final BlockingQueue<int[]> mRawBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	/**
+	 * The queue of converted frames.
+	 */
+	private final BlockingQueue<TileChainFrame> mFrameQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	/**
+	 * The recycled buffers for converted frames.
+	 */
+	private final BlockingQueue<TileChainFrame> mFrameBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	/**
+	 * The number of frames sent.
+	 */
+	private final AtomicInteger mSentFrameCount = new AtomicInteger();
+	/**
+	 * The number of frames dropped.
+	 */
+	private final AtomicInteger mDroppedFrameCount = new AtomicInteger();
+
+	/**
+	 * The reader thread.
+	 */
+	private Thread mReaderThread = null;
+	/**
+	 * The converter thread.
+	 */
+	private Thread mConverterThread = null;
+	/**
+	 * The sender thread.
+	 */
+	private Thread mSenderThread = null;
+	/**
+	 * Flag indicating that the source has ended.
+	 */
+	private volatile boolean mIsSourceEnded = false;
+	/**
+	 * Flag indicating that the converter has ended.
+	 */
+	private volatile boolean mIsConverterEnded = false;
+	/**
+	 * Flag indicating that the pipeline has been stopped.
+	 */
+	private volatile boolean mIsStopped = false;
+	/**
+	 * The exception which ended the source, if any.
+	 */
+	private volatile IOException mSourceException = null;
+
+	/**
+	 * Create a streaming pipeline.
+	 *
+	 * @param tileChain The tile chain.
+	 * @param source The frame source.
+	 */
+	public TileStreamPipeline(final TileChain tileChain, final FrameSource source) {
+		mTileChain = tileChain;
+		mSource = source;
+	}
+
+	/**
+	 * Set the frame rate. The source is read with this rate, and frames are sent at most with this rate.
+	 *
+	 * @param frameRate The frame rate in frames per second.
+	 * @return The updated pipeline.
+	 */
+	public TileStreamPipeline setFrameRate(final double frameRate) {
+		mFrameRate = frameRate;
+		return this;
+	}
+
+	/**
+	 * Set the color temperature used for the frames.
+	 *
+	 * @param colorTemperature The color temperature.
+	 * @return The updated pipeline.
+	 */
+	public TileStreamPipeline setColorTemperature(final short colorTemperature) {
+		mColorTemperature = colorTemperature;
+		return this;
+	}
+
+	/**
+	 * Set the callback called at the end of the stream. Exactly one of onException and onAnimationEnd is called, depending on whether the
+	 * source ended with an exception.
+	 *
+	 * @param callback The callback.
+	 * @return The updated pipeline.
+	 */
+	public TileStreamPipeline setAnimationCallback(final AnimationCallback callback) {
+		mAnimationCallback = callback;
+		return this;
+	}
+
+	/**
+	 * Get the number of frames sent to the device.
+	 *
+	 * @return The number of frames sent.
+	 */
+	public int getSentFrameCount() {
+		return mSentFrameCount.get();
+	}
+
+	/**
+	 * Get the number of frames dropped because the pipeline fell behind.
+	 *
+	 * @return The number of frames dropped.
+	 */
+	public int getDroppedFrameCount() {
+		return mDroppedFrameCount.get();
+	}
+
+	/**
+	 * Start the pipeline.
+	 */
+	public synchronized void start() {
+		if (mReaderThread != null) {
+			return;
+		}
+		final TileCanvas canvas = mTileChain.getCanvas();
+		mReaderThread = new Thread(this::runReader, "TileStreamReader");
+		mConverterThread = new Thread(() -> runConverter(canvas), "TileStreamConverter");
+		mSenderThread = new Thread(this::runSender, "TileStreamSender");
+		mReaderThread.start();
+		mConverterThread.start();
+		mSenderThread.start();
+	}
+
+	/**
+	 * Stop the pipeline. The source is closed, so that a reader blocked on the source ends as well.
+	 *
+	 * @param waitForEnd flag indicating if the method should wait for the end of the threads.
+	 */
+	public synchronized void stop(final boolean waitForEnd) {
+		if (mReaderThread == null) {
+			return;
+		}
+		mIsStopped = true;
+		mReaderThread.interrupt();
+		mConverterThread.interrupt();
+		mSenderThread.interrupt();
+		closeSource();
+		if (waitForEnd) {
+			try {
+				mReaderThread.join();
+				mConverterThread.join();
+				mSenderThread.join();
+			}
+			catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Wait until the pipeline has ended.
+	 */
+	public void waitForEnd() {
+		Thread senderThread = mSenderThread;
+		if (senderThread != null) {
+			try {
+				senderThread.join();
+			}
+			catch (InterruptedException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Get the frame interval in millis.
+	 *
+	 * @return The frame interval.
+	 */
+	private long getFrameInterval() {
+		return (long) (MILLIS_PER_SECOND / mFrameRate);
+	}
+
+	/**
+	 * Put an element into a queue. If the queue is full, the oldest element is dropped and recycled.
+	 *
+	 * @param queue The queue.
+	 * @param element The element.
+	 * @param buffers The buffers to which dropped elements are recycled.
+	 * @param <T> The element type.
+	 */
+	private <T> void putDroppingOldest(final BlockingQueue<T> queue, final T element, final BlockingQueue<T> buffers) {
+		while (!queue.offer(element)) {
+			T dropped = queue.poll();
+			if (dropped != null) {
+				mDroppedFrameCount.incrementAndGet();
+				buffers.offer(dropped);
+			}
+		}
+	}
+
+	/**
+	 * Close the source.
+	 */
+	private void closeSource() {
+		try {
+			mSource.close();
+		}
+		catch (IOException e) {
+			Logger.error(e);
+		}
+	}
+
+	/**
+	 * Run the reader stage.
+	 */
+	private void runReader() {
+		final int size = mSource.getWidth() * mSource.getHeight();
+		long nextFrameTime = System.currentTimeMillis();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				int[] buffer = mRawBuffers.poll();
+				if (buffer == null) {
+					buffer = new int[size];
+				}
+				if (!mSource.readFrame(buffer)) {
+					break;
+				}
+				putDroppingOldest(mRawQueue, buffer, mRawBuffers);
+
+				nextFrameTime += getFrameInterval();
+				long sleepTime = nextFrameTime - System.currentTimeMillis();
+				if (sleepTime > 0) {
+					Thread.sleep(sleepTime);
+				}
+				else {
+					// do not try to catch up after a stall of the source.
+					nextFrameTime = System.currentTimeMillis();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			// end of stream
+		}
+		catch (IOException e) {
+			if (!mIsStopped) {
+				// reported by the sender at the end of the stream.
+				Logger.error(e);
+				mSourceException = e;
+			}
+		}
+		finally {
+			mIsSourceEnded = true;
+			closeSource();
+		}
+	}
+
+	/**
+	 * Run the converter stage.
+	 *
+	 * @param canvas The canvas of the tile chain.
+	 */
+	private void runConverter(final TileCanvas canvas) {
+		final int[] cellArgb = new int[canvas.getWidth() * canvas.getHeight()];
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				int[] raw = mRawQueue.poll(getFrameInterval(), TimeUnit.MILLISECONDS);
+				if (raw == null) {
+					if (mIsSourceEnded && mRawQueue.isEmpty()) {
+						break;
+					}
+					continue;
+				}
+				TileChainFrame frame = mFrameBuffers.poll();
+				if (frame == null) {
+					frame = new TileChainFrame(canvas.getWidth(), canvas.getHeight(), new long[canvas.getWidth() * canvas.getHeight()]);
+				}
+				canvas.resample(raw, mSource.getWidth(), mSource.getHeight(), mColorTemperature, cellArgb, frame);
+				mRawBuffers.offer(raw);
+				putDroppingOldest(mFrameQueue, frame, mFrameBuffers);
+			}
+		}
+		catch (InterruptedException e) {
+			// end of stream
+		}
+		finally {
+			mIsConverterEnded = true;
+		}
+	}
+
+	/**
+	 * Run the sender stage.
+	 */
+	private void runSender() {
+		RequestPriority.setCurrent(RequestPriority.ANIMATION);
+		boolean isInterrupted = false;
+		long lastSendTime = 0;
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				TileChainFrame frame = mFrameQueue.poll(getFrameInterval(), TimeUnit.MILLISECONDS);
+				if (frame == null) {
+					if (mIsConverterEnded && mFrameQueue.isEmpty()) {
+						break;
+					}
+					continue;
+				}
+				// skip to the latest frame if the device is slower than the source.
+				TileChainFrame newerFrame = mFrameQueue.poll();
+				while (newerFrame != null) {
+					mDroppedFrameCount.incrementAndGet();
+					mFrameBuffers.offer(frame);
+					frame = newerFrame;
+					newerFrame = mFrameQueue.poll();
+				}
+
+				long sleepTime = lastSendTime + getFrameInterval() - System.currentTimeMillis();
+				if (sleepTime > 0) {
+					Thread.sleep(sleepTime);
+				}
+				lastSendTime = System.currentTimeMillis();
+				try {
+					mTileChain.setColors(0, frame);
+					mSentFrameCount.incrementAndGet();
+				}
+				catch (MessageDroppedException e) {
+					// the device budget is needed for requests of higher priority.
+					mDroppedFrameCount.incrementAndGet();
+				}
+				catch (IOException e) {
+					// drop the frame and continue with the next one.
+					Logger.error(e);
+					mDroppedFrameCount.incrementAndGet();
+				}
+				mFrameBuffers.offer(frame);
+			}
+			isInterrupted = Thread.currentThread().isInterrupted();
+		}
+		catch (InterruptedException e) {
+			isInterrupted = true;
+		}
+		if (mAnimationCallback != null) {
+			IOException sourceException = mSourceException;
+			if (sourceException != null && !isInterrupted) {
+				mAnimationCallback.onException(sourceException);
+			}
+			else {
+				mAnimationCallback.onAnimationEnd(isInterrupted);
+			}
+		}
+	}
+
+	@Override
+	public final String toString() {
+		return "TileStreamPipeline[sent=" + getSentFrameCount() + ", dropped=" + getDroppedFrameCount() + "]";
+	}
+}
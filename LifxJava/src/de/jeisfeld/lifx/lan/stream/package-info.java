@@ -0,0 +1,4 @@
+/**
+ * Classes for streaming image frames to LIFX devices.
+ */
+package de.jeisfeld.lifx.lan.stream;
@@ -0,0 +1,208 @@
+package de.jeisfeld.lifx.lan.type;
+
+import java.util.Arrays;
+
+import de.jeisfeld.lifx.lan.util.ColorKernels;
+
+/**
+ * Base class of color frames. A color frame holds the colors of a device in packed HSBK form (as in {@link Color#asLong()}) in a primitive
+ * array, so that bulk operations can be done in place without creating Color objects.
+ */
+public abstract class ColorFrame {
+	/**
+	 * Mask for one color component.
+	 */
+	private static final long COMPONENT_MASK = 0xFFFFL;
+	/**
+	 * Shift of the hue within the packed color.
+	 */
+	private static final int HUE_SHIFT = 48;
+	/**
+	 * Shift of the saturation within the packed color.
+	 */
+	private static final int SATURATION_SHIFT = 32;
+	/**
+	 * Shift of the brightness within the packed color.
+	 */
+	private static final int BRIGHTNESS_SHIFT = 16;
+
+	/**
+	 * The packed colors.
+	 */
+	private final long[] mValues;
+
+	/**
+	 * Create a color frame.
+	 *
+	 * @param values The packed colors. The array is used as backing array of the frame.
+	 */
+	protected ColorFrame(final long[] values) {
+		mValues = values;
+	}
+
+	/**
+	 * Get the number of colors in the frame.
+	 *
+	 * @return The number of colors.
+	 */
+	public final int size() {
+		return mValues.length;
+	}
+
+	/**
+	 * Get the backing array of packed colors. Changes of the array change the frame.
+	 *
+	 * @return The packed colors.
+	 */
+	public final long[] getValues() {
+		return mValues;
+	}
+
+	/**
+	 * Get a packed color.
+	 *
+	 * @param index The index in the backing array.
+	 * @return The packed color.
+	 */
+	public final long getValue(final int index) {
+		return mValues[index];
+	}
+
+	/**
+	 * Set a packed color.
+	 *
+	 * @param index The index in the backing array.
+	 * @param value The packed color.
+	 */
+	public final void setValue(final int index, final long value) {
+		mValues[index] = value;
+	}
+
+	/**
+	 * Fill the frame with one color.
+	 *
+	 * @param color The color.
+	 * @return The updated frame.
+	 */
+	public ColorFrame fill(final Color color) {
+		Arrays.fill(mValues, color.asLong());
+		return this;
+	}
+
+	/**
+	 * Multiply the brightness of all colors in place.
+	 *
+	 * @param brightnessFactor The brightness factor (1 meaning unchanged).
+	 * @return The updated frame.
+	 */
+	public ColorFrame scaleBrightness(final double brightnessFactor) {
+		if (brightnessFactor == 1) {
+			return this;
+		}
+		ColorKernels.scaleBrightness(mValues, brightnessFactor, mValues);
+		return this;
+	}
+
+	/**
+	 * Mix in place with another frame of same size. This works like {@link Color#add(Color, double)} up to rounding.
+	 *
+	 * @param other The other frame.
+	 * @param quota The quota of the other colors (between 0 and 1)
+	 * @return The updated frame.
+	 */
+	public ColorFrame blend(final ColorFrame other, final double quota) {
+		if (other.mValues.length != mValues.length) {
+			throw new IllegalArgumentException("Cannot blend frames of different size " + mValues.length + " and " + other.mValues.length);
+		}
+		ColorKernels.interpolate(mValues, other.mValues, quota, mValues);
+		return this;
+	}
+
+	/**
+	 * Rotate a range of the backing array cyclically in place, so that the value at index i moves to index i + shiftCount.
+	 *
+	 * @param start The start of the range.
+	 * @param length The length of the range.
+	 * @param shiftCount The shift count.
+	 */
+	protected final void rotate(final int start, final int length, final int shiftCount) {
+		if (length <= 1) {
+			return;
+		}
+		int shift = (shiftCount % length + length) % length;
+		if (shift == 0) {
+			return;
+		}
+		reverse(start, start + length - 1);
+		reverse(start, start + shift - 1);
+		reverse(start + shift, start + length - 1);
+	}
+
+	/**
+	 * Reverse a range of the backing array in place.
+	 *
+	 * @param from The first index.
+	 * @param to The last index.
+	 */
+	private void reverse(final int from, final int to) {
+		for (int i = from, j = to; i < j; i++, j--) {
+			long temp = mValues[i];
+			mValues[i] = mValues[j];
+			mValues[j] = temp;
+		}
+	}
+
+	/**
+	 * Pack a color from its components.
+	 *
+	 * @param hue The hue.
+	 * @param saturation The saturation.
+	 * @param brightness The brightness.
+	 * @param colorTemperature The color temperature.
+	 * @return The packed color.
+	 */
+	public static long pack(final int hue, final int saturation, final int brightness, final int colorTemperature) {
+		return (hue & COMPONENT_MASK) << HUE_SHIFT | (saturation & COMPONENT_MASK) << SATURATION_SHIFT
+				| (brightness & COMPONENT_MASK) << BRIGHTNESS_SHIFT | colorTemperature & COMPONENT_MASK;
+	}
+
+	/**
+	 * Get the hue of a packed color.
+	 *
+	 * @param value The packed color.
+	 * @return The hue as unsigned value.
+	 */
+	public static int getHue(final long value) {
+		return (int) (value >>> HUE_SHIFT & COMPONENT_MASK);
+	}
+
+	/**
+	 * Get the saturation of a packed color.
+	 *
+	 * @param value The packed color.
+	 * @return The saturation as unsigned value.
+	 */
+	public static int getSaturation(final long value) {
+		return (int) (value >>> SATURATION_SHIFT & COMPONENT_MASK);
+	}
+
+	/**
+	 * Get the brightness of a packed color.
+	 *
+	 * @param value The packed color.
+	 * @return The brightness as unsigned value.
+	 */
+	public static int getBrightness(final long value) {
+		return (int) (value >>> BRIGHTNESS_SHIFT & COMPONENT_MASK);
+	}
+
+	/**
+	 * Get the color temperature of a packed color.
+	 *
+	 * @param value The packed color.
+	 * @return The color temperature as unsigned value.
+	 */
+	public static int getColorTemperature(final long value) {
+		return (int) (value & COMPONENT_MASK);
+	}
+}
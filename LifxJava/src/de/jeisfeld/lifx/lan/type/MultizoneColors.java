@@ -108,6 +108,18 @@ public abstract class MultizoneColors {
 		};
 	}
 
+	/**
+	 * Evaluate the colors for a certain zone count once and store them in a flat buffer. This folds a chain of transformations, so that
+	 * further access to the colors is cheap. Derived colors such as shift are evaluated lazily, so the materialized colors are a snapshot
+	 * taken at this call.
+	 *
+	 * @param zoneCount The number of zones.
+	 * @return The materialized colors.
+	 */
+	public MultizoneColors materialize(final int zoneCount) {
+		return new Materialized(this, zoneCount, getColors(zoneCount));
+	}
+
 	/**
 	 * Return the max brightness.
 	 *
@@ -213,7 +225,8 @@ public abstract class MultizoneColors {
 	}
 
 	/**
-	 * Multizone colors defined by a base list of colors that are linearly interpolated.
+	 * Multizone colors defined by a base list of colors that are linearly interpolated. As the colors are immutable, the interpolation is
+	 * evaluated once for the last used zone count, so that derived colors such as shifts in a rolling animation are cheap.
 	 */
 	public static class Interpolated extends MultizoneColors {
 		/**
@@ -224,6 +237,10 @@ public abstract class MultizoneColors {
 		 * Flag indicating if interpolation should be cyclically.
 		 */
 		private final boolean mCyclic;
+		/**
+		 * The interpolated colors for the last used zone count.
+		 */
+		private volatile Color[] mEvaluatedColors = null;
 
 		/**
 		 * Create interpolated multizone colors.
@@ -250,6 +267,25 @@ public abstract class MultizoneColors {
 		@Override
 		public final Color getColor(final int zoneIndex, final int zoneCount) {
 			int index = (zoneIndex % zoneCount + zoneCount) % zoneCount;
+			Color[] evaluatedColors = mEvaluatedColors;
+			if (evaluatedColors == null || evaluatedColors.length != zoneCount) {
+				evaluatedColors = new Color[zoneCount];
+				for (int i = 0; i < zoneCount; i++) {
+					evaluatedColors[i] = interpolate(i, zoneCount);
+				}
+				mEvaluatedColors = evaluatedColors;
+			}
+			return evaluatedColors[index];
+		}
+
+		/**
+		 * Interpolate the color of a zone.
+		 *
+		 * @param index The zone index, between 0 and zoneCount - 1.
+		 * @param zoneCount The number of zones.
+		 * @return The interpolated color.
+		 */
+		private Color interpolate(final int index, final int zoneCount) {
 			if (mColors == null || mColors.size() <= 1) {
 				return mColors == null || mColors.size() == 0 ? Color.OFF : mColors.get(0);
 			}
@@ -338,4 +374,58 @@ public abstract class MultizoneColors {
 		}
 
 	}
+
+	/**
+	 * Multizone colors evaluated for a certain zone count and stored in a flat buffer.
+	 */
+	private static final class Materialized extends MultizoneColors {
+		/**
+		 * The colors from which this was materialized.
+		 */
+		private final MultizoneColors mBase;
+		/**
+		 * The zone count.
+		 */
+		private final int mZoneCount;
+		/**
+		 * The colors.
+		 */
+		private final Color[] mColors;
+
+		/**
+		 * Create materialized colors.
+		 *
+		 * @param base The colors from which this was materialized.
+		 * @param zoneCount The zone count.
+		 * @param colors The colors for this zone count.
+		 */
+		private Materialized(final MultizoneColors base, final int zoneCount, final Color[] colors) {
+			mBase = base;
+			mZoneCount = zoneCount;
+			mColors = colors;
+		}
+
+		@Override
+		public Color getColor(final int zoneIndex, final int zoneCount) {
+			if (zoneCount == mZoneCount && zoneIndex >= 0 && zoneIndex < zoneCount) {
+				return mColors[zoneIndex];
+			}
+			return mBase.getColor(zoneIndex, zoneCount);
+		}
+
+		@Override
+		public Color[] getColors(final int zoneCount) {
+			return zoneCount == mZoneCount ? mColors.clone() : mBase.getColors(zoneCount);
+		}
+
+		@Override
+		public MultizoneColors materialize(final int zoneCount) {
+			return zoneCount == mZoneCount ? this : mBase.materialize(zoneCount);
+		}
+
+		@Override
+		public String toString() {
+			return "MultizoneColors.Materialized[" + mZoneCount + "]" + Arrays.asList(mColors);
+		}
+	}
 }
@@ -0,0 +1,156 @@
+package de.jeisfeld.lifx.lan.type;
+
+import static de.jeisfeld.lifx.lan.util.TypeUtil.INDENT;
+
+/**
+ * A frame of multizone colors in packed HSBK form. Operations change the frame in place, so that one frame can be reused for all frames of
+ * an animation.
+ */
+public class MultizoneFrame extends ColorFrame {
+	/**
+	 * Create a multizone frame with all zones off.
+	 *
+	 * @param zoneCount The number of zones.
+	 */
+	public MultizoneFrame(final int zoneCount) {
+		this(new long[zoneCount]);
+		fill(Color.OFF);
+	}
+
+	/**
+	 * Create a multizone frame from packed colors.
+	 *
+	 * @param values The packed colors, one per zone. The array is used as backing array of the frame.
+	 */
+	public MultizoneFrame(final long[] values) {
+		super(values);
+	}
+
+	/**
+	 * Create a multizone frame from multizone colors.
+	 *
+	 * @param colors The multizone colors.
+	 * @param zoneCount The number of zones.
+	 * @return The frame.
+	 */
+	public static MultizoneFrame from(final MultizoneColors colors, final int zoneCount) {
+		return new MultizoneFrame(new long[zoneCount]).update(colors);
+	}
+
+	/**
+	 * Overwrite the frame with multizone colors.
+	 *
+	 * @param colors The multizone colors.
+	 * @return The updated frame.
+	 */
+	public MultizoneFrame update(final MultizoneColors colors) {
+		final int zoneCount = size();
+		for (int i = 0; i < zoneCount; i++) {
+			setValue(i, colors.getColor(i, zoneCount).asLong());
+		}
+		return this;
+	}
+
+	/**
+	 * Get the number of zones.
+	 *
+	 * @return The number of zones.
+	 */
+	public final int getZoneCount() {
+		return size();
+	}
+
+	/**
+	 * Get the color of a zone.
+	 *
+	 * @param zoneIndex The zone index.
+	 * @return The color.
+	 */
+	public final Color getColor(final int zoneIndex) {
+		return new Color(getValue(zoneIndex));
+	}
+
+	/**
+	 * Set the color of a zone.
+	 *
+	 * @param zoneIndex The zone index.
+	 * @param color The color.
+	 */
+	public final void setColor(final int zoneIndex, final Color color) {
+		setValue(zoneIndex, color.asLong());
+	}
+
+	/**
+	 * Shift the colors cyclically in place by a certain amount of zones.
+	 *
+	 * @param shiftCount The number of zones for the shift.
+	 * @return The updated frame.
+	 */
+	public MultizoneFrame shift(final int shiftCount) {
+		rotate(0, size(), shiftCount);
+		return this;
+	}
+
+	@Override
+	public MultizoneFrame fill(final Color color) {
+		super.fill(color);
+		return this;
+	}
+
+	@Override
+	public MultizoneFrame scaleBrightness(final double brightnessFactor) {
+		super.scaleBrightness(brightnessFactor);
+		return this;
+	}
+
+	@Override
+	public MultizoneFrame blend(final ColorFrame other, final double quota) {
+		super.blend(other, quota);
+		return this;
+	}
+
+	/**
+	 * Create a copy of this frame.
+	 *
+	 * @return The copy.
+	 */
+	public MultizoneFrame copy() {
+		return new MultizoneFrame(getValues().clone());
+	}
+
+	/**
+	 * Get a view of this frame as multizone colors. The view reflects later changes of the frame.
+	 *
+	 * @return The multizone colors.
+	 */
+	public MultizoneColors asMultizoneColors() {
+		return new MultizoneColors() {
+			@Override
+			public Color getColor(final int zoneIndex, final int zoneCount) {
+				return MultizoneFrame.this.getColor((zoneIndex % size() + size()) % size());
+			}
+		};
+	}
+
+	/**
+	 * Get the max brightness.
+	 *
+	 * @return The max brightness.
+	 */
+	public int getMaxBrightness() {
+		int maxBrightness = 0;
+		for (long value : getValues()) {
+			maxBrightness = Math.max(maxBrightness, getBrightness(value));
+		}
+		return maxBrightness;
+	}
+
+	@Override
+	public final String toString() {
+		StringBuilder result = new StringBuilder("MultizoneFrame: \n");
+		for (int i = 0; i < size(); i++) {
+			result.append(INDENT).append(getColor(i)).append("\n");
+		}
+		return result.toString();
+	}
+}
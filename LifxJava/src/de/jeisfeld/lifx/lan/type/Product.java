@@ -97,6 +97,11 @@ public enum Product {
 	 */
 	private final long mExtApiBuildTime;
 
+	/**
+	 * Build time from which tile chains support firmware effects via TileSetTileEffect.
+	 */
+	private static final long TILE_EFFECT_BUILD_TIME = 1548979200;
+
 	/**
 	 * Map from id to product.
 	 */
@@ -250,6 +255,16 @@ public enum Product {
 		return buildDate.getTime() / 1000 >= mExtApiBuildTime; // MAGIC_NUMBER
 	}
 
+	/**
+	 * Check if the device supports firmware tile effects.
+	 *
+	 * @param buildDate The firmware build date.
+	 * @return true if tile effects are available.
+	 */
+	public final boolean hasTileEffects(final Date buildDate) {
+		return mIsChain && buildDate != null && buildDate.getTime() / 1000 >= TILE_EFFECT_BUILD_TIME; // MAGIC_NUMBER
+	}
+
 	@Override
 	public String toString() {
 		return getName() + " (" + getId() + ")";
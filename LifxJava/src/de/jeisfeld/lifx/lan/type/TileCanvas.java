@@ -0,0 +1,321 @@
+package de.jeisfeld.lifx.lan.type;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.jeisfeld.lifx.lan.type.TileInfo.Rotation;
+import de.jeisfeld.lifx.lan.util.ColorKernels;
+
+/**
+ * The canvas of a tile chain. It holds precomputed lookup tables between the coordinates of the total area of the tile chain and the
+ * positions within the tile payloads, taking into account the position and rotation of the tiles. So mapping a frame to the tiles is an
+ * array gather instead of a search of the owning tile per position.
+ */
+public class TileCanvas {
+	/**
+	 * The number of layout values stored per tile.
+	 */
+	private static final int LAYOUT_SIZE = 5;
+
+	/**
+	 * The width of the canvas.
+	 */
+	private final int mWidth;
+	/**
+	 * The height of the canvas.
+	 */
+	private final int mHeight;
+	/**
+	 * The number of tiles.
+	 */
+	private final int mTileCount;
+	/**
+	 * The tile covering each position of the canvas, row by row starting with y=0. -1 for positions without tile.
+	 */
+	private final int[] mCellTile;
+	/**
+	 * The payload index within the tile covering each position of the canvas. -1 for positions without tile.
+	 */
+	private final int[] mCellPayload;
+	/**
+	 * The canvas position for each payload position, tile by tile. -1 for payload positions without canvas position.
+	 */
+	private final int[] mPayloadCell;
+	/**
+	 * The layout from which the canvas was created (min x, min y, width, height, rotation per tile).
+	 */
+	private final int[] mLayout;
+
+	/**
+	 * Create the canvas for a tile chain layout.
+	 *
+	 * @param tileInfo The tile info of the tile chain.
+	 */
+	public TileCanvas(final List<TileInfo> tileInfo) {
+		mTileCount = tileInfo.size();
+		mLayout = getLayout(tileInfo);
+		int width = 0;
+		int height = 0;
+		for (TileInfo info : tileInfo) {
+			width = Math.max(width, info.getMinX() + info.getWidth());
+			height = Math.max(height, info.getMinY() + info.getHeight());
+		}
+		mWidth = width;
+		mHeight = height;
+
+		mCellTile = new int[width * height];
+		mCellPayload = new int[width * height];
+		mPayloadCell = new int[mTileCount * TileChainFrame.TILE_COLOR_COUNT];
+		Arrays.fill(mCellTile, -1);
+		Arrays.fill(mCellPayload, -1);
+		Arrays.fill(mPayloadCell, -1);
+
+		for (int tileIndex = 0; tileIndex < mTileCount; tileIndex++) {
+			TileInfo info = tileInfo.get(tileIndex);
+			for (int y = 0; y < info.getHeight(); y++) {
+				for (int x = 0; x < info.getWidth(); x++) {
+					int payloadIndex = getPayloadIndex(x, y, info.getWidth(), info.getHeight(), info.getRotation());
+					int cell = (info.getMinY() + y) * width + info.getMinX() + x;
+					if (payloadIndex >= 0 && payloadIndex < TileChainFrame.TILE_COLOR_COUNT && cell >= 0 && mCellTile[cell] < 0) {
+						mCellTile[cell] = tileIndex;
+						mCellPayload[cell] = payloadIndex;
+						mPayloadCell[tileIndex * TileChainFrame.TILE_COLOR_COUNT + payloadIndex] = cell;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the payload index of a position within a tile. The payload starts with the top row of the tile in its own orientation.
+	 *
+	 * @param x The x position within the tile, as seen on the canvas.
+	 * @param y The y position within the tile, as seen on the canvas (0 being the bottom row).
+	 * @param width The width of the tile.
+	 * @param height The height of the tile.
+	 * @param rotation The rotation of the tile.
+	 * @return The payload index.
+	 */
+	private static int getPayloadIndex(final int x, final int y, final int width, final int height, final Rotation rotation) {
+		if (width == height && rotation != null) {
+			switch (rotation) {
+			case ROTATE_RIGHT:
+				return (width - 1 - x) * width + height - 1 - y;
+			case ROTATE_LEFT:
+				return x * width + y;
+			case UPSIDE_DOWN:
+				return y * width + width - 1 - x;
+			default:
+				break;
+			}
+		}
+		return (height - 1 - y) * width + x;
+	}
+
+	/**
+	 * Get the layout values of a list of tile infos.
+	 *
+	 * @param tileInfo The tile info.
+	 * @return The layout values.
+	 */
+	private static int[] getLayout(final List<TileInfo> tileInfo) {
+		int[] layout = new int[tileInfo.size() * LAYOUT_SIZE];
+		for (int i = 0; i < tileInfo.size(); i++) {
+			TileInfo info = tileInfo.get(i);
+			layout[i * LAYOUT_SIZE] = info.getMinX();
+			layout[i * LAYOUT_SIZE + 1] = info.getMinY();
+			layout[i * LAYOUT_SIZE + 2] = info.getWidth();
+			layout[i * LAYOUT_SIZE + 3] = info.getHeight(); // MAGIC_NUMBER
+			layout[i * LAYOUT_SIZE + 4] = info.getRotation() == null ? -1 : info.getRotation().ordinal(); // MAGIC_NUMBER
+		}
+		return layout;
+	}
+
+	/**
+	 * Check if the canvas was created from the same layout, so that it need not be rebuilt.
+	 *
+	 * @param tileInfo The tile info.
+	 * @return true if the layout is unchanged.
+	 */
+	public boolean matchesLayout(final List<TileInfo> tileInfo) {
+		return tileInfo != null && Arrays.equals(mLayout, getLayout(tileInfo));
+	}
+
+	/**
+	 * Get the width of the canvas.
+	 *
+	 * @return The width.
+	 */
+	public final int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * Get the height of the canvas.
+	 *
+	 * @return The height.
+	 */
+	public final int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Get the number of tiles.
+	 *
+	 * @return The number of tiles.
+	 */
+	public final int getTileCount() {
+		return mTileCount;
+	}
+
+	/**
+	 * Get the tile covering a position of the canvas.
+	 *
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The tile index, or -1 if there is no tile at this position.
+	 */
+	public final int getTileIndex(final int x, final int y) {
+		return x >= 0 && x < mWidth && y >= 0 && y < mHeight ? mCellTile[y * mWidth + x] : -1;
+	}
+
+	/**
+	 * Get the payload index within the tile covering a position of the canvas.
+	 *
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The payload index, or -1 if there is no tile at this position.
+	 */
+	public final int getPayloadIndex(final int x, final int y) {
+		return x >= 0 && x < mWidth && y >= 0 && y < mHeight ? mCellPayload[y * mWidth + x] : -1;
+	}
+
+	/**
+	 * Get the color at a position of the canvas from the colors of the tiles as retrieved from the device.
+	 *
+	 * @param tileColors The colors per tile, as stored from the payload order.
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The color.
+	 */
+	public Color getColor(final TileColors[] tileColors, final int x, final int y) {
+		int tileIndex = getTileIndex(x, y);
+		if (tileIndex < 0 || tileIndex >= tileColors.length) {
+			return Color.OFF;
+		}
+		int payloadIndex = getPayloadIndex(x, y);
+		return tileColors[tileIndex].getColor(payloadIndex % TileColors.WIDTH, TileColors.WIDTH - 1 - payloadIndex / TileColors.WIDTH);
+	}
+
+	/**
+	 * Write the packed colors of one tile in payload order from a frame.
+	 *
+	 * @param frame The frame. Positions outside the frame are off.
+	 * @param tileIndex The tile index.
+	 * @param target The target array of length at least 64.
+	 * @return The target array.
+	 */
+	public long[] getTileValues(final TileChainFrame frame, final int tileIndex, final long[] target) {
+		final long off = Color.OFF.asLong();
+		final boolean isSameSize = frame.getWidth() == mWidth && frame.getHeight() == mHeight;
+		final int offset = tileIndex * TileChainFrame.TILE_COLOR_COUNT;
+		for (int i = 0; i < TileChainFrame.TILE_COLOR_COUNT; i++) {
+			int cell = mPayloadCell[offset + i];
+			if (cell < 0) {
+				target[i] = off;
+			}
+			else if (isSameSize) {
+				target[i] = frame.getValue(cell);
+			}
+			else {
+				int x = cell % mWidth;
+				int y = cell / mWidth;
+				target[i] = x < frame.getWidth() && y < frame.getHeight() ? frame.getValue(y * frame.getWidth() + x) : off;
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Write the packed colors of one tile in payload order from tile chain colors.
+	 *
+	 * @param colors The tile chain colors. Null entries are ignored, so that the target keeps its value.
+	 * @param tileIndex The tile index.
+	 * @param target The target array of length at least 64.
+	 * @return The target array.
+	 */
+	public long[] getTileValues(final TileChainColors colors, final int tileIndex, final long[] target) {
+		final int offset = tileIndex * TileChainFrame.TILE_COLOR_COUNT;
+		for (int i = 0; i < TileChainFrame.TILE_COLOR_COUNT; i++) {
+			int cell = mPayloadCell[offset + i];
+			Color color = cell < 0 ? Color.OFF : colors.getColor(cell % mWidth, cell / mWidth, mWidth, mHeight);
+			if (color != null) {
+				target[i] = color.asLong();
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Resample an image of arbitrary resolution to a frame covering the canvas. Each canvas position gets the average of the image pixels
+	 * covered by it, or the nearest pixel if the image has lower resolution.
+	 *
+	 * @param argb The image as ARGB colors, row by row starting with the top row.
+	 * @param imageWidth The width of the image.
+	 * @param imageHeight The height of the image.
+	 * @param colorTemperature The color temperature to be used.
+	 * @return The frame.
+	 */
+	public TileChainFrame resample(final int[] argb, final int imageWidth, final int imageHeight, final short colorTemperature) {
+		return resample(argb, imageWidth, imageHeight, colorTemperature, new int[mWidth * mHeight],
+				new TileChainFrame(mWidth, mHeight, new long[mWidth * mHeight]));
+	}
+
+	/**
+	 * Resample an image of arbitrary resolution to a frame covering the canvas, reusing buffers.
+	 *
+	 * @param argb The image as ARGB colors, row by row starting with the top row.
+	 * @param imageWidth The width of the image.
+	 * @param imageHeight The height of the image.
+	 * @param colorTemperature The color temperature to be used.
+	 * @param cellArgb A buffer of size width * height of the canvas.
+	 * @param target The target frame with the size of the canvas.
+	 * @return The target frame.
+	 */
+	public TileChainFrame resample(final int[] argb, final int imageWidth, final int imageHeight, final short colorTemperature, // SUPPRESS_CHECKSTYLE
+			final int[] cellArgb, final TileChainFrame target) {
+		for (int y = 0; y < mHeight; y++) {
+			// canvas y=0 is the bottom row, while image row 0 is the top row.
+			final int imageRow = mHeight - 1 - y;
+			final int top = imageRow * imageHeight / mHeight;
+			final int bottom = Math.max(top + 1, (imageRow + 1) * imageHeight / mHeight);
+			for (int x = 0; x < mWidth; x++) {
+				if (mCellTile[y * mWidth + x] < 0) {
+					continue;
+				}
+				final int left = x * imageWidth / mWidth;
+				final int right = Math.max(left + 1, (x + 1) * imageWidth / mWidth);
+				int red = 0;
+				int green = 0;
+				int blue = 0;
+				for (int row = top; row < bottom; row++) {
+					for (int column = left; column < right; column++) {
+						int pixel = argb[row * imageWidth + column];
+						red += pixel >>> 16 & 0xFF; // MAGIC_NUMBER
+						green += pixel >>> 8 & 0xFF; // MAGIC_NUMBER
+						blue += pixel & 0xFF; // MAGIC_NUMBER
+					}
+				}
+				final int count = (bottom - top) * (right - left);
+				cellArgb[y * mWidth + x] = (red / count) << 16 | (green / count) << 8 | blue / count; // MAGIC_NUMBER
+			}
+		}
+		ColorKernels.convertRgbToHsbk(cellArgb, colorTemperature, target.getValues());
+		return target;
+	}
+
+	@Override
+	public final String toString() {
+		return "TileCanvas[" + mWidth + "x" + mHeight + ", tiles=" + mTileCount + "]";
+	}
+}
@@ -101,6 +101,25 @@ public abstract class TileChainColors {
 		};
 	}
 
+	/**
+	 * Evaluate the colors for certain dimensions once and store them in a flat buffer. This folds a chain of transformations, so that
+	 * further access to the colors is cheap. Derived colors such as shift are evaluated lazily, so the materialized colors are a snapshot
+	 * taken at this call.
+	 *
+	 * @param width  The width
+	 * @param height The height
+	 * @return The materialized colors.
+	 */
+	public TileChainColors materialize(final int width, final int height) {
+		Color[] colors = new Color[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				colors[y * width + x] = getColor(x, y, width, height);
+			}
+		}
+		return new Materialized(this, width, height, colors);
+	}
+
 	/**
 	 * Get the tile colors for a certain tile.
 	 *
@@ -150,10 +169,12 @@ public abstract class TileChainColors {
 	 * @return The max brightness.
 	 */
 	public int getMaxBrightness(final TileChain tileChain) {
+		// overlapping tiles read the same positions, so the colors are evaluated only once.
+		final TileChainColors colors = materialize(tileChain.getTotalWidth(), tileChain.getTotalHeight());
 		int maxBrightness = 0;
 		for (TileInfo tileInfo : tileChain.getTileInfo()) {
 			maxBrightness = Math.max(maxBrightness,
-					getTileColors(tileInfo.getMinX(), tileInfo.getMinY(), tileChain.getTotalWidth(), tileChain.getTotalHeight()).getMaxBrightness());
+					colors.getTileColors(tileInfo.getMinX(), tileInfo.getMinY(), tileChain.getTotalWidth(), tileChain.getTotalHeight()).getMaxBrightness());
 		}
 		return maxBrightness;
 	}
@@ -227,15 +248,7 @@ public abstract class TileChainColors {
 
 		@Override
 		public final Color getColor(final int x, final int y, final int width, final int height) {
-			for (int i = 0; i < mTileChain.getTileCount(); i++) {
-				TileInfo tileInfo = mTileChain.getTileInfo().get(i);
-				if (x >= tileInfo.getMinX() && x < tileInfo.getMinX() + tileInfo.getWidth()
-						&& y >= tileInfo.getMinY() && y < tileInfo.getMinY() + tileInfo.getHeight()) {
-					return mColors[i].getColor(x - tileInfo.getMinX(), y - tileInfo.getMinY());
-				}
-			}
-
-			return Color.OFF;
+			return mTileChain.getCanvas().getColor(mColors, x, y);
 		}
 
 		@Override
@@ -259,7 +272,8 @@ public abstract class TileChainColors {
 	}
 
 	/**
-	 * Tile colors defined by colors in the corners that are linearly interpolated.
+	 * Tile colors defined by colors in the corners that are linearly interpolated. As the colors are immutable, the interpolation is
+	 * evaluated once for the last used dimensions.
 	 */
 	public static class InterpolatedCorners extends TileChainColors {
 		/**
@@ -278,6 +292,10 @@ public abstract class TileChainColors {
 		 * The color on bottom right.
 		 */
 		private final Color mColorBottomRight;
+		/**
+		 * The interpolated colors for the last used dimensions.
+		 */
+		private volatile Materialized mEvaluated = null;
 
 		/**
 		 * Create interpolated colors.
@@ -296,6 +314,33 @@ public abstract class TileChainColors {
 
 		@Override
 		public final Color getColor(final int x, final int y, final int width, final int height) {
+			if (x < 0 || x >= width || y < 0 || y >= height) {
+				return interpolate(x, y, width, height);
+			}
+			Materialized evaluated = mEvaluated;
+			if (evaluated == null || evaluated.mWidth != width || evaluated.mHeight != height) {
+				Color[] colors = new Color[width * height];
+				for (int y0 = 0; y0 < height; y0++) {
+					for (int x0 = 0; x0 < width; x0++) {
+						colors[y0 * width + x0] = interpolate(x0, y0, width, height);
+					}
+				}
+				evaluated = new Materialized(this, width, height, colors);
+				mEvaluated = evaluated;
+			}
+			return evaluated.mColors[y * width + x];
+		}
+
+		/**
+		 * Interpolate the color at a position.
+		 *
+		 * @param x      The x coordinate
+		 * @param y      The y coordinate
+		 * @param width  The width
+		 * @param height The height
+		 * @return The interpolated color.
+		 */
+		private Color interpolate(final int x, final int y, final int width, final int height) {
 			double xquota = (double) x / (width - 1);
 			double yquota = (double) y / (height - 1);
 
@@ -319,4 +364,58 @@ public abstract class TileChainColors {
 		}
 	}
 
+	/**
+	 * Tile chain colors evaluated for certain dimensions and stored in a flat buffer.
+	 */
+	private static final class Materialized extends TileChainColors {
+		/**
+		 * The colors from which this was materialized.
+		 */
+		private final TileChainColors mBase;
+		/**
+		 * The width.
+		 */
+		private final int mWidth;
+		/**
+		 * The height.
+		 */
+		private final int mHeight;
+		/**
+		 * The colors, row by row starting with y=0.
+		 */
+		private final Color[] mColors;
+
+		/**
+		 * Create materialized colors.
+		 *
+		 * @param base   The colors from which this was materialized.
+		 * @param width  The width
+		 * @param height The height
+		 * @param colors The colors for these dimensions.
+		 */
+		private Materialized(final TileChainColors base, final int width, final int height, final Color[] colors) {
+			mBase = base;
+			mWidth = width;
+			mHeight = height;
+			mColors = colors;
+		}
+
+		@Override
+		public Color getColor(final int x, final int y, final int width, final int height) {
+			if (width == mWidth && height == mHeight && x >= 0 && x < width && y >= 0 && y < height) {
+				return mColors[y * width + x];
+			}
+			return mBase.getColor(x, y, width, height);
+		}
+
+		@Override
+		public TileChainColors materialize(final int width, final int height) {
+			return width == mWidth && height == mHeight ? this : mBase.materialize(width, height);
+		}
+
+		@Override
+		public String toString() {
+			return "TileChainColors.Materialized[" + mWidth + "x" + mHeight + "]";
+		}
+	}
 }
@@ -0,0 +1,226 @@
+package de.jeisfeld.lifx.lan.type;
+
+import static de.jeisfeld.lifx.lan.util.TypeUtil.INDENT;
+
+/**
+ * A frame of tile chain colors in packed HSBK form, covering the total area of the tile chain. Operations change the frame in place, so
+ * that one frame can be reused for all frames of an animation.
+ */
+public class TileChainFrame extends ColorFrame {
+	/**
+	 * The number of colors sent per tile.
+	 */
+	public static final int TILE_COLOR_COUNT = 64;
+	/**
+	 * The width of the frame.
+	 */
+	private final int mWidth;
+	/**
+	 * The height of the frame.
+	 */
+	private final int mHeight;
+
+	/**
+	 * Create a tile chain frame with all colors off.
+	 *
+	 * @param width The width.
+	 * @param height The height.
+	 */
+	public TileChainFrame(final int width, final int height) {
+		this(width, height, new long[width * height]);
+		fill(Color.OFF);
+	}
+
+	/**
+	 * Create a tile chain frame from packed colors.
+	 *
+	 * @param width The width.
+	 * @param height The height.
+	 * @param values The packed colors, row by row starting with y=0. The array is used as backing array of the frame.
+	 */
+	public TileChainFrame(final int width, final int height, final long[] values) {
+		super(values);
+		if (values.length != width * height) {
+			throw new IllegalArgumentException("Frame size " + values.length + " does not match dimensions " + width + "x" + height);
+		}
+		mWidth = width;
+		mHeight = height;
+	}
+
+	/**
+	 * Create a tile chain frame from tile chain colors.
+	 *
+	 * @param colors The tile chain colors.
+	 * @param width The width.
+	 * @param height The height.
+	 * @return The frame.
+	 */
+	public static TileChainFrame from(final TileChainColors colors, final int width, final int height) {
+		return new TileChainFrame(width, height, new long[width * height]).update(colors);
+	}
+
+	/**
+	 * Overwrite the frame with tile chain colors.
+	 *
+	 * @param colors The tile chain colors.
+	 * @return The updated frame.
+	 */
+	public TileChainFrame update(final TileChainColors colors) {
+		for (int y = 0; y < mHeight; y++) {
+			for (int x = 0; x < mWidth; x++) {
+				setValue(y * mWidth + x, colors.getColor(x, y, mWidth, mHeight).asLong());
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Get the width.
+	 *
+	 * @return The width.
+	 */
+	public final int getWidth() {
+		return mWidth;
+	}
+
+	/**
+	 * Get the height.
+	 *
+	 * @return The height.
+	 */
+	public final int getHeight() {
+		return mHeight;
+	}
+
+	/**
+	 * Get the color at a certain position.
+	 *
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @return The color.
+	 */
+	public final Color getColor(final int x, final int y) {
+		return new Color(getValue(y * mWidth + x));
+	}
+
+	/**
+	 * Set the color at a certain position.
+	 *
+	 * @param x The x coordinate.
+	 * @param y The y coordinate.
+	 * @param color The color.
+	 */
+	public final void setColor(final int x, final int y, final Color color) {
+		setValue(y * mWidth + x, color.asLong());
+	}
+
+	/**
+	 * Shift the colors cyclically in place.
+	 *
+	 * @param shiftX The number of zones for the shift in x direction.
+	 * @param shiftY The number of zones for the shift in y direction.
+	 * @return The updated frame.
+	 */
+	public TileChainFrame shift(final int shiftX, final int shiftY) {
+		rotate(0, size(), shiftY * mWidth);
+		if (shiftX % mWidth != 0) {
+			for (int y = 0; y < mHeight; y++) {
+				rotate(y * mWidth, mWidth, shiftX);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public TileChainFrame fill(final Color color) {
+		super.fill(color);
+		return this;
+	}
+
+	@Override
+	public TileChainFrame scaleBrightness(final double brightnessFactor) {
+		super.scaleBrightness(brightnessFactor);
+		return this;
+	}
+
+	@Override
+	public TileChainFrame blend(final ColorFrame other, final double quota) {
+		super.blend(other, quota);
+		return this;
+	}
+
+	/**
+	 * Create a copy of this frame.
+	 *
+	 * @return The copy.
+	 */
+	public TileChainFrame copy() {
+		return new TileChainFrame(mWidth, mHeight, getValues().clone());
+	}
+
+	/**
+	 * Write the packed colors of one tile in the order required by TileSetTileState64. Positions outside the frame are off.
+	 *
+	 * @param minX The min x coordinate of the tile.
+	 * @param minY The min y coordinate of the tile.
+	 * @param tileWidth The width of the tile.
+	 * @param tileHeight The height of the tile.
+	 * @param target The target array of length at least 64.
+	 * @return The target array.
+	 */
+	public long[] getTileValues(final int minX, final int minY, final int tileWidth, final int tileHeight, final long[] target) {
+		final long off = Color.OFF.asLong();
+		int index = 0;
+		for (int y = tileHeight - 1; y >= 0 && index < TILE_COLOR_COUNT; y--) {
+			int frameY = minY + y;
+			for (int x = 0; x < tileWidth && index < TILE_COLOR_COUNT; x++) {
+				int frameX = minX + x;
+				target[index++] = frameX >= 0 && frameX < mWidth && frameY >= 0 && frameY < mHeight ? getValue(frameY * mWidth + frameX) : off;
+			}
+		}
+		while (index < TILE_COLOR_COUNT) {
+			target[index++] = off;
+		}
+		return target;
+	}
+
+	/**
+	 * Get a view of this frame as tile chain colors. The view reflects later changes of the frame.
+	 *
+	 * @return The tile chain colors.
+	 */
+	public TileChainColors asTileChainColors() {
+		return new TileChainColors() {
+			@Override
+			public Color getColor(final int x, final int y, final int width, final int height) {
+				return x >= 0 && x < mWidth && y >= 0 && y < mHeight ? TileChainFrame.this.getColor(x, y) : Color.OFF;
+			}
+		};
+	}
+
+	/**
+	 * Get the max brightness.
+	 *
+	 * @return The max brightness.
+	 */
+	public int getMaxBrightness() {
+		int maxBrightness = 0;
+		for (long value : getValues()) {
+			maxBrightness = Math.max(maxBrightness, getBrightness(value));
+		}
+		return maxBrightness;
+	}
+
+	@Override
+	public final String toString() {
+		StringBuilder result = new StringBuilder("TileChainFrame: \n");
+		for (int y = 0; y < mHeight; y++) {
+			result.append(INDENT).append("[");
+			for (int x = 0; x < mWidth; x++) {
+				result.append(getColor(x, y)).append(", ");
+			}
+			result.replace(result.length() - 2, result.length(), "]\n");
+		}
+		return result.toString();
+	}
+}
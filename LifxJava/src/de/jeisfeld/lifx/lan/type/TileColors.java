@@ -13,7 +13,7 @@ public abstract class TileColors {
 	/**
 	 * The tile width. Assumed to be fixed value 8.
 	 */
-	private static final int WIDTH = 8;
+	static final int WIDTH = 8;
 
 	/**
 	 * The colors used for switching the tile off.
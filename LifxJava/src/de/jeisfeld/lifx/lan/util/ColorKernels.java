@@ -0,0 +1,204 @@
+package de.jeisfeld.lifx.lan.util;
+
+/**
+ * Bulk kernels for color conversion and interpolation on packed HSBK colors (as in Color.asLong). The kernels use integer fixed point
+ * arithmetics and lookup tables instead of double math, and are written as simple loops over arrays without allocation, so that the JIT
+ * can optimize them. Results may differ from the scalar methods of Color by rounding in the last bits.
+ */
+public final class ColorKernels {
+	/**
+	 * Mask for one color component.
+	 */
+	private static final int COMPONENT_MASK = 0xFFFF;
+	/**
+	 * Mask for one 8 bit RGB channel.
+	 */
+	private static final int CHANNEL_MASK = 0xFF;
+	/**
+	 * The alpha part of opaque ARGB colors.
+	 */
+	private static final int OPAQUE = 0xFF000000;
+	/**
+	 * One unit in 16 bit fixed point representation.
+	 */
+	private static final int ONE_16 = 0x10000;
+	/**
+	 * One unit in 15 bit fixed point representation.
+	 */
+	private static final int ONE_15 = 0x8000;
+	/**
+	 * Half of the hue range.
+	 */
+	private static final int HALF_HUE = 0x8000;
+	/**
+	 * The number of sectors of the hue circle.
+	 */
+	private static final int SECTORS = 6;
+	/**
+	 * The precision of the reciprocal lookup table.
+	 */
+	private static final int RECIPROCAL_BITS = 23;
+	/**
+	 * The hue used for white colors (as in Color).
+	 */
+	private static final int WHITE_HUE = 9100;
+	/**
+	 * Lookup table of reciprocals 2^23/i for 8 bit values i.
+	 */
+	private static final int[] RECIPROCAL = new int[CHANNEL_MASK + 1];
+
+	static {
+		for (int i = 1; i <= CHANNEL_MASK; i++) {
+			RECIPROCAL[i] = ((1 << RECIPROCAL_BITS) + i / 2) / i;
+		}
+	}
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private ColorKernels() {
+	}
+
+	/**
+	 * Convert packed HSBK colors to opaque 8 bit ARGB colors. The color temperature is ignored.
+	 *
+	 * @param in The packed HSBK colors.
+	 * @param out The target ARGB colors. May have at most the length of the input.
+	 */
+	public static void convertHsbkToRgb(final long[] in, final int[] out) {
+		for (int i = 0; i < out.length; i++) {
+			final long value = in[i];
+			final int hue6 = ((int) (value >>> 48) & COMPONENT_MASK) * SECTORS; // MAGIC_NUMBER
+			final int saturation = (int) (value >>> 32) & COMPONENT_MASK; // MAGIC_NUMBER
+			final int brightness = (int) (value >>> 16) & COMPONENT_MASK; // MAGIC_NUMBER
+			// chroma in 16 bit, avoiding int overflow.
+			final int chroma = brightness * (saturation >>> 1) >>> 15; // MAGIC_NUMBER
+			out[i] = OPAQUE | channel(5, hue6, brightness, chroma) << 16 // MAGIC_NUMBER
+					| channel(3, hue6, brightness, chroma) << 8 // MAGIC_NUMBER
+					| channel(1, hue6, brightness, chroma);
+		}
+	}
+
+	/**
+	 * Calculate one 8 bit RGB channel from HSV via f(n) = v - c * max(0, min(k, 4 - k, 1)) with k = (n + h) mod 6.
+	 *
+	 * @param n The channel offset (5 for red, 3 for green, 1 for blue).
+	 * @param hue6 The hue multiplied by 6 in 16 bit fixed point.
+	 * @param brightness The brightness in 16 bit.
+	 * @param chroma The chroma in 16 bit.
+	 * @return The channel value in 8 bit.
+	 */
+	private static int channel(final int n, final int hue6, final int brightness, final int chroma) {
+		int k = n * ONE_16 + hue6;
+		if (k >= SECTORS * ONE_16) {
+			k -= SECTORS * ONE_16;
+		}
+		final int t = Math.max(0, Math.min(ONE_16, Math.min(k, 4 * ONE_16 - k))) >>> 8; // MAGIC_NUMBER
+		return brightness - (chroma * t >>> 8) >>> 8; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Convert 8 bit ARGB colors to packed HSBK colors. The alpha channel is ignored.
+	 *
+	 * @param in The ARGB colors.
+	 * @param colorTemperature The color temperature to be used.
+	 * @param out The target packed HSBK colors. May have at most the length of the input.
+	 */
+	public static void convertRgbToHsbk(final int[] in, final short colorTemperature, final long[] out) {
+		final long kelvin = colorTemperature & COMPONENT_MASK;
+		for (int i = 0; i < out.length; i++) {
+			final int r = in[i] >>> 16 & CHANNEL_MASK; // MAGIC_NUMBER
+			final int g = in[i] >>> 8 & CHANNEL_MASK; // MAGIC_NUMBER
+			final int b = in[i] & CHANNEL_MASK;
+			final int max = Math.max(r, Math.max(g, b));
+			final int min = Math.min(r, Math.min(g, b));
+			final int span = max - min;
+
+			final int hue;
+			final int saturation;
+			if (span == 0) {
+				hue = WHITE_HUE;
+				saturation = 0;
+			}
+			else {
+				saturation = Math.min(COMPONENT_MASK, span * RECIPROCAL[max] >>> RECIPROCAL_BITS - 16); // MAGIC_NUMBER
+				final int base = max == r ? 0 : max == g ? 2 : 4; // MAGIC_NUMBER
+				final int diff = max == r ? g - b : max == g ? b - r : r - g;
+				int hue6 = base * ONE_16 + (diff * RECIPROCAL[span] >> RECIPROCAL_BITS - 16); // MAGIC_NUMBER
+				if (hue6 < 0) {
+					hue6 += SECTORS * ONE_16;
+				}
+				hue = hue6 / SECTORS & COMPONENT_MASK;
+			}
+			out[i] = (long) hue << 48 | (long) saturation << 32 | (long) (max * 257) << 16 | kelvin; // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * Interpolate between two arrays of packed HSBK colors in the same way as Color.add. Hue is interpolated along the shorter arc, and
+	 * black colors only change brightness.
+	 *
+	 * @param a The first colors.
+	 * @param b The second colors.
+	 * @param quota The quota of the second colors (between 0 and 1).
+	 * @param out The target colors. May be identical to one of the inputs. May have at most the length of the inputs.
+	 */
+	public static void interpolate(final long[] a, final long[] b, final double quota, final long[] out) {
+		final int q = (int) Math.round(Math.min(1, Math.max(0, quota)) * ONE_15);
+		for (int i = 0; i < out.length; i++) {
+			final long va = a[i];
+			final long vb = b[i];
+			final int ba = (int) (va >>> 16) & COMPONENT_MASK; // MAGIC_NUMBER
+			final int bb = (int) (vb >>> 16) & COMPONENT_MASK; // MAGIC_NUMBER
+			if (ba == 0) {
+				out[i] = withBrightness(vb, bb * q >>> 15); // MAGIC_NUMBER
+			}
+			else if (bb == 0) {
+				out[i] = withBrightness(va, ba * (ONE_15 - q) >>> 15); // MAGIC_NUMBER
+			}
+			else {
+				final int ha = (int) (va >>> 48) & COMPONENT_MASK; // MAGIC_NUMBER
+				int hueDiff = ((int) (vb >>> 48) & COMPONENT_MASK) - ha; // MAGIC_NUMBER
+				if (hueDiff > HALF_HUE) {
+					hueDiff -= ONE_16;
+				}
+				else if (hueDiff < -HALF_HUE) {
+					hueDiff += ONE_16;
+				}
+				final int sa = (int) (va >>> 32) & COMPONENT_MASK; // MAGIC_NUMBER
+				final int ka = (int) va & COMPONENT_MASK;
+				final long hue = ha + (hueDiff * q >> 15) & COMPONENT_MASK; // MAGIC_NUMBER
+				final long saturation = sa + ((((int) (vb >>> 32) & COMPONENT_MASK) - sa) * q >> 15); // MAGIC_NUMBER
+				final long brightness = ba + ((bb - ba) * q >> 15); // MAGIC_NUMBER
+				final long kelvin = ka + ((((int) vb & COMPONENT_MASK) - ka) * q >> 15); // MAGIC_NUMBER
+				out[i] = hue << 48 | saturation << 32 | brightness << 16 | kelvin; // MAGIC_NUMBER
+			}
+		}
+	}
+
+	/**
+	 * Multiply the brightness of packed HSBK colors.
+	 *
+	 * @param in The packed colors.
+	 * @param brightnessFactor The brightness factor (1 meaning unchanged).
+	 * @param out The target colors. May be identical to the input. May have at most the length of the input.
+	 */
+	public static void scaleBrightness(final long[] in, final double brightnessFactor, final long[] out) {
+		final long factor = Math.round(Math.max(0, brightnessFactor) * ONE_16);
+		for (int i = 0; i < out.length; i++) {
+			final long brightness = Math.min(COMPONENT_MASK, ((in[i] >>> 16) & COMPONENT_MASK) * factor >>> 16); // MAGIC_NUMBER
+			out[i] = withBrightness(in[i], (int) brightness);
+		}
+	}
+
+	/**
+	 * Replace the brightness of a packed color.
+	 *
+	 * @param value The packed color.
+	 * @param brightness The new brightness.
+	 * @return The updated packed color.
+	 */
+	private static long withBrightness(final long value, final int brightness) {
+		return value & ~((long) COMPONENT_MASK << 16) | (long) brightness << 16; // MAGIC_NUMBER
+	}
+}
@@ -0,0 +1,45 @@
+package de.jeisfeld.lifx;
+
+import java.util.concurrent.CountDownLatch;
+
+import de.jeisfeld.lifx.gateway.GatewayProtocol;
+import de.jeisfeld.lifx.gateway.GatewayServer;
+import de.jeisfeld.lifx.os.Logger;
+
+/**
+ * Standalone gateway process, serving the lights of the LAN to local clients. Arguments: [port] [poll interval in millis].
+ */
+public final class GatewayDaemon {
+	/**
+	 * The interval in millis for rediscovery of lights.
+	 */
+	private static final long DISCOVERY_INTERVAL = 300000;
+	/**
+	 * The default interval in millis for polling the state of lights.
+	 */
+	private static final long DEFAULT_POLL_INTERVAL = 10000;
+
+	/**
+	 * Hide the default constructor.
+	 */
+	private GatewayDaemon() {
+	}
+
+	/**
+	 * Start the gateway and run until the process is terminated.
+	 *
+	 * @param args The command line arguments.
+	 * @throws Exception Exception while starting.
+	 */
+	public static void main(final String[] args) throws Exception { // SUPPRESS_CHECKSTYLE
+		Logger.setLogDetails(false);
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : GatewayProtocol.DEFAULT_PORT;
+		long pollInterval = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_POLL_INTERVAL;
+
+		final GatewayServer server = new GatewayServer(port, DISCOVERY_INTERVAL, pollInterval);
+		server.start();
+		Logger.info("Serving " + server.getLights().size() + " lights.");
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		new CountDownLatch(1).await();
+	}
+}
@@ -0,0 +1,91 @@
+package de.jeisfeld.lifx;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import de.jeisfeld.lifx.lan.stream.FrameSource;
+
+/**
+ * A frame source reading the image files of a directory (such as PNG files extracted from a video) in alphabetical order. Images are
+ * scaled to the size of the source.
+ */
+public class ImageDirectoryFrameSource implements FrameSource {
+	/**
+	 * The image files.
+	 */
+	private final File[] mFiles;
+	/**
+	 * The width of the frames.
+	 */
+	private final int mWidth;
+	/**
+	 * The height of the frames.
+	 */
+	private final int mHeight;
+	/**
+	 * The image used for scaling.
+	 */
+	private final BufferedImage mScaledImage;
+	/**
+	 * The index of the next file.
+	 */
+	private int mNextIndex = 0;
+
+	/**
+	 * Create a frame source from an image directory.
+	 *
+	 * @param directory The directory.
+	 * @param width The width of the frames.
+	 * @param height The height of the frames.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	public ImageDirectoryFrameSource(final File directory, final int width, final int height) throws IOException {
+		File[] files = directory.listFiles((dir, name) -> name.toLowerCase().matches(".*\\.(png|jpg|jpeg|bmp|gif)"));
+		if (files == null) {
+			throw new IOException("Cannot read directory " + directory);
+		}
+		Arrays.sort(files);
+		mFiles = files;
+		mWidth = width;
+		mHeight = height;
+		mScaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	@Override
+	public final int getWidth() {
+		return mWidth;
+	}
+
+	@Override
+	public final int getHeight() {
+		return mHeight;
+	}
+
+	@Override
+	public final boolean readFrame(final int[] argb) throws IOException {
+		if (mNextIndex >= mFiles.length) {
+			return false;
+		}
+		BufferedImage image = ImageIO.read(mFiles[mNextIndex++]);
+		if (image == null) {
+			throw new IOException("Cannot read image " + mFiles[mNextIndex - 1]);
+		}
+		Graphics2D graphics = mScaledImage.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		graphics.drawImage(image, 0, 0, mWidth, mHeight, null);
+		graphics.dispose();
+		mScaledImage.getRGB(0, 0, mWidth, mHeight, argb, 0, mWidth);
+		return true;
+	}
+
+	@Override
+	public void close() {
+		mNextIndex = mFiles.length;
+	}
+}
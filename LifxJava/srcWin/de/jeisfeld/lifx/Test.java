@@ -1,18 +1,31 @@
 package de.jeisfeld.lifx;
 
+import java.io.File;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
+import de.jeisfeld.lifx.gateway.GatewayClient;
+import de.jeisfeld.lifx.gateway.GatewayCoordinator;
+import de.jeisfeld.lifx.gateway.GatewayServer;
+import de.jeisfeld.lifx.gateway.RemoteLight;
 import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.LifxLan;
 import de.jeisfeld.lifx.lan.Light;
 import de.jeisfeld.lifx.lan.Light.AnimationDefinition;
 import de.jeisfeld.lifx.lan.MultiZoneLight;
+import de.jeisfeld.lifx.lan.Scene;
 import de.jeisfeld.lifx.lan.TileChain;
+import de.jeisfeld.lifx.lan.stream.TileStreamPipeline;
 import de.jeisfeld.lifx.lan.type.Color;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
 import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
 import de.jeisfeld.lifx.lan.type.TileChainColors;
+import de.jeisfeld.lifx.lan.util.ColorKernels;
 import de.jeisfeld.lifx.os.Logger;
+import de.jeisfeld.lifx.sim.SimulatedLight;
 
 /**
  * Test class for testing LIFX API.
@@ -141,4 +154,130 @@ public final class Test {
 
 		// TILE_4.setEffect(new TileEffectInfo.Morph(10000, Color.RED, Color.WHITE));
 	}
+
+	void test9() throws Exception { // SUPPRESS_CHECKSTYLE
+		// Compare scalar color operations with the bulk kernels.
+		final int size = 4096;
+		final int rounds = 500;
+		Random random = new Random();
+		long[] colors1 = new long[size];
+		long[] colors2 = new long[size];
+		long[] result = new long[size];
+		int[] rgb = new int[size];
+		for (int i = 0; i < size; i++) {
+			colors1[i] = new Color(random.nextInt(65536), random.nextInt(65536), random.nextInt(65536), 4000).asLong(); // MAGIC_NUMBER
+			colors2[i] = new Color(random.nextInt(65536), random.nextInt(65536), random.nextInt(65536), 4000).asLong(); // MAGIC_NUMBER
+		}
+
+		for (int pass = 0; pass < 3; pass++) { // MAGIC_NUMBER - first passes are JIT warmup
+			long start = System.nanoTime();
+			long checksum = 0;
+			for (int round = 0; round < rounds; round++) {
+				for (int i = 0; i < size; i++) {
+					checksum += new Color(colors1[i]).toRgbk().getRed();
+				}
+			}
+			long scalarToRgb = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int round = 0; round < rounds; round++) {
+				ColorKernels.convertHsbkToRgb(colors1, rgb);
+				checksum += rgb[round % size];
+			}
+			long kernelToRgb = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int round = 0; round < rounds; round++) {
+				for (int i = 0; i < size; i++) {
+					checksum += new Color(colors1[i]).add(new Color(colors2[i]), 0.3).asLong(); // MAGIC_NUMBER
+				}
+			}
+			long scalarInterpolate = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int round = 0; round < rounds; round++) {
+				ColorKernels.interpolate(colors1, colors2, 0.3, result); // MAGIC_NUMBER
+				checksum += result[round % size];
+			}
+			long kernelInterpolate = System.nanoTime() - start;
+
+			System.out.println("Pass " + pass + " (checksum " + checksum + "): HSBK->RGB scalar " + scalarToRgb / rounds + "ns, kernel "
+					+ kernelToRgb / rounds + "ns per " + size + " colors; interpolate scalar " + scalarInterpolate / rounds + "ns, kernel "
+					+ kernelInterpolate / rounds + "ns");
+		}
+	}
+
+	void test10() throws Exception { // SUPPRESS_CHECKSTYLE
+		// Stream the PNG frames of a directory (e.g. extracted by "ffmpeg -i video.mp4 -r 25 frames/%05d.png") to the tiles.
+		TileStreamPipeline pipeline = new TileStreamPipeline(TILE_4, new ImageDirectoryFrameSource(new File("frames"), 64, 64)) // MAGIC_NUMBER
+				.setFrameRate(25); // MAGIC_NUMBER
+		pipeline.start();
+		pipeline.waitForEnd();
+		System.out.println(pipeline);
+	}
+
+	void test11() throws Exception { // SUPPRESS_CHECKSTYLE
+		LifxLan.getInstance().addDeviceStateListener(change -> System.out.println(change));
+		LifxLan.getInstance().startStatePolling(LifxLan.getInstance().getDevices(), FIVESECONDS);
+		Thread.sleep(HALFMINUTE);
+		LifxLan.getInstance().stopStatePolling();
+	}
+
+	void test12() throws Exception { // SUPPRESS_CHECKSTYLE
+		File file = new File("snapshot.bin");
+		Files.write(file.toPath(), LifxLan.getInstance().snapshot(null).toBytes());
+		FARBLAMPE.setColor(Color.RED, ONESECOND, true);
+		Thread.sleep(FIVESECONDS);
+		System.out.println(LifxLan.getInstance().restore(Scene.fromBytes(Files.readAllBytes(file.toPath())), TWOSECONDS));
+	}
+
+	void test13() throws Exception { // SUPPRESS_CHECKSTYLE
+		GatewayServer server = new GatewayServer(0, HALFMINUTE, FIVESECONDS);
+		server.start();
+		try (GatewayClient client1 = new GatewayClient(server.getPort()); GatewayClient client2 = new GatewayClient(server.getPort())) {
+			for (RemoteLight light : client1.getLights()) {
+				System.out.println(light + ": " + light.getPower() + " " + light.getColor(FIVESECONDS));
+			}
+			RemoteLight light = client2.getLightByMac(MAC_FARBLAMPE);
+			Color oldColor = light.getColor();
+			light.setColor(Color.BLUE, ONESECOND);
+			Thread.sleep(TWOSECONDS);
+			light.setColor(oldColor, ONESECOND);
+		}
+		server.stop();
+	}
+
+	void test14() throws Exception { // SUPPRESS_CHECKSTYLE
+		List<SimulatedLight> simulatedLights = new ArrayList<>();
+		for (int i = 0; i < 24; i++) { // MAGIC_NUMBER
+			simulatedLights.add(new SimulatedLight(String.format("D0:73:D5:00:00:%02X", i), "Sim " + i));
+		}
+		List<GatewayServer> servers = new ArrayList<>();
+		String token = Long.toHexString(new Random().nextLong());
+		GatewayCoordinator coordinator = new GatewayCoordinator(token);
+		for (int i = 0; i < 3; i++) { // MAGIC_NUMBER
+			GatewayServer server = new GatewayServer(0, 0, 0).setToken(token);
+			for (SimulatedLight simulatedLight : simulatedLights) {
+				server.addLight(simulatedLight.createLight());
+			}
+			server.start();
+			servers.add(server);
+			coordinator.addGateway(InetAddress.getLoopbackAddress(), server.getPort());
+		}
+		List<String> macs = new ArrayList<>();
+		for (SimulatedLight simulatedLight : simulatedLights) {
+			macs.add(simulatedLight.getMac());
+			System.out.println(simulatedLight.getMac() + " -> " + coordinator.getOwner(simulatedLight.getMac()));
+		}
+		System.out.println(coordinator.setColor(macs, Color.RED, 0));
+
+		// a gateway leaves - its lights are taken over by the others.
+		servers.get(0).stop();
+		System.out.println(coordinator.setColor(macs, Color.BLUE, 0));
+		System.out.println(coordinator.getGateways());
+		for (SimulatedLight simulatedLight : simulatedLights) {
+			System.out.println(simulatedLight.getMac() + " -> " + coordinator.getOwner(simulatedLight.getMac()) + ": "
+					+ simulatedLight.getColor());
+		}
+	}
 }
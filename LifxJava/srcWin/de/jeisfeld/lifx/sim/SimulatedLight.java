@@ -0,0 +1,311 @@
+package de.jeisfeld.lifx.sim;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import de.jeisfeld.lifx.lan.Light;
+import de.jeisfeld.lifx.lan.message.MessageType;
+import de.jeisfeld.lifx.lan.type.Color;
+import de.jeisfeld.lifx.lan.type.Power;
+import de.jeisfeld.lifx.lan.type.Product;
+import de.jeisfeld.lifx.lan.type.Vendor;
+import de.jeisfeld.lifx.os.Logger;
+import de.jeisfeld.lifx.os.OsTools;
+
+/**
+ * A simulated color light answering the LIFX LAN protocol on a loopback UDP port. It supports label, power and color messages, so that
+ * gateways and coordinators can be tested with many devices on one machine.
+ */
+public class SimulatedLight {
+	/**
+	 * The size of the message header.
+	 */
+	private static final int HEADER_SIZE = 36;
+	/**
+	 * The buffer size.
+	 */
+	private static final int BUFFER_SIZE = 1024;
+	/**
+	 * The size of labels.
+	 */
+	private static final int LABEL_SIZE = 32;
+	/**
+	 * The protocol field of responses.
+	 */
+	private static final short PROTOCOL = 0b0001010000000000;
+	/**
+	 * The offset of the source id.
+	 */
+	private static final int SOURCE_OFFSET = 4;
+	/**
+	 * The offset of the flags.
+	 */
+	private static final int FLAGS_OFFSET = 22;
+	/**
+	 * The offset of the sequence number.
+	 */
+	private static final int SEQUENCE_OFFSET = 23;
+	/**
+	 * The offset of the message type.
+	 */
+	private static final int TYPE_OFFSET = 32;
+	/**
+	 * The number of bytes of a MAC.
+	 */
+	private static final int MAC_SIZE = 6;
+	/**
+	 * The number of reserved bytes after the MAC.
+	 */
+	private static final int MAC_PADDING = 8;
+	/**
+	 * The number of reserved bytes after the sequence number.
+	 */
+	private static final int SEQUENCE_PADDING = 8;
+	/**
+	 * The hex radix.
+	 */
+	private static final int HEX = 16;
+
+	/**
+	 * The MAC.
+	 */
+	private final String mMac;
+	/**
+	 * The label.
+	 */
+	private final String mLabel;
+	/**
+	 * The socket.
+	 */
+	private final DatagramSocket mSocket;
+	/**
+	 * The current color.
+	 */
+	private volatile Color mColor = Color.WHITE;
+	/**
+	 * The current power level.
+	 */
+	private volatile short mPowerLevel = Power.OFF.getLevel();
+	/**
+	 * The number of received messages.
+	 */
+	private volatile int mMessageCount = 0;
+
+	/**
+	 * Create and start a simulated light on an ephemeral loopback port.
+	 *
+	 * @param mac The MAC.
+	 * @param label The label.
+	 * @throws SocketException Exception while opening the socket.
+	 */
+	public SimulatedLight(final String mac, final String label) throws SocketException {
+		mMac = mac;
+		mLabel = label;
+		mSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+		Thread thread = new Thread(this::run, "SimulatedLight-" + mac);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Create a Light object for controlling this simulated light.
+	 *
+	 * @return The light.
+	 */
+	public Light createLight() {
+		return new Light(mMac, InetAddress.getLoopbackAddress(), mSocket.getLocalPort(), OsTools.getPid(), Vendor.LIFX,
+				Product.COLOR_1000, 0, mLabel);
+	}
+
+	/**
+	 * Get the MAC.
+	 *
+	 * @return The MAC.
+	 */
+	public String getMac() {
+		return mMac;
+	}
+
+	/**
+	 * Get the current color.
+	 *
+	 * @return The color.
+	 */
+	public Color getColor() {
+		return mColor;
+	}
+
+	/**
+	 * Get the current power.
+	 *
+	 * @return The power.
+	 */
+	public Power getPower() {
+		return new Power(mPowerLevel);
+	}
+
+	/**
+	 * Get the number of received messages.
+	 *
+	 * @return The number of messages.
+	 */
+	public int getMessageCount() {
+		return mMessageCount;
+	}
+
+	/**
+	 * Stop the simulated light.
+	 */
+	public void close() {
+		mSocket.close();
+	}
+
+	/**
+	 * Answer messages until the socket is closed.
+	 */
+	private void run() {
+		while (!mSocket.isClosed()) {
+			DatagramPacket packet = new DatagramPacket(new byte[BUFFER_SIZE], BUFFER_SIZE);
+			try {
+				mSocket.receive(packet);
+				mMessageCount++;
+				handle(packet);
+			}
+			catch (SocketException e) {
+				return;
+			}
+			catch (IOException e) {
+				Logger.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Handle a received message.
+	 *
+	 * @param packet The message.
+	 * @throws IOException Exception while answering.
+	 */
+	private void handle(final DatagramPacket packet) throws IOException {
+		ByteBuffer request = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+		request.order(ByteOrder.LITTLE_ENDIAN);
+		final int type = request.getShort(TYPE_OFFSET);
+		final boolean isResponseRequired = (request.get(FLAGS_OFFSET) & 1) != 0;
+		final boolean isAcknowledgementRequired = (request.get(FLAGS_OFFSET) & 2) != 0;
+		request.position(HEADER_SIZE);
+
+		MessageType responseType;
+		ByteBuffer payload;
+		if (type == MessageType.LIGHT_SET_COLOR.getValue()) {
+			request.get();
+			mColor = new Color(request.getShort(), request.getShort(), request.getShort(), request.getShort());
+			responseType = MessageType.LIGHT_STATE;
+			payload = getLightState();
+		}
+		else if (type == MessageType.LIGHT_SET_POWER.getValue() || type == MessageType.SET_POWER.getValue()) {
+			mPowerLevel = request.getShort();
+			responseType = type == MessageType.SET_POWER.getValue() ? MessageType.STATE_POWER : MessageType.LIGHT_STATE_POWER;
+			payload = getPowerState();
+		}
+		else if (type == MessageType.LIGHT_GET.getValue()) {
+			responseType = MessageType.LIGHT_STATE;
+			payload = getLightState();
+		}
+		else if (type == MessageType.LIGHT_GET_POWER.getValue() || type == MessageType.GET_POWER.getValue()) {
+			responseType = type == MessageType.GET_POWER.getValue() ? MessageType.STATE_POWER : MessageType.LIGHT_STATE_POWER;
+			payload = getPowerState();
+		}
+		else if (type == MessageType.GET_LABEL.getValue()) {
+			responseType = MessageType.STATE_LABEL;
+			payload = ByteBuffer.allocate(LABEL_SIZE);
+			payload.put(getLabelBytes());
+		}
+		else {
+			// unsupported message - no response, as a device which does not know it.
+			return;
+		}
+
+		if (isAcknowledgementRequired) {
+			send(packet, request, MessageType.ACKNOWLEDGEMENT, new byte[0]);
+		}
+		if (isResponseRequired) {
+			send(packet, request, responseType, payload.array());
+		}
+	}
+
+	/**
+	 * Get the payload of LightState.
+	 *
+	 * @return The payload.
+	 */
+	private ByteBuffer getLightState() {
+		ByteBuffer payload = ByteBuffer.allocate(52); // MAGIC_NUMBER
+		payload.order(ByteOrder.LITTLE_ENDIAN);
+		Color color = mColor;
+		payload.putShort(color.getHue()).putShort(color.getSaturation()).putShort(color.getBrightness())
+				.putShort(color.getColorTemperature());
+		payload.putShort((short) 0);
+		payload.putShort(mPowerLevel);
+		payload.put(getLabelBytes());
+		return payload;
+	}
+
+	/**
+	 * Get the payload of StatePower or LightStatePower.
+	 *
+	 * @return The payload.
+	 */
+	private ByteBuffer getPowerState() {
+		ByteBuffer payload = ByteBuffer.allocate(2);
+		payload.order(ByteOrder.LITTLE_ENDIAN);
+		payload.putShort(mPowerLevel);
+		return payload;
+	}
+
+	/**
+	 * Get the label as fixed size bytes.
+	 *
+	 * @return The label bytes.
+	 */
+	private byte[] getLabelBytes() {
+		byte[] labelBytes = new byte[LABEL_SIZE];
+		byte[] bytes = mLabel.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(bytes, 0, labelBytes, 0, Math.min(bytes.length, LABEL_SIZE));
+		return labelBytes;
+	}
+
+	/**
+	 * Send a response.
+	 *
+	 * @param packet The request packet.
+	 * @param request The request.
+	 * @param type The response type.
+	 * @param payload The response payload.
+	 * @throws IOException Exception while sending.
+	 */
+	private void send(final DatagramPacket packet, final ByteBuffer request, final MessageType type, final byte[] payload)
+			throws IOException {
+		ByteBuffer response = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+		response.order(ByteOrder.LITTLE_ENDIAN);
+		response.putShort((short) (HEADER_SIZE + payload.length));
+		response.putShort(PROTOCOL);
+		response.putInt(request.getInt(SOURCE_OFFSET));
+		for (String part : mMac.split(":")) {
+			response.put((byte) Integer.parseInt(part, HEX));
+		}
+		response.position(response.position() + MAC_PADDING);
+		response.put((byte) 0);
+		response.put(request.get(SEQUENCE_OFFSET));
+		response.position(response.position() + SEQUENCE_PADDING);
+		response.putShort(type.getValue());
+		response.putShort((short) 0);
+		response.put(payload);
+		mSocket.send(new DatagramPacket(response.array(), response.capacity(), packet.getAddress(), packet.getPort()));
+	}
+}
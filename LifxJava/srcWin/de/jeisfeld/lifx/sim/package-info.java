@@ -0,0 +1,4 @@
+/**
+ * Classes for simulating LIFX devices on loopback.
+ */
+package de.jeisfeld.lifx.sim;
@@ -21,6 +21,7 @@ import de.jeisfeld.lifx.app.MainActivity;
 import de.jeisfeld.lifx.app.R;
 import de.jeisfeld.lifx.app.ui.home.MultizoneViewModel;
 import de.jeisfeld.lifx.app.util.PreferenceUtil;
+import de.jeisfeld.lifx.lan.AnimationPlanner;
 import de.jeisfeld.lifx.lan.Device;
 import de.jeisfeld.lifx.lan.LifxLan;
 import de.jeisfeld.lifx.lan.Light;
@@ -30,8 +31,6 @@ import de.jeisfeld.lifx.lan.TileChain;
 import de.jeisfeld.lifx.lan.TileChain.AnimationDefinition;
 import de.jeisfeld.lifx.lan.type.Color;
 import de.jeisfeld.lifx.lan.type.MultizoneColors;
-import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo;
-import de.jeisfeld.lifx.lan.type.MultizoneEffectInfo.Move;
 import de.jeisfeld.lifx.lan.type.TileChainColors;
 
 /**
@@ -120,50 +119,19 @@ public class LifxAnimationService extends Service {
 						colors = new MultizoneColors.Interpolated(true, Color.RED, Color.YELLOW, Color.GREEN, Color.BLUE)
 								.withRelativeBrightness(0.3); // MAGIC_NUMBER
 					}
-					if (light.hasExtendedApi()) {
-						final MultizoneColors finalColors = colors;
-						light.new BaseAnimationThread() {
-							@Override
-							public void run() {
-								try {
-									light.setColors(0, true, finalColors);
-									light.setEffect(new Move(30000, false)); // MAGIC_NUMBER
-								}
-								catch (IOException e) {
+					AnimationPlanner.planRolling(light, 30000, colors) // MAGIC_NUMBER
+							.setAnimationCallback(new AnimationCallback() {
+								@Override
+								public void onException(final IOException e) {
 									updateOnEndAnimation(light.getTargetAddress(), wakeLock);
 								}
-								while (true) {
-									try {
-										Thread.sleep(60000); // MAGIC_NUMBER
-									}
-									catch (InterruptedException e) {
-										try {
-											light.setEffect(MultizoneEffectInfo.OFF);
-										}
-										catch (IOException ex) {
-											// ignore
-										}
-										updateOnEndAnimation(light.getTargetAddress(), wakeLock);
-									}
-								}
-							}
-						}.start();
-					}
-					else {
-						light.rollingAnimation(30000, colors) // MAGIC_NUMBER
-								.setAnimationCallback(new AnimationCallback() {
-									@Override
-									public void onException(final IOException e) {
-										updateOnEndAnimation(light.getTargetAddress(), wakeLock);
-									}
 
-									@Override
-									public void onAnimationEnd(final boolean isInterrupted) {
-										updateOnEndAnimation(light.getTargetAddress(), wakeLock);
-									}
-								})
-								.start();
-					}
+								@Override
+								public void onAnimationEnd(final boolean isInterrupted) {
+									updateOnEndAnimation(light.getTargetAddress(), wakeLock);
+								}
+							})
+							.start();
 				}
 				else if (tmpLight instanceof TileChain) {
 					final TileChain light = (TileChain) tmpLight;
@@ -86,7 +86,7 @@ public final class DeviceRegistry {
 			Vendor vendor = Vendor.fromInt(PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_vendor, deviceId, 0));
 			Product product = Product.fromId(PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_product, deviceId, 0));
 			int version = PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_product, deviceId, 0);
-			byte zoneCount = (byte) PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_zone_count, deviceId, -1);
+			int zoneCount = PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_zone_count, deviceId, -1);
 			long buildTimestamp = PreferenceUtil.getIndexedSharedPreferenceLong(R.string.key_device_build_timestamp, deviceId, -1);
 			byte tileCount = (byte) PreferenceUtil.getIndexedSharedPreferenceInt(R.string.key_device_tile_count, deviceId, -1);
 
@@ -116,7 +116,7 @@ public final class DeviceRegistry {
 	 * @param buildTimestamp The build timestamp of the firmware.
 	 */
 	private Device createDevice(final DeviceType type, final String mac, final InetAddress inetAddress, final int port, // SUPPRESS_CHECKSTYLE
-								final Vendor vendor, final Product product, final int version, final String label, final byte zoneCount,
+								final Vendor vendor, final Product product, final int version, final String label, final int zoneCount,
 								final byte tileCount, final long buildTimestamp) {
 		if (type == DeviceType.DEVICE) {
 			return new Device(mac, inetAddress, port, mSourceId, vendor, product, version, label);